@@ -1,13 +1,14 @@
 package top.panson.argo.aspect;
 
 import cn.hutool.core.util.ReflectUtil;
-import cn.hutool.json.JSONUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.aspectj.lang.JoinPoint;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.MethodClassKey;
 import org.springframework.stereotype.Component;
 import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
@@ -16,7 +17,9 @@ import top.panson.argo.config.TendConsistencyConfiguration;
 import top.panson.argo.custom.shard.SnowflakeShardingKeyGenerator;
 import top.panson.argo.enums.ConsistencyTaskStatusEnum;
 import top.panson.argo.enums.PerformanceEnum;
+import top.panson.argo.manager.TaskParameterCodecManager;
 import top.panson.argo.model.ConsistencyTaskInstance;
+import top.panson.argo.model.ConsistencyTaskTemplate;
 import top.panson.argo.service.TaskStoreService;
 import top.panson.argo.utils.ReflectTools;
 import top.panson.argo.utils.ThreadLocalUtil;
@@ -25,7 +28,11 @@ import top.panson.argo.utils.TimeUtils;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 一致性事务框架切面
@@ -44,6 +51,10 @@ public class ConsistencyAspect {
      * 缓存生成任务分片key的方法
      */
     private static Method cacheGenerateShardKeyMethod = null;
+    /**
+     * 任务模板缓存 key为 标注了注解的方法 + 目标类
+     */
+    private final Map<MethodClassKey, ConsistencyTaskTemplate> taskTemplateCache = new ConcurrentHashMap<>();
 
     /**
      * 一致性任务的service
@@ -55,6 +66,11 @@ public class ConsistencyAspect {
      */
     @Autowired
     private TendConsistencyConfiguration tendConsistencyConfiguration;
+    /**
+     * 任务参数编解码管理器
+     */
+    @Autowired
+    private TaskParameterCodecManager taskParameterCodecManager;
 
     /**
      * 标注了ConsistencyTask的注解的方法执行前要做的工作
@@ -63,7 +79,9 @@ public class ConsistencyAspect {
      */
     @Around("@annotation(consistencyTask)")
     public Object markConsistencyTask(ProceedingJoinPoint point, ConsistencyTask consistencyTask) throws Throwable {
-        log.info("access method:{} is called on {} args {}", point.getSignature().getName(), point.getThis(), point.getArgs());
+        if (log.isDebugEnabled()) {
+            log.debug("access method:{} is called on {} args {}", point.getSignature().getName(), point.getThis(), point.getArgs());
+        }
 
         // 是否是调度器在执行任务，如果是则直接执行任务即可，因为之前已经进行了任务持久化
         // 这个大家肯定是看不懂的，对于这个执行方式，我们后续再来进行讲解，不要在这里直接来讲解了
@@ -97,12 +115,10 @@ public class ConsistencyAspect {
         // 通过@ConsistencyTask注解提取一系列的参数
         // 通过JoinPoint切入点，可以提取一系列的方法相关的数据
 
-        // 根据入参数组获取对应的Class对象的数组
-        Class<?>[] argsClazz = ReflectTools.getArgsClass(point.getArgs());
-        // 获取被拦截方法的全限定名称 格式：类路径#方法名(参数1的类型,参数2的类型,...参数N的类型)
-        String fullyQualifiedName = ReflectTools.getTargetMethodFullyQualifiedName(point, argsClazz);
-        // 获取入参的类名称数组
-        String parameterTypes = ReflectTools.getArgsClassNames(point.getSignature());
+        // 方法签名、入参类型、注解里的配置等对同一个方法的每次调用都是一样的，按方法缓存成模板，每次调用只需要填入参数和时间
+        ConsistencyTaskTemplate template = getTaskTemplate(task, point);
+        // 获取被拦截方法的全限定名称 格式：类路径#方法名(参数1的类型,参数2的类型,...参数N的类型) 按入参的实际类型生成
+        String fullyQualifiedName = getMethodSignName(template, point.getArgs());
 
         Date date = new Date();
 
@@ -110,21 +126,21 @@ public class ConsistencyAspect {
         ConsistencyTaskInstance instance = ConsistencyTaskInstance.builder()
                 // taskId，他默认用的就是方法全限定名称，所以说，针对一个方法n多次调用，taskId是一样的
                 // taskId并不是唯一的id标识
-                .taskId(StringUtils.isEmpty(task.id()) ? fullyQualifiedName : task.id())
-                .methodName(point.getSignature().getName()) // 调用方法名称
-                .parameterTypes(parameterTypes) // 调用方法入参的类型名称
+                .taskId(StringUtils.isEmpty(template.getTaskId()) ? fullyQualifiedName : template.getTaskId())
+                .methodName(template.getMethodName()) // 调用方法名称
+                .parameterTypes(template.getParameterTypes()) // 调用方法入参的类型名称
                 .methodSignName(fullyQualifiedName) // 方法签名
-                .taskParameter(JSONUtil.toJsonStr(point.getArgs())) // 调用方法入参的对象数组，json串的转化
-                .performanceWay(task.performanceWay().getCode()) // 注解里配置的执行模式，直接执行 vs 调度执行
-                .threadWay(task.threadWay().getCode()) // 注解里配置的直接执行，同步还是异步，sync还是async，async会用我们自己初始化的线程池
-                .executeIntervalSec(task.executeIntervalSec()) // 每次任务执行间隔时间
-                .delayTime(task.delayTime())  // 任务执行延迟时间
+                .taskParameter(taskParameterCodecManager.encode(point.getArgs(), template.getGenericParameterTypes())) // 调用方法入参的对象数组，按配置的编解码器编码
+                .performanceWay(template.getPerformanceWay()) // 注解里配置的执行模式，直接执行 vs 调度执行
+                .threadWay(template.getThreadWay()) // 注解里配置的直接执行，同步还是异步，sync还是async，async会用我们自己初始化的线程池
+                .executeIntervalSec(template.getExecuteIntervalSec()) // 每次任务执行间隔时间
+                .delayTime(template.getDelayTime())  // 任务执行延迟时间
                 .executeTimes(0) // 任务执行次数
                 .taskStatus(ConsistencyTaskStatusEnum.INIT.getCode()) // 任务当前所处的一个状态
                 .errorMsg("") // 任务执行的时候异常信息
-                .alertExpression(StringUtils.isEmpty(task.alertExpression()) ? "" : task.alertExpression()) // 限定了你的报警要在任务执行失败多少次的范围内去报警
-                .alertActionBeanName(StringUtils.isEmpty(task.alertActionBeanName()) ? "" : task.alertActionBeanName()) // 如果要告警的话，他的告警逻辑的调用bean是谁
-                .fallbackClassName(ReflectTools.getFullyQualifiedClassName(task.fallbackClass())) // 如果执行失败了，你的降级类是谁
+                .alertExpression(template.getAlertExpression()) // 限定了你的报警要在任务执行失败多少次的范围内去报警
+                .alertActionBeanName(template.getAlertActionBeanName()) // 如果要告警的话，他的告警逻辑的调用bean是谁
+                .fallbackClassName(template.getFallbackClassName()) // 如果执行失败了，你的降级类是谁
                 .fallbackErrorMsg("") // 如果降级也失败了，降级失败的异常信息
                 .gmtCreate(date)
                 .gmtModified(date)
@@ -138,6 +154,73 @@ public class ConsistencyAspect {
         return instance;
     }
 
+    /**
+     * 获取方法的任务模板 第一次调用时创建
+     * 同一个方法可能被继承到多个类中，模板按 方法 + 目标类 缓存
+     *
+     * @param task  一致性任务注解信息
+     * @param point 方法切入点
+     * @return 任务模板
+     */
+    private ConsistencyTaskTemplate getTaskTemplate(ConsistencyTask task, JoinPoint point) {
+        Method method = ((MethodSignature) point.getSignature()).getMethod();
+        Class<?> targetClass = point.getTarget().getClass();
+        ConsistencyTaskTemplate template = taskTemplateCache.get(new MethodClassKey(method, targetClass));
+        if (template != null) {
+            return template;
+        }
+        return taskTemplateCache.computeIfAbsent(new MethodClassKey(method, targetClass), key -> createTaskTemplate(task, method, targetClass));
+    }
+
+    /**
+     * 根据注解和方法创建任务模板
+     *
+     * @param task        一致性任务注解信息 相当于任务的模板
+     * @param method      标注了注解的方法
+     * @param targetClass 目标类
+     * @return 任务模板
+     */
+    private ConsistencyTaskTemplate createTaskTemplate(ConsistencyTask task, Method method, Class<?> targetClass) {
+        // 获取入参的类名称 多个用逗号分隔
+        StringJoiner parameterTypes = new StringJoiner(",");
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            parameterTypes.add(parameterType.getName());
+        }
+        return ConsistencyTaskTemplate.builder()
+                .taskId(task.id())
+                .targetClass(targetClass)
+                .methodName(method.getName())
+                .methodSignNames(new ConcurrentHashMap<>())
+                .parameterClasses(method.getParameterTypes())
+                .parameterTypes(parameterTypes.toString())
+                .genericParameterTypes(method.getGenericParameterTypes())
+                .performanceWay(task.performanceWay().getCode())
+                .threadWay(task.threadWay().getCode())
+                .executeIntervalSec(task.executeIntervalSec())
+                .delayTime(task.delayTime())
+                .alertExpression(StringUtils.isEmpty(task.alertExpression()) ? "" : task.alertExpression())
+                .alertActionBeanName(StringUtils.isEmpty(task.alertActionBeanName()) ? "" : task.alertActionBeanName())
+                .fallbackClassName(ReflectTools.getFullyQualifiedClassName(task.fallbackClass()))
+                .build();
+    }
+
+    /**
+     * 获取方法签名 和之前的版本一样按入参的实际类型生成，已经落库的任务和按taskId分组的告警不受影响
+     * 同一组实际类型的方法签名只生成一次，入参为null时使用方法声明的类型
+     *
+     * @param template 任务模板
+     * @param args     方法入参
+     * @return 方法签名
+     */
+    private String getMethodSignName(ConsistencyTaskTemplate template, Object[] args) {
+        Class<?>[] argsClazz = new Class<?>[args.length];
+        for (int i = 0; i < args.length; i++) {
+            argsClazz[i] = args[i] == null ? template.getParameterClasses()[i] : args[i].getClass();
+        }
+        return template.getMethodSignNames().computeIfAbsent(Arrays.asList(argsClazz),
+                key -> ReflectTools.getMethodSignName(template.getTargetClass(), template.getMethodName(), argsClazz));
+    }
+
     /**
      * 获取任务执行时间
      *
@@ -0,0 +1,35 @@
+package top.panson.argo.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 框架内置分库路由中一个物理库的连接配置
+ *
+ **/
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShardDataSourceProperties {
+
+    /**
+     * 数据库连接地址
+     */
+    private String url;
+    /**
+     * 用户名
+     */
+    private String username;
+    /**
+     * 密码
+     */
+    private String password;
+    /**
+     * 驱动类的全路径 为空时根据url推断
+     */
+    private String driverClassName;
+
+}
@@ -6,6 +6,9 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * 任务分库相关的配置
  *
@@ -25,5 +28,35 @@ public class ShardModeConfigProperties {
      * 生成任务表分片key的ClassName 这里要配置类型全路径且类要实现top.panson.argo.custom.shard.ShardingKeyGenerator接口
      */
     private String shardingKeyGeneratorClassName = "";
+    /**
+     * 是否开启多节点分区扫描 开启后各节点通过节点表心跳注册，按 MOD(id, partitionBucketCount) 把任务分成连续的几段，
+     * 每个节点只扫描自己负责的一段，不需要抢占任务 注：需要先创建argo_node节点表
+     */
+    private Boolean partitionEnabled = false;
+    /**
+     * 是否开启分库并行扫描 需要同时开启taskSharded且使用ShardingSphere分库，开启后每个物理库由一个扫描线程单独查询和执行任务
+     */
+    private Boolean parallelShardScanEnabled = false;
+    /**
+     * 是否开启框架内置的分库路由 开启后不再需要ShardingSphere，框架按shard_key把任务表的读写直接路由到dataSources中的一个物理库，
+     * 需要同时开启taskSharded
+     */
+    private Boolean nativeShardEnabled = false;
+    /**
+     * 内置分库路由的物理库 key为物理库的名称 按配置的顺序编号 注：物理库的数量确定后不能再修改，否则已有任务会被路由到其他物理库
+     */
+    private Map<String, ShardDataSourceProperties> dataSources = new LinkedHashMap<>();
+    /**
+     * 分区扫描的桶数量 节点数不应超过桶数量
+     */
+    private Integer partitionBucketCount = 1024;
+    /**
+     * 节点心跳的间隔 单位毫秒 节点加入或下线后最晚在一个心跳间隔后重新分区
+     */
+    private Long nodeHeartbeatIntervalMillis = 5000L;
+    /**
+     * 节点心跳过期的时间 单位毫秒 超过该时间没有心跳的节点视为已下线
+     */
+    private Long nodeExpireMillis = 15000L;
 
 }
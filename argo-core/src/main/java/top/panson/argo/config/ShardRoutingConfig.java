@@ -0,0 +1,30 @@
+package top.panson.argo.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import top.panson.argo.mapper.TaskStoreMapper;
+import top.panson.argo.service.TaskShardRouter;
+
+/**
+ * 框架内置分库路由相关的配置
+ *
+ */
+@Component
+public class ShardRoutingConfig {
+
+    /**
+     * 开启了内置分库路由时 框架内部注入的任务表mapper都换成按shard_key路由的mapper
+     *
+     * @param taskShardRouter 内置分库路由
+     * @return 路由mapper
+     */
+    @Bean
+    @Primary
+    @ConditionalOnProperty(prefix = "top.panson.argo.shard", name = "native-shard-enabled", havingValue = "true")
+    public TaskStoreMapper shardRoutingTaskStoreMapper(TaskShardRouter taskShardRouter) {
+        return taskShardRouter.getRoutingMapper();
+    }
+
+}
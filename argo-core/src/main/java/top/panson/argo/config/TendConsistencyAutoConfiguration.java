@@ -8,10 +8,12 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 
+import java.util.LinkedHashMap;
 import java.util.concurrent.TimeUnit;
 
 import top.panson.argo.custom.query.TaskTimeRangeQuery;
 import top.panson.argo.custom.shard.ShardingKeyGenerator;
+import top.panson.argo.enums.TaskClaimStrategyEnum;
 import top.panson.argo.exceptions.ConsistencyException;
 import top.panson.argo.utils.*;
 /**
@@ -23,7 +25,9 @@ import top.panson.argo.utils.*;
 @EnableConfigurationProperties(value = {
         TendConsistencyParallelTaskConfigProperties.class,
         TendConsistencyFallbackConfigProperties.class,
-        ShardModeConfigProperties.class
+        ShardModeConfigProperties.class,
+        TendConsistencyStoreConfigProperties.class,
+        TendConsistencyScheduleConfigProperties.class
 })
 public class TendConsistencyAutoConfiguration {
 
@@ -42,6 +46,16 @@ public class TendConsistencyAutoConfiguration {
      */
     @Autowired
     private ShardModeConfigProperties shardModeConfigProperties;
+    /**
+     * 任务存储相关的配置
+     */
+    @Autowired
+    private TendConsistencyStoreConfigProperties tendConsistencyStoreConfigProperties;
+    /**
+     * 任务调度执行相关的配置
+     */
+    @Autowired
+    private TendConsistencyScheduleConfigProperties tendConsistencyScheduleConfigProperties;
 
     /**
      * 框架级配置
@@ -51,7 +65,8 @@ public class TendConsistencyAutoConfiguration {
     @Bean
     public TendConsistencyConfiguration tendConsistencyConfigService() {
         // 对配置进行检查
-        doConfigCheck(consistencyParallelTaskConfigProperties, shardModeConfigProperties);
+        doConfigCheck(consistencyParallelTaskConfigProperties, shardModeConfigProperties, tendConsistencyStoreConfigProperties,
+                tendConsistencyScheduleConfigProperties, tendConsistencyFallbackConfigProperties);
 
         // 会通过builder设计模式，完成bean实例的构建
         return TendConsistencyConfiguration
@@ -63,19 +78,78 @@ public class TendConsistencyAutoConfiguration {
                 .threadPoolKeepAliveTimeUnit(DefaultValueUtils.getOrDefault(consistencyParallelTaskConfigProperties.getThreadPoolKeepAliveTimeUnit(), "SECONDS"))
                 .taskScheduleTimeRangeClassName(DefaultValueUtils.getOrDefault(consistencyParallelTaskConfigProperties.getTaskScheduleTimeRangeClassName(), ""))
                 .failCountThreshold(DefaultValueUtils.getOrDefault(tendConsistencyFallbackConfigProperties.getFailCountThreshold(), 2))
+                .alertCoalesceEnabled(DefaultValueUtils.getOrDefault(tendConsistencyFallbackConfigProperties.getAlertCoalesceEnabled(), false))
+                .alertCoalesceWindowMillis(DefaultValueUtils.getOrDefault(tendConsistencyFallbackConfigProperties.getAlertCoalesceWindowMillis(), 60000L))
+                .alertCoalesceMaxGroups(DefaultValueUtils.getOrDefault(tendConsistencyFallbackConfigProperties.getAlertCoalesceMaxGroups(), 1000))
+                .alertCoalesceSampleSize(DefaultValueUtils.getOrDefault(tendConsistencyFallbackConfigProperties.getAlertCoalesceSampleSize(), 5))
                 .taskSharded(DefaultValueUtils.getOrDefault(shardModeConfigProperties.getTaskSharded(), false))
                 .shardingKeyGeneratorClassName(DefaultValueUtils.getOrDefault(shardModeConfigProperties.getShardingKeyGeneratorClassName(), ""))
+                .partitionEnabled(DefaultValueUtils.getOrDefault(shardModeConfigProperties.getPartitionEnabled(), false))
+                .parallelShardScanEnabled(DefaultValueUtils.getOrDefault(shardModeConfigProperties.getParallelShardScanEnabled(), false))
+                .nativeShardEnabled(DefaultValueUtils.getOrDefault(shardModeConfigProperties.getNativeShardEnabled(), false))
+                .shardDataSources(DefaultValueUtils.getOrDefault(shardModeConfigProperties.getDataSources(), new LinkedHashMap<>()))
+                .partitionBucketCount(DefaultValueUtils.getOrDefault(shardModeConfigProperties.getPartitionBucketCount(), 1024))
+                .nodeHeartbeatIntervalMillis(DefaultValueUtils.getOrDefault(shardModeConfigProperties.getNodeHeartbeatIntervalMillis(), 5000L))
+                .nodeExpireMillis(DefaultValueUtils.getOrDefault(shardModeConfigProperties.getNodeExpireMillis(), 15000L))
+                .insertGroupCommitEnabled(DefaultValueUtils.getOrDefault(tendConsistencyStoreConfigProperties.getInsertGroupCommitEnabled(), false))
+                .insertBatchSize(DefaultValueUtils.getOrDefault(tendConsistencyStoreConfigProperties.getInsertBatchSize(), 100))
+                .insertMaxLingerMicros(DefaultValueUtils.getOrDefault(tendConsistencyStoreConfigProperties.getInsertMaxLingerMicros(), 500L))
+                .stateWriteBehindEnabled(DefaultValueUtils.getOrDefault(tendConsistencyStoreConfigProperties.getStateWriteBehindEnabled(), false))
+                .stateBufferCapacity(DefaultValueUtils.getOrDefault(tendConsistencyStoreConfigProperties.getStateBufferCapacity(), 10000))
+                .stateFlushBatchSize(DefaultValueUtils.getOrDefault(tendConsistencyStoreConfigProperties.getStateFlushBatchSize(), 200))
+                .stateFlushIntervalMillis(DefaultValueUtils.getOrDefault(tendConsistencyStoreConfigProperties.getStateFlushIntervalMillis(), 50L))
+                .taskParameterCodec(DefaultValueUtils.getOrDefault(tendConsistencyStoreConfigProperties.getTaskParameterCodec(), "json"))
+                .taskParameterCompressThreshold(DefaultValueUtils.getOrDefault(tendConsistencyStoreConfigProperties.getTaskParameterCompressThreshold(), 1024))
+                .executeInTransaction(DefaultValueUtils.getOrDefault(tendConsistencyScheduleConfigProperties.getExecuteInTransaction(), true))
+                .leaseEnabled(DefaultValueUtils.getOrDefault(tendConsistencyScheduleConfigProperties.getLeaseEnabled(), false))
+                .claimStrategy(DefaultValueUtils.getOrDefault(tendConsistencyScheduleConfigProperties.getClaimStrategy(), TaskClaimStrategyEnum.CONDITIONAL_UPDATE.name()))
+                .leaseDurationMillis(DefaultValueUtils.getOrDefault(tendConsistencyScheduleConfigProperties.getLeaseDurationMillis(), 60000L))
+                .leaseReaperIntervalMillis(DefaultValueUtils.getOrDefault(tendConsistencyScheduleConfigProperties.getLeaseReaperIntervalMillis(), 30000L))
+                .leaseReaperBatchSize(DefaultValueUtils.getOrDefault(tendConsistencyScheduleConfigProperties.getLeaseReaperBatchSize(), 500))
+                .nodeId(DefaultValueUtils.getOrDefault(tendConsistencyScheduleConfigProperties.getNodeId(), NodeUtils.getDefaultNodeId()))
+                .keysetScanEnabled(DefaultValueUtils.getOrDefault(tendConsistencyScheduleConfigProperties.getKeysetScanEnabled(), false))
+                .coldSweepEnabled(DefaultValueUtils.getOrDefault(tendConsistencyScheduleConfigProperties.getColdSweepEnabled(), false))
+                .coldSweepIntervalMillis(DefaultValueUtils.getOrDefault(tendConsistencyScheduleConfigProperties.getColdSweepIntervalMillis(), 600000L))
+                .coldSweepPageSize(DefaultValueUtils.getOrDefault(tendConsistencyScheduleConfigProperties.getColdSweepPageSize(), 200))
+                .leanScanEnabled(DefaultValueUtils.getOrDefault(tendConsistencyScheduleConfigProperties.getLeanScanEnabled(), false))
+                .timingWheelEnabled(DefaultValueUtils.getOrDefault(tendConsistencyScheduleConfigProperties.getTimingWheelEnabled(), false))
+                .timingWheelTickMillis(DefaultValueUtils.getOrDefault(tendConsistencyScheduleConfigProperties.getTimingWheelTickMillis(), 1L))
+                .timingWheelSize(DefaultValueUtils.getOrDefault(tendConsistencyScheduleConfigProperties.getTimingWheelSize(), 64))
+                .timingWheelCapacity(DefaultValueUtils.getOrDefault(tendConsistencyScheduleConfigProperties.getTimingWheelCapacity(), 100000))
+                .pipelineEnabled(DefaultValueUtils.getOrDefault(tendConsistencyScheduleConfigProperties.getPipelineEnabled(), false))
+                .pipelineDepth(DefaultValueUtils.getOrDefault(tendConsistencyScheduleConfigProperties.getPipelineDepth(), getDefaultPipelineDepth()))
+                .overflowRetryDelayMillis(DefaultValueUtils.getOrDefault(tendConsistencyScheduleConfigProperties.getOverflowRetryDelayMillis(), 1000L))
+                .pollLoopEnabled(DefaultValueUtils.getOrDefault(tendConsistencyScheduleConfigProperties.getPollLoopEnabled(), false))
+                .pollMinIntervalMillis(DefaultValueUtils.getOrDefault(tendConsistencyScheduleConfigProperties.getPollMinIntervalMillis(), 100L))
+                .pollMaxIntervalMillis(DefaultValueUtils.getOrDefault(tendConsistencyScheduleConfigProperties.getPollMaxIntervalMillis(), 10000L))
                 .build();
     }
 
+    /**
+     * 默认的流水线深度 核心线程数的2倍 不超过线程池能够容纳的任务数 保证提交时不会被线程池拒绝
+     *
+     * @return 流水线深度
+     */
+    private int getDefaultPipelineDepth() {
+        int threadCorePoolSize = DefaultValueUtils.getOrDefault(consistencyParallelTaskConfigProperties.getThreadCorePoolSize(), 5);
+        int threadPoolQueueSize = DefaultValueUtils.getOrDefault(consistencyParallelTaskConfigProperties.getThreadPoolQueueSize(), 100);
+        return Math.min(threadCorePoolSize * 2, threadCorePoolSize + threadPoolQueueSize);
+    }
+
     /**
      * 配置检查
      *
      * @param consistencyParallelTaskConfigProperties 并行任务相关的配置
      * @param shardModeConfigProperties               分片模式相关配置
+     * @param storeConfigProperties                   任务存储相关配置
+     * @param scheduleConfigProperties                任务调度执行相关配置
+     * @param fallbackConfigProperties                任务降级相关配置
      */
     private void doConfigCheck(TendConsistencyParallelTaskConfigProperties consistencyParallelTaskConfigProperties,
-                               ShardModeConfigProperties shardModeConfigProperties) {
+                               ShardModeConfigProperties shardModeConfigProperties,
+                               TendConsistencyStoreConfigProperties storeConfigProperties,
+                               TendConsistencyScheduleConfigProperties scheduleConfigProperties,
+                               TendConsistencyFallbackConfigProperties fallbackConfigProperties) {
         TimeUnit timeUnit = null;
         if (!StringUtils.isEmpty(consistencyParallelTaskConfigProperties.getThreadPoolKeepAliveTimeUnit())) {
             try {
@@ -118,7 +192,131 @@ public class TendConsistencyAutoConfiguration {
                 throw new ConsistencyException(errMsg);
             }
         }
+
+        if (!ObjectUtils.isEmpty(storeConfigProperties.getInsertBatchSize()) && storeConfigProperties.getInsertBatchSize() <= 0) {
+            throw new ConsistencyException("insertBatchSize配置错误！注意：必须大于0");
+        }
+        if (!ObjectUtils.isEmpty(storeConfigProperties.getInsertMaxLingerMicros()) && storeConfigProperties.getInsertMaxLingerMicros() < 0) {
+            throw new ConsistencyException("insertMaxLingerMicros配置错误！注意：不能小于0");
+        }
+        if (!ObjectUtils.isEmpty(storeConfigProperties.getStateFlushBatchSize()) && storeConfigProperties.getStateFlushBatchSize() <= 0) {
+            throw new ConsistencyException("stateFlushBatchSize配置错误！注意：必须大于0");
+        }
+        if (!ObjectUtils.isEmpty(storeConfigProperties.getStateBufferCapacity()) && storeConfigProperties.getStateBufferCapacity() <= 0) {
+            throw new ConsistencyException("stateBufferCapacity配置错误！注意：必须大于0");
+        }
+        if (DefaultValueUtils.getOrDefault(storeConfigProperties.getStateWriteBehindEnabled(), false)
+                && !DefaultValueUtils.getOrDefault(scheduleConfigProperties.getLeaseEnabled(), false)) {
+            // 宕机时缓冲区中尚未刷盘的任务停留在执行中状态，只有租约过期回收才能恢复
+            throw new ConsistencyException("stateWriteBehindEnabled配置错误！注意：需要同时开启leaseEnabled");
+        }
+        if (!ObjectUtils.isEmpty(storeConfigProperties.getTaskParameterCompressThreshold()) && storeConfigProperties.getTaskParameterCompressThreshold() < 0) {
+            throw new ConsistencyException("taskParameterCompressThreshold配置错误！注意：不能小于0");
+        }
+        if (!ObjectUtils.isEmpty(fallbackConfigProperties.getAlertCoalesceWindowMillis()) && fallbackConfigProperties.getAlertCoalesceWindowMillis() <= 0) {
+            throw new ConsistencyException("alertCoalesceWindowMillis配置错误！注意：必须大于0");
+        }
+        if (!ObjectUtils.isEmpty(fallbackConfigProperties.getAlertCoalesceMaxGroups()) && fallbackConfigProperties.getAlertCoalesceMaxGroups() <= 0) {
+            throw new ConsistencyException("alertCoalesceMaxGroups配置错误！注意：必须大于0");
+        }
+        if (!ObjectUtils.isEmpty(fallbackConfigProperties.getAlertCoalesceSampleSize()) && fallbackConfigProperties.getAlertCoalesceSampleSize() <= 0) {
+            throw new ConsistencyException("alertCoalesceSampleSize配置错误！注意：必须大于0");
+        }
+
+        if (DefaultValueUtils.getOrDefault(shardModeConfigProperties.getParallelShardScanEnabled(), false)
+                && !DefaultValueUtils.getOrDefault(shardModeConfigProperties.getTaskSharded(), false)) {
+            throw new ConsistencyException("parallelShardScanEnabled配置错误！注意：需要同时开启taskSharded");
+        }
+        if (DefaultValueUtils.getOrDefault(shardModeConfigProperties.getNativeShardEnabled(), false)) {
+            doNativeShardConfigCheck(shardModeConfigProperties, scheduleConfigProperties);
+        }
+        if (!ObjectUtils.isEmpty(shardModeConfigProperties.getPartitionBucketCount()) && shardModeConfigProperties.getPartitionBucketCount() <= 0) {
+            throw new ConsistencyException("partitionBucketCount配置错误！注意：必须大于0");
+        }
+        long nodeHeartbeatIntervalMillis = DefaultValueUtils.getOrDefault(shardModeConfigProperties.getNodeHeartbeatIntervalMillis(), 5000L);
+        long nodeExpireMillis = DefaultValueUtils.getOrDefault(shardModeConfigProperties.getNodeExpireMillis(), 15000L);
+        if (nodeHeartbeatIntervalMillis <= 0 || nodeExpireMillis <= nodeHeartbeatIntervalMillis) {
+            throw new ConsistencyException("nodeHeartbeatIntervalMillis或nodeExpireMillis配置错误！注意：心跳间隔必须大于0且小于心跳过期时间");
+        }
+
+        if (!StringUtils.isEmpty(scheduleConfigProperties.getClaimStrategy())) {
+            try {
+                TaskClaimStrategyEnum.valueOf(scheduleConfigProperties.getClaimStrategy());
+            } catch (IllegalArgumentException e) {
+                log.error("检查claimStrategy配置时，发生异常", e);
+                throw new ConsistencyException("claimStrategy配置错误！注意：请在[SKIP_LOCKED,CONDITIONAL_UPDATE]任选其中之一");
+            }
+        }
+        if (!ObjectUtils.isEmpty(scheduleConfigProperties.getLeaseDurationMillis()) && scheduleConfigProperties.getLeaseDurationMillis() <= 0) {
+            throw new ConsistencyException("leaseDurationMillis配置错误！注意：必须大于0");
+        }
+        if (!ObjectUtils.isEmpty(scheduleConfigProperties.getLeaseReaperIntervalMillis()) && scheduleConfigProperties.getLeaseReaperIntervalMillis() <= 0) {
+            throw new ConsistencyException("leaseReaperIntervalMillis配置错误！注意：必须大于0");
+        }
+        if (!ObjectUtils.isEmpty(scheduleConfigProperties.getLeaseReaperBatchSize()) && scheduleConfigProperties.getLeaseReaperBatchSize() <= 0) {
+            throw new ConsistencyException("leaseReaperBatchSize配置错误！注意：必须大于0");
+        }
+        if (!ObjectUtils.isEmpty(scheduleConfigProperties.getColdSweepIntervalMillis()) && scheduleConfigProperties.getColdSweepIntervalMillis() <= 0) {
+            throw new ConsistencyException("coldSweepIntervalMillis配置错误！注意：必须大于0");
+        }
+        if (!ObjectUtils.isEmpty(scheduleConfigProperties.getColdSweepPageSize()) && scheduleConfigProperties.getColdSweepPageSize() <= 0) {
+            throw new ConsistencyException("coldSweepPageSize配置错误！注意：必须大于0");
+        }
+        if (!ObjectUtils.isEmpty(scheduleConfigProperties.getTimingWheelTickMillis()) && scheduleConfigProperties.getTimingWheelTickMillis() <= 0) {
+            throw new ConsistencyException("timingWheelTickMillis配置错误！注意：必须大于0");
+        }
+        if (!ObjectUtils.isEmpty(scheduleConfigProperties.getTimingWheelSize()) && scheduleConfigProperties.getTimingWheelSize() <= 1) {
+            throw new ConsistencyException("timingWheelSize配置错误！注意：必须大于1");
+        }
+        if (!ObjectUtils.isEmpty(scheduleConfigProperties.getTimingWheelCapacity()) && scheduleConfigProperties.getTimingWheelCapacity() <= 0) {
+            throw new ConsistencyException("timingWheelCapacity配置错误！注意：必须大于0");
+        }
+        if (!ObjectUtils.isEmpty(scheduleConfigProperties.getOverflowRetryDelayMillis()) && scheduleConfigProperties.getOverflowRetryDelayMillis() < 0) {
+            throw new ConsistencyException("overflowRetryDelayMillis配置错误！注意：不能小于0");
+        }
+        long pollMinIntervalMillis = DefaultValueUtils.getOrDefault(scheduleConfigProperties.getPollMinIntervalMillis(), 100L);
+        long pollMaxIntervalMillis = DefaultValueUtils.getOrDefault(scheduleConfigProperties.getPollMaxIntervalMillis(), 10000L);
+        if (pollMinIntervalMillis <= 0 || pollMaxIntervalMillis < pollMinIntervalMillis) {
+            throw new ConsistencyException("pollMinIntervalMillis或pollMaxIntervalMillis配置错误！注意：最小调度间隔必须大于0且不大于最大调度间隔");
+        }
+        if (!ObjectUtils.isEmpty(scheduleConfigProperties.getPipelineDepth())) {
+            int poolCapacity = DefaultValueUtils.getOrDefault(consistencyParallelTaskConfigProperties.getThreadCorePoolSize(), 5)
+                    + DefaultValueUtils.getOrDefault(consistencyParallelTaskConfigProperties.getThreadPoolQueueSize(), 100);
+            if (scheduleConfigProperties.getPipelineDepth() <= 0 || scheduleConfigProperties.getPipelineDepth() > poolCapacity) {
+                throw new ConsistencyException("pipelineDepth配置错误！注意：必须大于0且不超过线程池核心线程数与队列大小之和");
+            }
+        }
     }
 
+    /**
+     * 内置分库路由的配置检查 没有分片键的扫描和抢占语句会在全部物理库上分别执行，依赖跨库顺序或者跨语句事务的功能不能开启
+     *
+     * @param shardModeConfigProperties 分片模式参数配置
+     * @param scheduleConfigProperties  任务调度执行相关的配置
+     */
+    private void doNativeShardConfigCheck(ShardModeConfigProperties shardModeConfigProperties,
+                                          TendConsistencyScheduleConfigProperties scheduleConfigProperties) {
+        if (!DefaultValueUtils.getOrDefault(shardModeConfigProperties.getTaskSharded(), false)) {
+            throw new ConsistencyException("nativeShardEnabled配置错误！注意：需要同时开启taskSharded");
+        }
+        if (ObjectUtils.isEmpty(shardModeConfigProperties.getDataSources())) {
+            throw new ConsistencyException("dataSources配置错误！注意：开启nativeShardEnabled时至少需要配置一个物理库");
+        }
+        shardModeConfigProperties.getDataSources().forEach((shardName, shardDataSource) -> {
+            if (ObjectUtils.isEmpty(shardDataSource) || StringUtils.isEmpty(shardDataSource.getUrl())) {
+                throw new ConsistencyException(String.format("dataSources配置错误！注意：物理库 %s 的url不能为空", shardName));
+            }
+        });
+        if (DefaultValueUtils.getOrDefault(scheduleConfigProperties.getKeysetScanEnabled(), false)) {
+            throw new ConsistencyException("keysetScanEnabled配置错误！注意：开启nativeShardEnabled时不支持分页扫描");
+        }
+        boolean leaseEnabled = DefaultValueUtils.getOrDefault(scheduleConfigProperties.getLeaseEnabled(), false);
+        if (!leaseEnabled && DefaultValueUtils.getOrDefault(scheduleConfigProperties.getColdSweepEnabled(), false)) {
+            throw new ConsistencyException("coldSweepEnabled配置错误！注意：开启nativeShardEnabled时冷扫描需要同时开启租约抢占模式");
+        }
+        if (leaseEnabled && TaskClaimStrategyEnum.SKIP_LOCKED.name().equals(scheduleConfigProperties.getClaimStrategy())) {
+            throw new ConsistencyException("claimStrategy配置错误！注意：开启nativeShardEnabled时只支持CONDITIONAL_UPDATE");
+        }
+    }
 
-}
\ No newline at end of file
+}
@@ -5,6 +5,9 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * 框架级配置参数
  *
@@ -39,6 +42,22 @@ public class TendConsistencyConfiguration {
      * 触发降级逻辑的阈值 任务执行次数 如果大于该值 就会进行降级
      */
     public Integer failCountThreshold;
+    /**
+     * 是否开启告警合并
+     */
+    private Boolean alertCoalesceEnabled = false;
+    /**
+     * 告警合并窗口 单位毫秒
+     */
+    private Long alertCoalesceWindowMillis = 60000L;
+    /**
+     * 一个合并窗口内最多合并的告警分组数
+     */
+    private Integer alertCoalesceMaxGroups = 1000;
+    /**
+     * 每个告警分组保留的任务实例样本数
+     */
+    private Integer alertCoalesceSampleSize = 5;
     /**
      * 任务表是否进行分库
      */
@@ -51,5 +70,157 @@ public class TendConsistencyConfiguration {
      * 生成任务表分片key的ClassName 这里要配置类型全路径且类要实现 top.panson.argo.custom.shard.ShardingKeyGenerator接口
      */
     private String shardingKeyGeneratorClassName = "";
+    /**
+     * 是否开启多节点分区扫描
+     */
+    private Boolean partitionEnabled = false;
+    /**
+     * 是否开启分库并行扫描
+     */
+    private Boolean parallelShardScanEnabled = false;
+    /**
+     * 是否开启框架内置的分库路由
+     */
+    private Boolean nativeShardEnabled = false;
+    /**
+     * 内置分库路由的物理库 key为物理库的名称
+     */
+    private Map<String, ShardDataSourceProperties> shardDataSources = new LinkedHashMap<>();
+    /**
+     * 分区扫描的桶数量
+     */
+    private Integer partitionBucketCount = 1024;
+    /**
+     * 节点心跳的间隔 单位毫秒
+     */
+    private Long nodeHeartbeatIntervalMillis = 5000L;
+    /**
+     * 节点心跳过期的时间 单位毫秒
+     */
+    private Long nodeExpireMillis = 15000L;
+    /**
+     * 是否开启任务写入的组提交模式
+     */
+    private Boolean insertGroupCommitEnabled = false;
+    /**
+     * 组提交模式下 一次合并写入的最大任务数
+     */
+    private Integer insertBatchSize = 100;
+    /**
+     * 组提交模式下 等待其他任务加入本批次的最长时间 单位微秒
+     */
+    private Long insertMaxLingerMicros = 500L;
+    /**
+     * 是否开启任务状态的异步批量写入
+     */
+    private Boolean stateWriteBehindEnabled = false;
+    /**
+     * 状态变更缓冲区的容量
+     */
+    private Integer stateBufferCapacity = 10000;
+    /**
+     * 缓冲的状态变更达到该数量时立即刷盘
+     */
+    private Integer stateFlushBatchSize = 200;
+    /**
+     * 状态变更最多在缓冲区停留的时间 单位毫秒
+     */
+    private Long stateFlushIntervalMillis = 50L;
+    /**
+     * 写入任务参数时使用的编解码器标识
+     */
+    private String taskParameterCodec = "json";
+    /**
+     * bin编解码器的编码结果超过该字节数时进行压缩
+     */
+    private Integer taskParameterCompressThreshold = 1024;
+    /**
+     * 是否把启动任务、执行目标方法、标记执行结果放在同一个事务里
+     */
+    private Boolean executeInTransaction = true;
+    /**
+     * 是否开启多节点租约抢占模式
+     */
+    private Boolean leaseEnabled = false;
+    /**
+     * 可选值:[SKIP_LOCKED,CONDITIONAL_UPDATE] 抢占任务的方式
+     */
+    private String claimStrategy = "CONDITIONAL_UPDATE";
+    /**
+     * 任务租约时长 单位毫秒
+     */
+    private Long leaseDurationMillis = 60000L;
+    /**
+     * 回收租约过期的执行中任务的时间间隔 单位毫秒
+     */
+    private Long leaseReaperIntervalMillis = 30000L;
+    /**
+     * 每次回收租约过期的执行中任务的最大条数
+     */
+    private Integer leaseReaperBatchSize = 500;
+    /**
+     * 当前节点的标识
+     */
+    private String nodeId = "";
+    /**
+     * 是否按(execute_time, id)升序分页扫描未完成的任务
+     */
+    private Boolean keysetScanEnabled = false;
+    /**
+     * 是否开启全表冷扫描
+     */
+    private Boolean coldSweepEnabled = false;
+    /**
+     * 两轮全表冷扫描之间的时间间隔 单位毫秒
+     */
+    private Long coldSweepIntervalMillis = 600000L;
+    /**
+     * 全表冷扫描每次调度最多处理的任务数
+     */
+    private Integer coldSweepPageSize = 200;
+    /**
+     * 是否开启精简字段扫描
+     */
+    private Boolean leanScanEnabled = false;
+    /**
+     * 是否开启任务时间轮
+     */
+    private Boolean timingWheelEnabled = false;
+    /**
+     * 时间轮每个格子的时间跨度 单位毫秒
+     */
+    private Long timingWheelTickMillis = 1L;
+    /**
+     * 时间轮每一层的格子数量
+     */
+    private Integer timingWheelSize = 64;
+    /**
+     * 时间轮中最多容纳的任务数
+     */
+    private Integer timingWheelCapacity = 100000;
+    /**
+     * 是否开启流水线调度
+     */
+    private Boolean pipelineEnabled = false;
+    /**
+     * 流水线中最多同时提交的任务数
+     */
+    private Integer pipelineDepth;
+    /**
+     * 立即执行的异步任务在线程池没有空闲容量时，转为调度型任务延迟执行的时间 单位毫秒
+     */
+    private Long overflowRetryDelayMillis = 1000L;
+    /**
+     * 是否开启框架自带的自适应调度循环
+     */
+    private Boolean pollLoopEnabled = false;
+    /**
+     * 自适应调度循环的最小调度间隔 单位毫秒
+     */
+    private Long pollMinIntervalMillis = 100L;
+    /**
+     * 自适应调度循环的最大调度间隔 单位毫秒
+     */
+    private Long pollMaxIntervalMillis = 10000L;
 
 }
\ No newline at end of file
@@ -21,5 +21,21 @@ public class TendConsistencyFallbackConfigProperties {
      * 触发降级逻辑的阈值 任务执行次数 如果大于该值 就会进行降级
      */
     public Integer failCountThreshold = 0;
+    /**
+     * 是否开启告警合并 开启后同一个任务（taskId + alertActionBeanName）在一个合并窗口内触发的告警只发送一次汇总通知
+     */
+    private Boolean alertCoalesceEnabled = false;
+    /**
+     * 告警合并窗口 单位毫秒
+     */
+    private Long alertCoalesceWindowMillis = 60000L;
+    /**
+     * 一个合并窗口内最多合并的告警分组数 超过后新分组的告警只计数不发送
+     */
+    private Integer alertCoalesceMaxGroups = 1000;
+    /**
+     * 每个告警分组保留的任务实例样本数
+     */
+    private Integer alertCoalesceSampleSize = 5;
 
 }
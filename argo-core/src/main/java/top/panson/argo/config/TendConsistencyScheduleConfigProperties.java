@@ -0,0 +1,117 @@
+package top.panson.argo.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 任务调度执行相关的配置
+ *
+ **/
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ConfigurationProperties(prefix = "top.panson.argo.schedule")
+public class TendConsistencyScheduleConfigProperties {
+
+    /**
+     * 是否把启动任务、执行目标方法、标记执行结果放在同一个事务里 目标方法执行期间会一直占用一个数据库连接
+     * 设置为false时 启动任务和标记执行结果各自是独立的短事务 目标方法执行期间框架不占用数据库连接
+     */
+    private Boolean executeInTransaction = true;
+    /**
+     * 是否开启多节点租约抢占模式 开启后每个节点按批次抢占任务 各节点执行互不重叠的任务 不再需要在调度入口加分布式锁
+     * 注：需要任务表有lease_owner、lease_expire_time两个字段
+     */
+    private Boolean leaseEnabled = false;
+    /**
+     * 可选值:[SKIP_LOCKED,CONDITIONAL_UPDATE] 抢占任务的方式 SKIP_LOCKED需要MySQL 8.0.1及以上版本
+     */
+    private String claimStrategy = "CONDITIONAL_UPDATE";
+    /**
+     * 任务租约时长 单位毫秒 抢占到的任务和执行中的任务都持有租约 租约到期前其他节点不会抢占该任务
+     * 执行中的任务由当前节点定时续约 节点宕机后租约到期 任务会被重置为可重新执行
+     */
+    private Long leaseDurationMillis = 60000L;
+    /**
+     * 回收租约过期的执行中任务的时间间隔 单位毫秒
+     */
+    private Long leaseReaperIntervalMillis = 30000L;
+    /**
+     * 每次回收租约过期的执行中任务的最大条数
+     */
+    private Integer leaseReaperBatchSize = 500;
+    /**
+     * 当前节点的标识 不配置时使用 ip:进程号
+     */
+    private String nodeId = "";
+    /**
+     * 是否按(execute_time, id)升序分页扫描未完成的任务 一次调度会持续翻页直到没有到期的任务
+     * 关闭时沿用按execute_time倒序取固定条数的查询方式
+     */
+    private Boolean keysetScanEnabled = false;
+    /**
+     * 是否开启全表冷扫描 开启后会定期扫描执行时间早于查询时间范围的任务 避免这些任务永远不会再被执行
+     */
+    private Boolean coldSweepEnabled = false;
+    /**
+     * 两轮全表冷扫描之间的时间间隔 单位毫秒
+     */
+    private Long coldSweepIntervalMillis = 600000L;
+    /**
+     * 全表冷扫描每次调度最多处理的任务数
+     */
+    private Integer coldSweepPageSize = 200;
+    /**
+     * 是否开启精简字段扫描 开启后扫描未完成任务时只查询id、shard_key、execute_time、task_status、execute_times，
+     * 任务参数等大字段在任务启动成功后才按id查询
+     */
+    private Boolean leanScanEnabled = false;
+    /**
+     * 是否开启任务时间轮 开启后当前节点创建的调度型任务和执行失败等待重试的任务会在execute_time准时触发，
+     * 定时调度只作为兜底，可以适当调大调度间隔
+     */
+    private Boolean timingWheelEnabled = false;
+    /**
+     * 时间轮每个格子的时间跨度 单位毫秒
+     */
+    private Long timingWheelTickMillis = 1L;
+    /**
+     * 时间轮每一层的格子数量
+     */
+    private Integer timingWheelSize = 64;
+    /**
+     * 时间轮中最多容纳的任务数 超出的任务由定时调度执行
+     */
+    private Integer timingWheelCapacity = 100000;
+    /**
+     * 是否开启流水线调度 开启后提交任务时不再等待整批任务执行完成，下一页任务在当前任务执行期间就开始查询和提交，
+     * 提交中和执行中的任务数保持在pipelineDepth，正在执行的任务不会被重复提交
+     */
+    private Boolean pipelineEnabled = false;
+    /**
+     * 流水线中最多同时提交的任务数 不配置时为线程池核心线程数的2倍 不能超过线程池核心线程数与队列大小之和
+     */
+    private Integer pipelineDepth;
+    /**
+     * 立即执行的异步任务在线程池没有空闲容量时，转为调度型任务延迟执行的时间 单位毫秒
+     * 开启了时间轮时由时间轮在延迟之后再次提交，否则由定时调度执行
+     */
+    private Long overflowRetryDelayMillis = 1000L;
+    /**
+     * 是否开启框架自带的自适应调度循环 开启后不需要业务服务自己定时调用TaskScheduleManager#performanceTask
+     */
+    private Boolean pollLoopEnabled = false;
+    /**
+     * 自适应调度循环的最小调度间隔 单位毫秒
+     */
+    private Long pollMinIntervalMillis = 100L;
+    /**
+     * 自适应调度循环的最大调度间隔 单位毫秒 连续没有查询到任务时调度间隔按指数增长到该值
+     */
+    private Long pollMaxIntervalMillis = 10000L;
+
+}
@@ -0,0 +1,57 @@
+package top.panson.argo.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 任务存储相关的配置
+ *
+ **/
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@ConfigurationProperties(prefix = "top.panson.argo.store")
+public class TendConsistencyStoreConfigProperties {
+
+    /**
+     * 是否开启任务写入的组提交模式 开启后并发写入的任务会被合并为一条多行INSERT语句
+     */
+    private Boolean insertGroupCommitEnabled = false;
+    /**
+     * 组提交模式下 一次合并写入的最大任务数
+     */
+    private Integer insertBatchSize = 100;
+    /**
+     * 组提交模式下 第一个任务到达后等待其他任务加入本批次的最长时间 单位微秒
+     */
+    private Long insertMaxLingerMicros = 500L;
+    /**
+     * 是否开启任务状态的异步批量写入 开启后执行成功/失败/降级失败的状态变更会先进入缓冲区 再批量刷到数据库
+     */
+    private Boolean stateWriteBehindEnabled = false;
+    /**
+     * 状态变更缓冲区的容量 缓冲区满了之后由执行线程同步写入
+     */
+    private Integer stateBufferCapacity = 10000;
+    /**
+     * 缓冲的状态变更达到该数量时立即刷盘
+     */
+    private Integer stateFlushBatchSize = 200;
+    /**
+     * 状态变更最多在缓冲区停留的时间 单位毫秒
+     */
+    private Long stateFlushIntervalMillis = 50L;
+    /**
+     * 写入任务参数时使用的编解码器标识 框架内置json和bin（紧凑二进制），也可以是业务服务自定义的TaskParameterCodec的标识
+     */
+    private String taskParameterCodec = "json";
+    /**
+     * bin编解码器的编码结果超过该字节数时进行deflate压缩
+     */
+    private Integer taskParameterCompressThreshold = 1024;
+
+}
@@ -1,6 +1,7 @@
 package top.panson.argo.config;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.stereotype.Component;
 import top.panson.argo.model.ConsistencyTaskInstance;
@@ -33,14 +34,18 @@ public class ThreadPoolConfig {
 
     /**
      * 一致性任务执行的并行任务执行线程池
+     * 框架内部通过TaskSubmissionController向该线程池提交任务，提交的任务数不会超过线程池能够容纳的任务数
      *
      * @return 并行任务线程池
      */
     @Bean
-    public CompletionService<ConsistencyTaskInstance> consistencyTaskPool() {
+    @Qualifier("consistencyTaskExecutor")
+    public ThreadPoolExecutor consistencyTaskExecutor() {
+        // 准入许可在任务的finally中归还，此时工作线程还没有回到线程池取下一个任务，
+        // 队列多留出核心线程数的余量，保证拿到许可的任务一定能放进线程池
         LinkedBlockingQueue<Runnable> asyncConsistencyTaskThreadPoolQueue =
-                new LinkedBlockingQueue<>(tendConsistencyConfiguration.getThreadPoolQueueSize());
-        ThreadPoolExecutor asyncReleaseResourceExecutorPool = new ThreadPoolExecutor(
+                new LinkedBlockingQueue<>(tendConsistencyConfiguration.getThreadPoolQueueSize() + tendConsistencyConfiguration.getThreadCorePoolSize());
+        return new ThreadPoolExecutor(
                 tendConsistencyConfiguration.getThreadCorePoolSize(),
                 tendConsistencyConfiguration.getThreadCorePoolSize(),
                 tendConsistencyConfiguration.getThreadPoolKeepAliveTime(),
@@ -48,7 +53,18 @@ public class ThreadPoolConfig {
                 asyncConsistencyTaskThreadPoolQueue,
                 createThreadFactory(CONSISTENCY_TASK_THREAD_POOL_PREFIX)
         );
-        return new ExecutorCompletionService<>(asyncReleaseResourceExecutorPool);
+    }
+
+    /**
+     * 基于一致性任务执行线程池的CompletionService 保留给业务服务使用
+     * 注：通过它提交的任务执行完成后会一直保存在完成队列中，需要调用方自己take/poll取走
+     *
+     * @param consistencyTaskExecutor 一致性任务执行线程池
+     * @return 并行任务线程池
+     */
+    @Bean
+    public CompletionService<ConsistencyTaskInstance> consistencyTaskPool(@Qualifier("consistencyTaskExecutor") ThreadPoolExecutor consistencyTaskExecutor) {
+        return new ExecutorCompletionService<>(consistencyTaskExecutor);
     }
 
     /**
@@ -57,6 +73,7 @@ public class ThreadPoolConfig {
      * @return 并行任务线程池
      */
     @Bean
+    @Qualifier("alertNoticePool")
     public ThreadPoolExecutor alertNoticePool() {
         LinkedBlockingQueue<Runnable> asyncAlertNoticeThreadPoolQueue =
                 new LinkedBlockingQueue<>(100);
@@ -1,8 +1,11 @@
 package top.panson.argo.custom.alerter;
 
 
+import top.panson.argo.model.ConsistencyAlertSummary;
 import top.panson.argo.model.ConsistencyTaskInstance;
 
+import java.util.List;
+
 /**
  * 一致性框架告警接口
  * 具体告警通知动作由业务服务实现
@@ -18,4 +21,15 @@ public interface ConsistencyFrameworkAlerter {
      */
     void sendAlertNotice(ConsistencyTaskInstance consistencyTaskInstance);
 
+    /**
+     * 发送合并后的告警汇总通知 开启告警合并时，每个合并窗口内同一个任务只调用一次
+     * 默认把最后一个样本按单条告警发送，需要展示告警次数等汇总信息时覆盖该方法
+     *
+     * @param alertSummary 告警汇总
+     */
+    default void sendAlertSummary(ConsistencyAlertSummary alertSummary) {
+        List<ConsistencyTaskInstance> samples = alertSummary.getSamples();
+        sendAlertNotice(samples.get(samples.size() - 1));
+    }
+
 }
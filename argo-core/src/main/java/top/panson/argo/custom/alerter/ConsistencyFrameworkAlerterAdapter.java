@@ -0,0 +1,64 @@
+package top.panson.argo.custom.alerter;
+
+
+import lombok.extern.slf4j.Slf4j;
+import top.panson.argo.model.ConsistencyAlertSummary;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * 把阻塞的{@link ConsistencyFrameworkAlerter}适配成{@link ConsistencyFrameworkBatchAlerter}
+ * 一批告警在指定的线程池中逐条调用原有的告警实现类，单条告警调用sendAlertNotice，合并后的告警调用sendAlertSummary，
+ * 某一条告警发送失败只记录日志，不影响同一批中其余告警的发送
+ *
+ **/
+@Slf4j
+public class ConsistencyFrameworkAlerterAdapter implements ConsistencyFrameworkBatchAlerter {
+
+    /**
+     * 原有的告警实现类
+     */
+    private final ConsistencyFrameworkAlerter alerter;
+    /**
+     * 调用原有告警实现类的线程池
+     */
+    private final Executor executor;
+
+    /**
+     * 创建适配器
+     *
+     * @param alerter  原有的告警实现类
+     * @param executor 调用原有告警实现类的线程池
+     */
+    public ConsistencyFrameworkAlerterAdapter(ConsistencyFrameworkAlerter alerter, Executor executor) {
+        this.alerter = alerter;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<Void> sendAlertBatch(List<ConsistencyAlertSummary> alertSummaries) {
+        try {
+            return CompletableFuture.runAsync(() -> {
+                for (ConsistencyAlertSummary alertSummary : alertSummaries) {
+                    try {
+                        if (alertSummary.getAlertCount() == 1 && alertSummary.getSamples().size() == 1) {
+                            alerter.sendAlertNotice(alertSummary.getSamples().get(0));
+                        } else {
+                            alerter.sendAlertSummary(alertSummary);
+                        }
+                    } catch (Exception e) {
+                        log.error("[一致性任务框架] 发送任务{}的告警通知时，发生异常", alertSummary.getTaskId(), e);
+                    }
+                }
+            }, executor);
+        } catch (Exception e) {
+            // 线程池已满拒绝执行
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+}
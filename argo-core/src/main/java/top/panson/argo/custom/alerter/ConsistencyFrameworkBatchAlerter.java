@@ -0,0 +1,26 @@
+package top.panson.argo.custom.alerter;
+
+
+import top.panson.argo.model.ConsistencyAlertSummary;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 一致性框架批量异步告警接口
+ * 框架一次传入一批告警，实现类可以把它们合并成一次非阻塞的调用（如一次HTTP请求）发出，返回的future完成时表示这批告警发送结束，
+ * 框架不会占用线程等待它完成。只实现了{@link ConsistencyFrameworkAlerter}的业务服务由框架通过{@link ConsistencyFrameworkAlerterAdapter}适配
+ *
+ **/
+public interface ConsistencyFrameworkBatchAlerter {
+
+    /**
+     * 发送一批告警通知
+     * 没有开启告警合并时每批只有一条告警，告警汇总中的次数为1，样本就是触发告警的任务实例
+     *
+     * @param alertSummaries 告警汇总
+     * @return 发送结果
+     */
+    CompletableFuture<Void> sendAlertBatch(List<ConsistencyAlertSummary> alertSummaries);
+
+}
@@ -0,0 +1,658 @@
+package top.panson.argo.custom.codec;
+
+import cn.hutool.core.convert.Convert;
+import cn.hutool.json.JSON;
+import cn.hutool.json.JSONUtil;
+import org.springframework.core.ResolvableType;
+import top.panson.argo.exceptions.ConsistencyException;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 紧凑二进制任务参数编解码器
+ * 1、按方法声明的入参类型（包含泛型）编码，只写值不写类型，整数使用zigzag变长编码
+ * 2、同一个类的字段名在一次编码结果中只写一次（类的schema），之后的对象只按schema的顺序写字段值，
+ *    每个字段值带长度前缀，类新增或删除字段后依然可以解码历史数据
+ * 3、Object、接口、类型变量等无法确定具体类型的值退化为JSON字符串
+ * 4、编码结果超过压缩阈值时使用deflate压缩，最后转为Base64保存到任务参数中
+ *
+ **/
+public class BinaryTaskParameterCodec implements TaskParameterCodec {
+
+    /**
+     * 编解码器标识
+     */
+    public static final String CODEC_ID = "bin";
+
+    /**
+     * 编码结果的第一个字节 未压缩
+     */
+    private static final byte FORMAT_RAW = 0;
+    /**
+     * 编码结果的第一个字节 deflate压缩
+     */
+    private static final byte FORMAT_DEFLATE = 1;
+    /**
+     * 值的标记 null
+     */
+    private static final int TAG_NULL = 0;
+    /**
+     * 值的标记 二进制编码的值
+     */
+    private static final int TAG_VALUE = 1;
+    /**
+     * 值的标记 JSON字符串
+     */
+    private static final int TAG_JSON = 2;
+
+    /**
+     * 类的字段缓存
+     */
+    private static final Map<Class<?>, List<Field>> BEAN_FIELDS_CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * 超过该字节数时压缩
+     */
+    private final int compressThreshold;
+
+    /**
+     * 创建二进制编解码器
+     *
+     * @param compressThreshold 超过该字节数时压缩
+     */
+    public BinaryTaskParameterCodec(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public String codecId() {
+        return CODEC_ID;
+    }
+
+    @Override
+    public String encode(Object[] args, Type[] parameterTypes) {
+        Writer bodyWriter = new Writer();
+        bodyWriter.writeVarInt(args.length);
+        for (int i = 0; i < args.length; i++) {
+            bodyWriter.writeValue(args[i], ResolvableType.forType(parameterTypes[i]));
+        }
+        // schema表写在最前面，解码时先读出全部schema，跳过已经删除的字段时不会漏掉其中定义的schema
+        Writer writer = new Writer();
+        writer.writeVarInt(bodyWriter.schemaIndexes.size());
+        for (Class<?> clazz : bodyWriter.schemaIndexes.keySet()) {
+            List<Field> fields = getBeanFields(clazz);
+            writer.writeVarInt(fields.size());
+            for (Field field : fields) {
+                writer.writeString(field.getName());
+            }
+        }
+        byte[] body = bodyWriter.toByteArray();
+        writer.output.write(body, 0, body.length);
+        byte[] raw = writer.toByteArray();
+        ByteArrayOutputStream output = new ByteArrayOutputStream(raw.length + 1);
+        if (raw.length > compressThreshold) {
+            output.write(FORMAT_DEFLATE);
+            byte[] compressed = deflate(raw);
+            output.write(compressed, 0, compressed.length);
+        } else {
+            output.write(FORMAT_RAW);
+            output.write(raw, 0, raw.length);
+        }
+        return Base64.getEncoder().encodeToString(output.toByteArray());
+    }
+
+    @Override
+    public Object[] decode(String parameterText, Type[] parameterTypes) {
+        byte[] bytes = Base64.getDecoder().decode(parameterText);
+        byte[] raw = bytes[0] == FORMAT_DEFLATE ? inflate(bytes, 1) : Arrays.copyOfRange(bytes, 1, bytes.length);
+        Reader reader = new Reader(raw, 0, raw.length, new ArrayList<>());
+        int schemaCount = reader.readVarInt();
+        for (int i = 0; i < schemaCount; i++) {
+            String[] fieldNames = new String[reader.readVarInt()];
+            for (int j = 0; j < fieldNames.length; j++) {
+                fieldNames[j] = reader.readString();
+            }
+            reader.schemas.add(fieldNames);
+        }
+        Object[] args = new Object[reader.readVarInt()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = reader.readValue(ResolvableType.forType(parameterTypes[i]));
+        }
+        return args;
+    }
+
+    /**
+     * 获取类的全部字段 包含父类的字段 不包含静态和transient字段
+     *
+     * @param clazz 类
+     * @return 字段
+     */
+    private static List<Field> getBeanFields(Class<?> clazz) {
+        return BEAN_FIELDS_CACHE.computeIfAbsent(clazz, key -> {
+            List<Field> fields = new ArrayList<>();
+            for (Class<?> current = key; current != null && current != Object.class; current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+            return Collections.unmodifiableList(fields);
+        });
+    }
+
+    /**
+     * 是否按字段编码 有无参构造器的非JDK具体类
+     *
+     * @param clazz 类
+     * @return 是否按字段编码
+     */
+    private static boolean isBean(Class<?> clazz) {
+        if (clazz.isArray() || clazz.isEnum() || clazz.getName().startsWith("java.") || clazz.getName().startsWith("javax.")) {
+            return false;
+        }
+        return hasNoArgConstructor(clazz);
+    }
+
+    /**
+     * 是否是有无参构造器的具体类
+     *
+     * @param clazz 类
+     * @return 是否有无参构造器
+     */
+    private static boolean hasNoArgConstructor(Class<?> clazz) {
+        if (clazz.isInterface() || Modifier.isAbstract(clazz.getModifiers())) {
+            return false;
+        }
+        try {
+            clazz.getDeclaredConstructor();
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 通过无参构造器创建实例
+     *
+     * @param clazz 类
+     * @return 实例
+     */
+    private static Object newInstance(Class<?> clazz) {
+        try {
+            Constructor<?> constructor = clazz.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor.newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new ConsistencyException(e);
+        }
+    }
+
+    /**
+     * deflate压缩
+     *
+     * @param raw 原始数据
+     * @return 压缩后的数据
+     */
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(raw.length / 2 + 16);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                output.write(buffer, 0, length);
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * deflate解压
+     *
+     * @param bytes  压缩后的数据
+     * @param offset 压缩数据开始的位置
+     * @return 原始数据
+     */
+    private static byte[] inflate(byte[] bytes, int offset) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, offset, bytes.length - offset);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(bytes.length * 4);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new ConsistencyException("任务参数解压失败，数据不完整");
+                }
+                output.write(buffer, 0, length);
+            }
+            return output.toByteArray();
+        } catch (DataFormatException e) {
+            throw new ConsistencyException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * 编码器 一次编码使用一个实例
+     */
+    private static class Writer {
+
+        private final ByteArrayOutputStream output;
+
+        /**
+         * 本次编码中用到的类 value为类的编号 编码结束后统一写入schema表
+         */
+        private final Map<Class<?>, Integer> schemaIndexes;
+
+        Writer() {
+            this(new ByteArrayOutputStream(256), new LinkedHashMap<>());
+        }
+
+        Writer(ByteArrayOutputStream output, Map<Class<?>, Integer> schemaIndexes) {
+            this.output = output;
+            this.schemaIndexes = schemaIndexes;
+        }
+
+        byte[] toByteArray() {
+            return output.toByteArray();
+        }
+
+        void writeValue(Object value, ResolvableType type) {
+            if (value == null) {
+                writeVarInt(TAG_NULL);
+                return;
+            }
+            Class<?> clazz = type.resolve(Object.class);
+            if (!isSupported(clazz)) {
+                // 包装成数组 字符串、数字等值也能得到合法的JSON
+                writeVarInt(TAG_JSON);
+                writeString(JSONUtil.toJsonStr(new Object[]{value}));
+                return;
+            }
+            writeVarInt(TAG_VALUE);
+            if (clazz == String.class) {
+                writeString((String) value);
+            } else if (clazz == boolean.class || clazz == Boolean.class) {
+                output.write((Boolean) value ? 1 : 0);
+            } else if (clazz == int.class || clazz == Integer.class || clazz == short.class || clazz == Short.class
+                    || clazz == byte.class || clazz == Byte.class) {
+                writeVarLong(((Number) value).longValue());
+            } else if (clazz == long.class || clazz == Long.class) {
+                writeVarLong((Long) value);
+            } else if (clazz == char.class || clazz == Character.class) {
+                writeVarInt((Character) value);
+            } else if (clazz == double.class || clazz == Double.class) {
+                writeFixedLong(Double.doubleToLongBits((Double) value));
+            } else if (clazz == float.class || clazz == Float.class) {
+                writeVarInt(Float.floatToIntBits((Float) value));
+            } else if (clazz == BigDecimal.class || clazz == BigInteger.class) {
+                writeString(value.toString());
+            } else if (clazz == Date.class) {
+                writeVarLong(((Date) value).getTime());
+            } else if (clazz.isEnum()) {
+                writeString(((Enum<?>) value).name());
+            } else if (clazz == byte[].class) {
+                byte[] bytes = (byte[]) value;
+                writeVarInt(bytes.length);
+                output.write(bytes, 0, bytes.length);
+            } else if (clazz.isArray()) {
+                int length = Array.getLength(value);
+                writeVarInt(length);
+                ResolvableType componentType = type.getComponentType();
+                for (int i = 0; i < length; i++) {
+                    writeValue(Array.get(value, i), componentType);
+                }
+            } else if (Collection.class.isAssignableFrom(clazz)) {
+                Collection<?> collection = (Collection<?>) value;
+                writeVarInt(collection.size());
+                ResolvableType elementType = type.asCollection().getGeneric(0);
+                for (Object element : collection) {
+                    writeValue(element, elementType);
+                }
+            } else if (Map.class.isAssignableFrom(clazz)) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                writeVarInt(map.size());
+                ResolvableType mapType = type.asMap();
+                ResolvableType keyType = mapType.getGeneric(0);
+                ResolvableType valueType = mapType.getGeneric(1);
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeValue(entry.getKey(), keyType);
+                    writeValue(entry.getValue(), valueType);
+                }
+            } else {
+                writeBean(value, clazz);
+            }
+        }
+
+        /**
+         * 按字段写对象 先写类的编号，再按schema的顺序写字段值 每个字段值带长度前缀
+         */
+        private void writeBean(Object value, Class<?> clazz) {
+            List<Field> fields = getBeanFields(clazz);
+            writeVarInt(schemaIndexes.computeIfAbsent(clazz, key -> schemaIndexes.size()));
+            for (Field field : fields) {
+                Writer fieldWriter = new Writer(new ByteArrayOutputStream(16), schemaIndexes);
+                try {
+                    fieldWriter.writeValue(field.get(value), ResolvableType.forField(field));
+                } catch (IllegalAccessException e) {
+                    throw new ConsistencyException(e);
+                }
+                byte[] fieldBytes = fieldWriter.toByteArray();
+                writeVarInt(fieldBytes.length);
+                output.write(fieldBytes, 0, fieldBytes.length);
+            }
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            output.write(bytes, 0, bytes.length);
+        }
+
+        void writeVarInt(int value) {
+            writeUnsignedVarLong(value & 0xFFFFFFFFL);
+        }
+
+        void writeVarLong(long value) {
+            // zigzag编码 绝对值小的负数也只占很少的字节
+            writeUnsignedVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void writeFixedLong(long value) {
+            for (int i = 0; i < 8; i++) {
+                output.write((int) (value >>> (i * 8)));
+            }
+        }
+
+        private void writeUnsignedVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                output.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            output.write((int) value);
+        }
+    }
+
+    /**
+     * 解码器
+     */
+    private static class Reader {
+
+        private final byte[] bytes;
+
+        private int position;
+
+        private final int limit;
+
+        /**
+         * schema表 下标为类的编号，值为字段名
+         */
+        private final List<String[]> schemas;
+
+        Reader(byte[] bytes, int position, int limit, List<String[]> schemas) {
+            this.bytes = bytes;
+            this.position = position;
+            this.limit = limit;
+            this.schemas = schemas;
+        }
+
+        Object readValue(ResolvableType type) {
+            int tag = readVarInt();
+            if (tag == TAG_NULL) {
+                return null;
+            }
+            if (tag == TAG_JSON) {
+                return readJson(type);
+            }
+            Class<?> clazz = type.resolve(Object.class);
+            if (clazz == String.class) {
+                return readString();
+            } else if (clazz == boolean.class || clazz == Boolean.class) {
+                return readByte() != 0;
+            } else if (clazz == int.class || clazz == Integer.class) {
+                return (int) readVarLong();
+            } else if (clazz == short.class || clazz == Short.class) {
+                return (short) readVarLong();
+            } else if (clazz == byte.class || clazz == Byte.class) {
+                return (byte) readVarLong();
+            } else if (clazz == long.class || clazz == Long.class) {
+                return readVarLong();
+            } else if (clazz == char.class || clazz == Character.class) {
+                return (char) readVarInt();
+            } else if (clazz == double.class || clazz == Double.class) {
+                return Double.longBitsToDouble(readFixedLong());
+            } else if (clazz == float.class || clazz == Float.class) {
+                return Float.intBitsToFloat(readVarInt());
+            } else if (clazz == BigDecimal.class) {
+                return new BigDecimal(readString());
+            } else if (clazz == BigInteger.class) {
+                return new BigInteger(readString());
+            } else if (clazz == Date.class) {
+                return new Date(readVarLong());
+            } else if (clazz.isEnum()) {
+                return readEnum(clazz);
+            } else if (clazz == byte[].class) {
+                int length = readVarInt();
+                byte[] value = Arrays.copyOfRange(bytes, position, position + length);
+                position += length;
+                return value;
+            } else if (clazz.isArray()) {
+                int length = readVarInt();
+                ResolvableType componentType = type.getComponentType();
+                Object array = Array.newInstance(componentType.resolve(Object.class), length);
+                for (int i = 0; i < length; i++) {
+                    Array.set(array, i, readValue(componentType));
+                }
+                return array;
+            } else if (Collection.class.isAssignableFrom(clazz)) {
+                int size = readVarInt();
+                Collection<Object> collection = newCollection(clazz, size);
+                ResolvableType elementType = type.asCollection().getGeneric(0);
+                for (int i = 0; i < size; i++) {
+                    collection.add(readValue(elementType));
+                }
+                return collection;
+            } else if (Map.class.isAssignableFrom(clazz)) {
+                int size = readVarInt();
+                Map<Object, Object> map = newMap(clazz, size);
+                ResolvableType mapType = type.asMap();
+                for (int i = 0; i < size; i++) {
+                    Object key = readValue(mapType.getGeneric(0));
+                    map.put(key, readValue(mapType.getGeneric(1)));
+                }
+                return map;
+            }
+            return readBean(clazz);
+        }
+
+        /**
+         * 按schema读对象 当前类中已经没有的字段直接跳过
+         */
+        private Object readBean(Class<?> clazz) {
+            String[] fieldNames = schemas.get(readVarInt());
+            Map<String, Field> fields = new HashMap<>();
+            for (Field field : getBeanFields(clazz)) {
+                fields.putIfAbsent(field.getName(), field);
+            }
+            Object bean = newInstance(clazz);
+            for (String fieldName : fieldNames) {
+                int length = readVarInt();
+                Field field = fields.get(fieldName);
+                if (field != null) {
+                    Reader fieldReader = new Reader(bytes, position, position + length, schemas);
+                    try {
+                        field.set(bean, fieldReader.readValue(ResolvableType.forField(field)));
+                    } catch (IllegalAccessException e) {
+                        throw new ConsistencyException(e);
+                    }
+                }
+                position += length;
+            }
+            return bean;
+        }
+
+        /**
+         * 读取退化为JSON的值 声明为Object时和JSON编解码器一样返回JSONObject、JSONArray或者基本类型的值
+         */
+        private Object readJson(ResolvableType type) {
+            Object value = JSONUtil.parseArray(readString()).get(0);
+            if (value == null || type.resolve(Object.class) == Object.class) {
+                return value;
+            }
+            if (value instanceof JSON) {
+                return ((JSON) value).toBean(type.getType());
+            }
+            return Convert.convert(type.getType(), value);
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private Object readEnum(Class<?> clazz) {
+            return Enum.valueOf((Class<? extends Enum>) clazz, readString());
+        }
+
+        @SuppressWarnings("unchecked")
+        private Collection<Object> newCollection(Class<?> clazz, int size) {
+            if (clazz.isAssignableFrom(ArrayList.class)) {
+                return new ArrayList<>(size);
+            }
+            if (clazz.isAssignableFrom(LinkedHashSet.class)) {
+                return new LinkedHashSet<>(size * 2);
+            }
+            if (clazz.isAssignableFrom(TreeSet.class)) {
+                return new TreeSet<>();
+            }
+            return (Collection<Object>) newInstance(clazz);
+        }
+
+        @SuppressWarnings("unchecked")
+        private Map<Object, Object> newMap(Class<?> clazz, int size) {
+            if (clazz.isAssignableFrom(LinkedHashMap.class)) {
+                return new LinkedHashMap<>(size * 2);
+            }
+            if (clazz.isAssignableFrom(TreeMap.class)) {
+                return new TreeMap<>();
+            }
+            return (Map<Object, Object>) newInstance(clazz);
+        }
+
+        String readString() {
+            int length = readVarInt();
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        int readByte() {
+            if (position >= limit) {
+                throw new ConsistencyException("任务参数解码失败，数据不完整");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        int readVarInt() {
+            return (int) readUnsignedVarLong();
+        }
+
+        long readVarLong() {
+            long value = readUnsignedVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long readFixedLong() {
+            long value = 0L;
+            for (int i = 0; i < 8; i++) {
+                value |= ((long) readByte()) << (i * 8);
+            }
+            return value;
+        }
+
+        private long readUnsignedVarLong() {
+            long value = 0L;
+            int shift = 0;
+            int b;
+            do {
+                b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+
+    /**
+     * 是否可以按二进制编码 无法确定具体类型的值退化为JSON
+     *
+     * @param clazz 声明的类型
+     * @return 是否可以按二进制编码
+     */
+    private static boolean isSupported(Class<?> clazz) {
+        return clazz.isPrimitive() || clazz == String.class || clazz == Boolean.class || clazz == Integer.class
+                || clazz == Long.class || clazz == Short.class || clazz == Byte.class || clazz == Character.class
+                || clazz == Double.class || clazz == Float.class || clazz == BigDecimal.class || clazz == BigInteger.class
+                || clazz == Date.class || clazz.isEnum() || clazz.isArray()
+                || isSupportedCollection(clazz) || isSupportedMap(clazz) || isBean(clazz);
+    }
+
+    /**
+     * 是否是解码时可以创建实例的集合类型
+     *
+     * @param clazz 声明的类型
+     * @return 是否支持
+     */
+    private static boolean isSupportedCollection(Class<?> clazz) {
+        if (!Collection.class.isAssignableFrom(clazz)) {
+            return false;
+        }
+        return clazz.isAssignableFrom(ArrayList.class) || clazz.isAssignableFrom(LinkedHashSet.class)
+                || clazz.isAssignableFrom(TreeSet.class) || hasNoArgConstructor(clazz);
+    }
+
+    /**
+     * 是否是解码时可以创建实例的Map类型
+     *
+     * @param clazz 声明的类型
+     * @return 是否支持
+     */
+    private static boolean isSupportedMap(Class<?> clazz) {
+        if (!Map.class.isAssignableFrom(clazz)) {
+            return false;
+        }
+        return clazz.isAssignableFrom(LinkedHashMap.class) || clazz.isAssignableFrom(TreeMap.class) || hasNoArgConstructor(clazz);
+    }
+
+}
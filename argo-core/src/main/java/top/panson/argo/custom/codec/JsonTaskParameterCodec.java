@@ -0,0 +1,37 @@
+package top.panson.argo.custom.codec;
+
+import cn.hutool.json.JSONArray;
+import cn.hutool.json.JSONConfig;
+import top.panson.argo.utils.ReflectTools;
+
+import java.lang.reflect.Type;
+
+/**
+ * JSON任务参数编解码器 框架默认的编解码器
+ * 编码结果就是入参对象数组的JSON字符串，不加编解码器标识前缀，和历史数据的格式一致
+ *
+ **/
+public class JsonTaskParameterCodec implements TaskParameterCodec {
+
+    /**
+     * 编解码器标识
+     */
+    public static final String CODEC_ID = "json";
+
+    @Override
+    public String codecId() {
+        return CODEC_ID;
+    }
+
+    @Override
+    public String encode(Object[] args, Type[] parameterTypes) {
+        // 保留null元素 否则null参数之后的参数会错位
+        return new JSONArray(args, JSONConfig.create().setIgnoreNullValue(false)).toString();
+    }
+
+    @Override
+    public Object[] decode(String parameterText, Type[] parameterTypes) {
+        return ReflectTools.buildArgs(parameterText, parameterTypes);
+    }
+
+}
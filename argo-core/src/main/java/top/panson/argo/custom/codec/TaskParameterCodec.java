@@ -0,0 +1,37 @@
+package top.panson.argo.custom.codec;
+
+import java.lang.reflect.Type;
+
+/**
+ * 任务参数编解码器接口
+ * 如业务服务需要定制，实现该接口并注册为Spring的bean，再通过top.panson.argo.store.task-parameter-codec指定编解码器标识即可
+ *
+ **/
+public interface TaskParameterCodec {
+
+    /**
+     * 编解码器标识 会作为前缀和编码结果一起保存在任务参数中，读取时按前缀选择编解码器，不能包含冒号
+     *
+     * @return 编解码器标识
+     */
+    String codecId();
+
+    /**
+     * 把方法入参编码为任务参数
+     *
+     * @param args           方法入参
+     * @param parameterTypes 方法声明的入参类型 包含泛型信息
+     * @return 任务参数
+     */
+    String encode(Object[] args, Type[] parameterTypes);
+
+    /**
+     * 把任务参数解码为方法入参
+     *
+     * @param parameterText  任务参数 不包含编解码器标识前缀
+     * @param parameterTypes 方法声明的入参类型 包含泛型信息
+     * @return 方法入参
+     */
+    Object[] decode(String parameterText, Type[] parameterTypes);
+
+}
@@ -3,14 +3,15 @@ package top.panson.argo.custom.shard;
 import com.google.common.base.Preconditions;
 import lombok.Getter;
 import lombok.Setter;
-import lombok.SneakyThrows;
 
 import java.util.Calendar;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 任务分片键生成器实现类
  * 如业务服务在配置文件中，没有配置任务分片键生成器的实现类，则使用该类作为分片键生成器
+ * 上次生成的 时间戳 + 序列号 打包在一个AtomicLong中，通过CAS推进，生成时不加锁；workerId等配置在设置properties时解析一次
  *
  **/
 public final class SnowflakeShardingKeyGenerator implements ShardingKeyGenerator {
@@ -42,14 +43,16 @@ public final class SnowflakeShardingKeyGenerator implements ShardingKeyGenerator
     private static TimeService timeService = new TimeService();
 
     @Getter
-    @Setter
     private Properties properties = new Properties();
 
-    private byte sequenceOffset;
+    /**
+     * 上次生成的分片键去掉workerId后的值 高位为相对EPOCH的毫秒数，低SEQUENCE_BITS位为序列号
+     */
+    private final AtomicLong lastState = new AtomicLong(0L);
 
-    private long sequence;
+    private volatile long workerId = WORKER_ID;
 
-    private long lastMilliseconds;
+    private volatile int maxTolerateTimeDifferenceMilliseconds = MAX_TOLERATE_TIME_DIFFERENCE_MILLISECONDS;
 
     static {
         Calendar calendar = Calendar.getInstance();
@@ -67,55 +70,47 @@ public final class SnowflakeShardingKeyGenerator implements ShardingKeyGenerator
      * @return 一致性任务分片键
      */
     @Override
-    public synchronized long generateShardKey() {
-        long currentMilliseconds = timeService.getCurrentMillis();
-        if (waitTolerateTimeDifferenceIfNeed(currentMilliseconds)) {
-            currentMilliseconds = timeService.getCurrentMillis();
-        }
-        if (lastMilliseconds == currentMilliseconds) {
-            if (0L == (sequence = (sequence + 1) & SEQUENCE_MASK)) {
-                currentMilliseconds = waitUntilNextTime(currentMilliseconds);
+    public long generateShardKey() {
+        while (true) {
+            long last = lastState.get();
+            long lastMilliseconds = last >>> SEQUENCE_BITS;
+            long currentMilliseconds = timeService.getCurrentMillis() - EPOCH;
+            long next;
+            if (currentMilliseconds > lastMilliseconds) {
+                // 新的毫秒 序列号从0或1开始交替，避免并发不高时序列号总是0
+                next = (currentMilliseconds << SEQUENCE_BITS) | (currentMilliseconds & 1L);
+            } else {
+                // 只在时钟回拨时检查 同一毫秒内的常规路径不构造校验的可变参数数组
+                long timeDifferenceMilliseconds = lastMilliseconds - currentMilliseconds;
+                if (timeDifferenceMilliseconds > 0) {
+                    Preconditions.checkState(timeDifferenceMilliseconds < maxTolerateTimeDifferenceMilliseconds,
+                            "Clock is moving backwards, last time is %d milliseconds, current time is %d milliseconds",
+                            lastMilliseconds + EPOCH, currentMilliseconds + EPOCH);
+                }
+                // 同一毫秒内或者时钟小幅回拨 沿用上次的毫秒数递增序列号，序列号用完后自旋等待时钟走到下一毫秒
+                if ((last & SEQUENCE_MASK) == SEQUENCE_MASK) {
+                    continue;
+                }
+                next = last + 1;
+            }
+            if (lastState.compareAndSet(last, next)) {
+                return ((next >>> SEQUENCE_BITS) << TIMESTAMP_LEFT_SHIFT_BITS) | (workerId << WORKER_ID_LEFT_SHIFT_BITS) | (next & SEQUENCE_MASK);
             }
-        } else {
-            vibrateSequenceOffset();
-            sequence = sequenceOffset;
-        }
-        lastMilliseconds = currentMilliseconds;
-        return ((currentMilliseconds - EPOCH) << TIMESTAMP_LEFT_SHIFT_BITS) | (getWorkerId() << WORKER_ID_LEFT_SHIFT_BITS) | sequence;
-    }
-
-    @SneakyThrows
-    private boolean waitTolerateTimeDifferenceIfNeed(final long currentMilliseconds) {
-        if (lastMilliseconds <= currentMilliseconds) {
-            return false;
         }
-        long timeDifferenceMilliseconds = lastMilliseconds - currentMilliseconds;
-        Preconditions.checkState(timeDifferenceMilliseconds < getMaxTolerateTimeDifferenceMilliseconds(),
-                "Clock is moving backwards, last time is %d milliseconds, current time is %d milliseconds", lastMilliseconds, currentMilliseconds);
-        Thread.sleep(timeDifferenceMilliseconds);
-        return true;
     }
 
-    private long getWorkerId() {
-        long result = Long.valueOf(properties.getProperty("worker.id", String.valueOf(WORKER_ID)));
+    /**
+     * 设置配置 解析workerId和允许的最大时钟回拨毫秒数
+     *
+     * @param properties 配置
+     */
+    public void setProperties(Properties properties) {
+        long result = Long.parseLong(properties.getProperty("worker.id", String.valueOf(WORKER_ID)));
         Preconditions.checkArgument(result >= 0L && result < WORKER_ID_MAX_VALUE);
-        return result;
-    }
-
-    private int getMaxTolerateTimeDifferenceMilliseconds() {
-        return Integer.valueOf(properties.getProperty("max.tolerate.time.difference.milliseconds", String.valueOf(MAX_TOLERATE_TIME_DIFFERENCE_MILLISECONDS)));
-    }
-
-    private long waitUntilNextTime(final long lastTime) {
-        long result = timeService.getCurrentMillis();
-        while (result <= lastTime) {
-            result = timeService.getCurrentMillis();
-        }
-        return result;
-    }
-
-    private void vibrateSequenceOffset() {
-        sequenceOffset = (byte) (~sequenceOffset & 1);
+        this.maxTolerateTimeDifferenceMilliseconds = Integer.parseInt(properties.getProperty("max.tolerate.time.difference.milliseconds",
+                String.valueOf(MAX_TOLERATE_TIME_DIFFERENCE_MILLISECONDS)));
+        this.workerId = result;
+        this.properties = properties;
     }
 
     /**
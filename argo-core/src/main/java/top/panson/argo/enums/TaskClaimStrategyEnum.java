@@ -0,0 +1,28 @@
+package top.panson.argo.enums;
+
+/**
+ * 租约模式下抢占未完成任务的方式枚举类
+ *
+ **/
+public enum TaskClaimStrategyEnum {
+
+    /**
+     * SELECT ... FOR UPDATE SKIP LOCKED 锁定一批任务后写入租约 需要MySQL 8.0.1及以上版本
+     */
+    SKIP_LOCKED("SELECT ... FOR UPDATE SKIP LOCKED"),
+    /**
+     * UPDATE ... ORDER BY ... LIMIT 条件更新写入租约后再按租约查询 所有MySQL版本可用
+     */
+    CONDITIONAL_UPDATE("UPDATE ... ORDER BY ... LIMIT");
+
+    private final String desc;
+
+    TaskClaimStrategyEnum(String desc) {
+        this.desc = desc;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+
+}
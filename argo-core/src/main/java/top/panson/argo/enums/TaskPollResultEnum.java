@@ -0,0 +1,29 @@
+package top.panson.argo.enums;
+
+
+public enum TaskPollResultEnum {
+    /**
+     * 没有查询到未完成的任务
+     */
+    EMPTY("没有查询到任务"),
+    /**
+     * 查询到的任务不满一页 到期的任务已经全部提交
+     */
+    PARTIAL("查询到的任务不满一页"),
+    /**
+     * 查询到满页的任务 可能还有积压的任务
+     */
+    FULL("查询到满页的任务");
+
+
+    private final String desc;
+
+    TaskPollResultEnum(String desc) {
+        this.desc = desc;
+    }
+
+    public String getDesc() {
+        return desc;
+    }
+
+}
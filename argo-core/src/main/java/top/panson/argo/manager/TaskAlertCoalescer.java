@@ -0,0 +1,238 @@
+package top.panson.argo.manager;
+
+import cn.hutool.core.bean.BeanUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import top.panson.argo.config.TendConsistencyConfiguration;
+import top.panson.argo.custom.alerter.ConsistencyFrameworkBatchAlerter;
+import top.panson.argo.model.ConsistencyAlertSummary;
+import top.panson.argo.model.ConsistencyTaskInstance;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 告警合并器
+ * 任务失败触发告警时不再每次都提交到告警线程池、调用一次告警实现类，而是按 taskId + alertActionBeanName 分组计数，
+ * 每个合并窗口结束时由单独的线程为每个分组生成一次汇总（触发次数、首末时间和少量样本），同一个告警实现类的汇总一次批量发出，
+ * 告警风暴时对外的通知次数只和分组数有关。分组数和每组的样本数都有上限，内存占用有界
+ *
+ **/
+@Slf4j
+@Component
+public class TaskAlertCoalescer {
+
+    /**
+     * 发送汇总通知的线程名称
+     */
+    private static final String FLUSH_THREAD_NAME = "CTAlertCoalescer";
+
+    /**
+     * 框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+    /**
+     * 任务方法调用器的注册中心 用于获取告警实现类
+     */
+    @Autowired
+    private TaskInvokerRegistry taskInvokerRegistry;
+
+    /**
+     * 当前窗口内的告警分组 key为 [taskId, alertActionBeanName]
+     */
+    private final Map<List<String>, AlertGroup> alertGroups = new ConcurrentHashMap<>();
+    /**
+     * 当前窗口内因为分组数超过上限而没有合并的告警数
+     */
+    private final AtomicLong droppedAlertCount = new AtomicLong(0);
+    /**
+     * 发送汇总通知的线程
+     */
+    private ScheduledExecutorService flushScheduler;
+
+    /**
+     * 开启了告警合并时 启动发送汇总通知的线程
+     */
+    @PostConstruct
+    public void start() {
+        if (!tendConsistencyConfiguration.getAlertCoalesceEnabled()) {
+            return;
+        }
+        flushScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, FLUSH_THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        long windowMillis = tendConsistencyConfiguration.getAlertCoalesceWindowMillis();
+        flushScheduler.scheduleWithFixedDelay(this::flush, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止前发送剩余的汇总通知
+     */
+    @PreDestroy
+    public void stop() {
+        if (flushScheduler == null) {
+            return;
+        }
+        flushScheduler.shutdownNow();
+        flush();
+    }
+
+    /**
+     * 是否开启了告警合并
+     *
+     * @return 是否开启
+     */
+    public boolean isEnabled() {
+        return flushScheduler != null;
+    }
+
+    /**
+     * 记录一次告警 在当前窗口结束时合并发送
+     *
+     * @param taskInstance 触发告警的任务实例
+     */
+    public void offer(ConsistencyTaskInstance taskInstance) {
+        List<String> groupKey = Arrays.asList(taskInstance.getTaskId(), taskInstance.getAlertActionBeanName());
+        AlertGroup alertGroup = alertGroups.get(groupKey);
+        if (alertGroup == null) {
+            if (alertGroups.size() >= tendConsistencyConfiguration.getAlertCoalesceMaxGroups()) {
+                droppedAlertCount.incrementAndGet();
+                return;
+            }
+            alertGroup = alertGroups.computeIfAbsent(groupKey, key -> new AlertGroup());
+        }
+        if (!alertGroup.add(taskInstance, tendConsistencyConfiguration.getAlertCoalesceSampleSize())) {
+            // 分组已经被发送线程取走 重新放入新的分组
+            offer(taskInstance);
+        }
+    }
+
+    /**
+     * 为当前窗口内的每个分组发送一次汇总通知
+     */
+    private void flush() {
+        long droppedCount = droppedAlertCount.getAndSet(0);
+        if (droppedCount > 0) {
+            log.warn("[一致性任务框架] 告警分组数超过上限 {}，本窗口内有 {} 次告警没有发送", tendConsistencyConfiguration.getAlertCoalesceMaxGroups(), droppedCount);
+        }
+        // 同一个告警实现类的汇总合并成一批发送
+        Map<ConsistencyFrameworkBatchAlerter, List<ConsistencyAlertSummary>> alerterBatches = new LinkedHashMap<>();
+        for (List<String> groupKey : alertGroups.keySet()) {
+            AlertGroup alertGroup = alertGroups.remove(groupKey);
+            if (alertGroup == null) {
+                continue;
+            }
+            ConsistencyAlertSummary alertSummary = alertGroup.close(groupKey);
+            if (alertSummary.getAlertCount() == 0) {
+                continue;
+            }
+            log.warn("[一致性任务框架] 告警通知 任务{}在 [{} - {}] 内触发告警规则 {} 次，请进行排查。", alertSummary.getTaskId(),
+                    alertSummary.getFirstAlertTime(), alertSummary.getLastAlertTime(), alertSummary.getAlertCount());
+            if (StringUtils.isEmpty(alertSummary.getAlertActionBeanName())) {
+                continue;
+            }
+            ConsistencyFrameworkBatchAlerter alerter = taskInvokerRegistry.getBatchAlerter(alertSummary.getAlertActionBeanName());
+            if (alerter == null) {
+                log.warn("[一致性任务框架] 未获取到 ConsistencyFrameworkAlerter 相关的实现类，无法进行告警通知...");
+                continue;
+            }
+            alerterBatches.computeIfAbsent(alerter, key -> new ArrayList<>()).add(alertSummary);
+        }
+        alerterBatches.forEach((alerter, alertSummaries) -> {
+            try {
+                alerter.sendAlertBatch(alertSummaries).whenComplete((result, e) -> {
+                    if (e != null) {
+                        log.error("[一致性任务框架] 发送告警汇总通知时，发生异常", e);
+                    }
+                });
+            } catch (Exception e) {
+                log.error("[一致性任务框架] 发送告警汇总通知时，发生异常", e);
+            }
+        });
+    }
+
+    /**
+     * 一个窗口内同一个任务的告警
+     */
+    private static class AlertGroup {
+
+        /**
+         * 触发告警的次数
+         */
+        private long alertCount;
+        /**
+         * 第一次触发告警的时间
+         */
+        private long firstAlertTime;
+        /**
+         * 最后一次触发告警的时间
+         */
+        private long lastAlertTime;
+        /**
+         * 任务实例样本 保存触发告警时的副本，避免之后的重试修改了样本
+         */
+        private final List<ConsistencyTaskInstance> samples = new ArrayList<>();
+        /**
+         * 是否已经被发送线程取走
+         */
+        private boolean closed;
+
+        /**
+         * 记录一次告警
+         *
+         * @param taskInstance 触发告警的任务实例
+         * @param sampleSize   保留的样本数
+         * @return 分组已经被取走时返回false
+         */
+        synchronized boolean add(ConsistencyTaskInstance taskInstance, int sampleSize) {
+            if (closed) {
+                return false;
+            }
+            long now = System.currentTimeMillis();
+            if (alertCount == 0) {
+                firstAlertTime = now;
+            }
+            lastAlertTime = now;
+            alertCount++;
+            if (samples.size() < sampleSize) {
+                samples.add(BeanUtil.copyProperties(taskInstance, ConsistencyTaskInstance.class));
+            }
+            return true;
+        }
+
+        /**
+         * 取走分组 生成汇总
+         *
+         * @param groupKey 分组key [taskId, alertActionBeanName]
+         * @return 告警汇总
+         */
+        synchronized ConsistencyAlertSummary close(List<String> groupKey) {
+            closed = true;
+            return ConsistencyAlertSummary.builder()
+                    .taskId(groupKey.get(0))
+                    .alertActionBeanName(groupKey.get(1))
+                    .alertCount(alertCount)
+                    .firstAlertTime(firstAlertTime)
+                    .lastAlertTime(lastAlertTime)
+                    .samples(samples)
+                    .build();
+        }
+
+    }
+
+}
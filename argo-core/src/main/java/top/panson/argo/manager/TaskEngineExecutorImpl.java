@@ -1,30 +1,26 @@
 package top.panson.argo.manager;
 
-import cn.hutool.core.util.ReflectUtil;
 import cn.hutool.json.JSONUtil;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
-import org.springframework.util.CollectionUtils;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 import top.panson.argo.config.TendConsistencyConfiguration;
-import top.panson.argo.custom.alerter.ConsistencyFrameworkAlerter;
-import top.panson.argo.exceptions.ConsistencyException;
+import top.panson.argo.custom.alerter.ConsistencyFrameworkBatchAlerter;
+import top.panson.argo.model.ConsistencyAlertSummary;
 import top.panson.argo.model.ConsistencyTaskInstance;
 import top.panson.argo.service.TaskStoreService;
 import top.panson.argo.utils.ExpressionUtils;
-import top.panson.argo.utils.ReflectTools;
-import top.panson.argo.utils.SpringUtil;
 import top.panson.argo.utils.TimeUtils;
 
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.text.SimpleDateFormat;
-import java.util.Map;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.Collections;
 
 
 /**
@@ -46,37 +42,78 @@ public class TaskEngineExecutorImpl implements TaskEngineExecutor {
     @Autowired
     private TaskScheduleManager taskScheduleManager;
     /**
-     * 告警通知的线程池
+     * 获取框架级配置
      */
     @Autowired
-    private ThreadPoolExecutor alertNoticePool;
+    private TendConsistencyConfiguration consistencyConfig;
     /**
-     * 获取框架级配置
+     * 事务模板
      */
     @Autowired
-    private TendConsistencyConfiguration consistencyConfig;
+    private TransactionTemplate transactionTemplate;
+    /**
+     * 执行中任务的租约管理器
+     */
+    @Autowired
+    private TaskLeaseManager taskLeaseManager;
+    /**
+     * 任务定时触发器
+     */
+    @Autowired
+    private TaskTimingWheel taskTimingWheel;
+    /**
+     * 任务方法调用器的注册中心
+     */
+    @Autowired
+    private TaskInvokerRegistry taskInvokerRegistry;
+    /**
+     * 告警合并器
+     */
+    @Autowired
+    private TaskAlertCoalescer taskAlertCoalescer;
+    /**
+     * 任务参数编解码管理器
+     */
+    @Autowired
+    private TaskParameterCodecManager taskParameterCodecManager;
 
     /**
-     * 执行指定的任务实例  这里使用try catch 是因为需要将任务的错误信息也保存到任务表 正常情况下 不能进行try catch，不然事务是无法回滚的
+     * 执行指定的任务实例
      *
      * @param taskInstance 任务实例信息
      */
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public void executeTaskInstance(ConsistencyTaskInstance taskInstance) {
+        if (consistencyConfig.getExecuteInTransaction()) {
+            // 启动、执行、标记结果在同一个事务里，目标方法执行期间会一直占用一个数据库连接
+            transactionTemplate.executeWithoutResult(status -> doExecuteTaskInstance(taskInstance));
+            return;
+        }
+        // 启动任务和标记结果各自是独立的短事务，目标方法执行期间框架不占用数据库连接，连接池大小不再限制任务并发度
+        doExecuteTaskInstance(taskInstance);
+    }
+
+    /**
+     * 执行指定的任务实例  这里使用try catch 是因为需要将任务的错误信息也保存到任务表 正常情况下 不能进行try catch，不然事务是无法回滚的
+     *
+     * @param taskInstance 任务实例信息
+     */
+    private void doExecuteTaskInstance(ConsistencyTaskInstance taskInstance) {
         try {
             // 启动任务
+            // 启动成功时，内存中的任务实例已经和数据库保持一致（execute times已经+1），不需要再重新查询一次
             int result = taskStoreService.turnOnTask(taskInstance);
             if (result <= 0) {
-                log.warn("[一致性任务框架] 任务已经为启动状态，退出执行流程 task:{}", JSONUtil.toJsonStr(taskInstance));
+                log.warn("[一致性任务框架] 任务已经为启动状态或已被其他线程执行，退出执行流程 task:{}", JSONUtil.toJsonStr(taskInstance));
+                return;
+            }
+            // 租约模式下登记执行中的任务 执行期间由后台线程续约
+            taskLeaseManager.register(taskInstance);
+            // 精简字段扫描出来的任务 启动成功后才查询任务参数等字段
+            if (!taskStoreService.loadTaskPayload(taskInstance)) {
+                log.warn("[一致性任务框架] 任务已不存在，退出执行流程 id:{}", taskInstance.getId());
                 return;
             }
-
-            // 获取启动好的一致性任务实例
-            // 重新查询一次，数据是最新的，比如刚才SQL里更新了execute times
-            // Task任务实例对象里，并没有设置这个execute times = 0
-            // 但是在这里你重新查询了一次，让数据库里的数据刷新到内存对象里来，execute times = 1，就出来了
-            taskInstance = taskStoreService.getTaskByIdAndShardKey(taskInstance.getId(), taskInstance.getShardKey());
 
             // 执行任务
             taskScheduleManager.performanceTask(taskInstance);
@@ -104,9 +141,36 @@ public class TaskEngineExecutorImpl implements TaskEngineExecutor {
             taskInstance.setExecuteTime(getNextExecuteTime(taskInstance)); // 这个下一次执行时间，非常关键的一个运算
             int failResult = taskStoreService.markFail(taskInstance);
             log.info("[一致性任务框架] 标记为执行失败的结果为 [{}] 下次调度时间为 [{} - {}]", failResult > 0, taskInstance.getExecuteTime(), getFormatTime(taskInstance.getExecuteTime()));
-            // 执行降级逻辑
-            fallbackExecuteTask(taskInstance);
+            // 执行降级逻辑 降级成功时任务已经被删除，不需要再重试
+            if (doFallbackExecuteTask(taskInstance)) {
+                return;
+            }
+            // 开启了时间轮时，在下次调度时间准时重试，不用等下一次定时调度
+            scheduleRetryAfterCommit(taskInstance);
+        } finally {
+            taskLeaseManager.unregister(taskInstance);
+        }
+    }
+
+    /**
+     * 失败状态提交后再把任务放入时间轮
+     * 启动、执行、标记结果在同一个事务里时，事务还没有提交就触发重试，重试的启动语句会被失败标记的行锁阻塞或者看到旧的执行次数
+     *
+     * @param taskInstance 任务实例
+     */
+    private void scheduleRetryAfterCommit(ConsistencyTaskInstance taskInstance) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            taskTimingWheel.schedule(taskInstance);
+            return;
         }
+        TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCommit() {
+                        taskTimingWheel.schedule(taskInstance);
+                    }
+                }
+        );
     }
 
     /**
@@ -116,39 +180,36 @@ public class TaskEngineExecutorImpl implements TaskEngineExecutor {
      */
     @Override
     public void fallbackExecuteTask(ConsistencyTaskInstance taskInstance) {
+        doFallbackExecuteTask(taskInstance);
+    }
+
+    /**
+     * 执行降级逻辑
+     *
+     * @param taskInstance 任务实例
+     * @return 降级逻辑是否执行成功 成功时任务已经被标记为执行成功
+     */
+    private boolean doFallbackExecuteTask(ConsistencyTaskInstance taskInstance) {
         // 如果注解(任务实例信息)中没有提供降级类，则退出，不执行降级
         if (StringUtils.isEmpty(taskInstance.getFallbackClassName())) {
             // 解析并对表达式结果进行校验，并执行相关的告警通知逻辑
             // 如果没配置降级类且符合告警通知的表达式，则直接进行告警
             parseExpressionAndDoAlert(taskInstance);
-            return;
+            return false;
         }
         // 获取全局配置 默认是开启降级策略的 如果失败会进行降级
         // fail count threshold，失败重试到多少次了，此时才会去执行你的降级逻辑
         if (taskInstance.getExecuteTimes() <= consistencyConfig.getFailCountThreshold()) {
-            return;
+            return false;
         }
         log.info("[一致性任务框架] 执行任务id为{}的降级逻辑...", taskInstance.getId());
-        Class<?> fallbackClass = ReflectTools.getClassByName(taskInstance.getFallbackClassName());
-        if (ObjectUtils.isEmpty(fallbackClass)) {
-            return;
-        }
-
-        // 获取参数值列表的json数组字符串
-        String taskParameterText = taskInstance.getTaskParameter();
-        // 参数类型字符串 多个用逗号进行了分隔
-        String parameterTypes = taskInstance.getParameterTypes();
-        // 构造参数类数组
-        Class<?>[] paramTypes = getParamTypes(parameterTypes);
-        // 参数具体的值
-        Object[] paramValues = ReflectTools.buildArgs(taskParameterText, paramTypes);
-        // 从spring容器中获取相关降级的bean
-        Object fallbackClassBean = getBeanBySpringApplicationContext(fallbackClass, paramValues);
-        // 获取降级方法
-        Method fallbackMethod = ReflectUtil.getMethod(fallbackClass, taskInstance.getMethodName(), paramTypes);
         try {
+            // 获取启动时解析好的降级方法调用器 包含了spring容器中相关降级的bean 获取不到时按降级失败处理
+            TaskMethodInvoker fallbackInvoker = taskInvokerRegistry.getFallbackInvoker(taskInstance);
+            // 参数具体的值 按降级方法声明的入参类型（包含泛型）解码
+            Object[] paramValues = taskParameterCodecManager.decode(taskInstance.getTaskParameter(), fallbackInvoker.getGenericParameterTypes());
             // 执行降级逻辑的方法
-            fallbackMethod.invoke(fallbackClassBean, paramValues);
+            fallbackInvoker.invoke(paramValues);
             // 标记为执行成功 这里会移除该任务
             int successResult = taskStoreService.markSuccess(taskInstance);
 
@@ -157,6 +218,7 @@ public class TaskEngineExecutorImpl implements TaskEngineExecutor {
             // 开启redis，只要降级成功了，mark success失败了，也必须要去redis里写标记
 
             log.info("[一致性任务框架] 降级逻辑执行成功 标记为执行成功的结果为 [{}]", successResult > 0);
+            return true;
         } catch (Exception e) {
             // 解析并对表达式结果进行校验，并执行相关的告警通知逻辑
             // 在执行完降级逻辑后，再去发送消息。因为如果降级成功了，也就不用发送告警通知了。如果降级失败，再去发送告警通知。
@@ -165,31 +227,10 @@ public class TaskEngineExecutorImpl implements TaskEngineExecutor {
             int failResult = taskStoreService.markFallbackFail(taskInstance);
             log.error("[一致性任务框架] 降级逻辑也失败了 标记为执行失败的结果为 [{}] 下次调度时间为 [{} - {}]", failResult > 0,
                     taskInstance.getExecuteTime(), getFormatTime(taskInstance.getExecuteTime()), e);
+            return false;
         }
     }
 
-    /**
-     * 从spring容器中获取相关降级的bean
-     *
-     * @param fallbackClass 降级的Class类对象
-     * @param paramValues   参数值
-     * @return 相关降级的bean
-     */
-    private Object getBeanBySpringApplicationContext(Class<?> fallbackClass, Object[] paramValues) {
-        return SpringUtil.getBean(fallbackClass, paramValues);
-    }
-
-    /**
-     * 获取参数类型数组
-     *
-     * @param taskParameterText 参数类型json字符串 可转为JsonArray
-     * @return 参数类型数组
-     */
-    private Class<?>[] getParamTypes(String taskParameterText) {
-        return ReflectTools.buildTypeClassArray(taskParameterText.split(","));
-    }
-
-
     /**
      * 解析并对表达式结果进行校验，并执行相关的告警通知逻辑
      *
@@ -200,16 +241,17 @@ public class TaskEngineExecutorImpl implements TaskEngineExecutor {
             if (StringUtils.isEmpty(taskInstance.getAlertExpression())) {
                 return;
             }
-            // 使用线程的原因是不对正常业务调用造成时间的占用 一般推送消息使用的是发送短信，钉钉、企业微信、邮件等等，
-            // 操作会有一定的耗时（不过这个也要看具体的实现类是怎么实现的，如果实现类中使用的是异步推送告警，其实这里也就不用放到线程池中了）
-            alertNoticePool.submit(() -> {
-                // 对表达式进行重写
-                String expr = ExpressionUtils.rewriteExpr(taskInstance.getAlertExpression());
-                // 获取表达式解析后的结果
-                String exprResult = ExpressionUtils.readExpr(expr, ExpressionUtils.buildDataMap(taskInstance));
-                // 执行alert告警
-                doAlert(exprResult, taskInstance);
-            });
+            // 告警表达式已经缓存，在当前线程判断即可，开销很小
+            if (!ExpressionUtils.isAlertTriggered(taskInstance.getAlertExpression(), taskInstance)) {
+                return;
+            }
+            // 开启了告警合并时 触发的告警交给合并器在窗口结束时汇总发送
+            if (taskAlertCoalescer.isEnabled()) {
+                taskAlertCoalescer.offer(taskInstance);
+                return;
+            }
+            // 执行alert告警
+            doAlert(taskInstance);
         } catch (Exception e) {
             log.error("发送告警通知时，发生异常", e);
         }
@@ -218,16 +260,9 @@ public class TaskEngineExecutorImpl implements TaskEngineExecutor {
     /**
      * 执行告警
      *
-     * @param exprResult   表达式解析后的结果
      * @param taskInstance 任务实例信息
      */
-    private void doAlert(String exprResult, ConsistencyTaskInstance taskInstance) {
-        if (StringUtils.isEmpty(exprResult)) {
-            return;
-        }
-        if (!ExpressionUtils.RESULT_FLAG.equals(exprResult)) {
-            return;
-        }
+    private void doAlert(ConsistencyTaskInstance taskInstance) {
         //  执行相关的动作告警动作 发送钉钉消息/发送短信/访问一个URL接口等等方式 这里暂时先打印一条告警日志来代替 如果业务服务实现了框架提供的接口，则会进行调用相关的告警通知逻辑
         log.warn("[一致性任务框架] 告警通知 实例id为{}的任务{}触发告警规则，请进行排查。", taskInstance.getId(), JSONUtil.toJsonPrettyStr(taskInstance));
         if (StringUtils.isEmpty(taskInstance.getAlertActionBeanName())) {
@@ -243,40 +278,28 @@ public class TaskEngineExecutorImpl implements TaskEngineExecutor {
      * @param taskInstance 告警通知
      */
     private void sendAlertNotice(ConsistencyTaskInstance taskInstance) {
-        // 获取Spring容器中所有对于ConsistencyFrameworkAlerter接口的实现类
-        Map<String, ConsistencyFrameworkAlerter> beansOfTypeMap = SpringUtil.getBeansOfType(ConsistencyFrameworkAlerter.class);
-
-        if (CollectionUtils.isEmpty(beansOfTypeMap)) {
+        // 获取启动时缓存的告警实现类 只实现了ConsistencyFrameworkAlerter的实现类已经适配为在告警线程池中执行
+        ConsistencyFrameworkBatchAlerter alerter = taskInvokerRegistry.getBatchAlerter(taskInstance.getAlertActionBeanName());
+        if (ObjectUtils.isEmpty(alerter)) {
             log.warn("[一致性任务框架] 未获取到 ConsistencyFrameworkAlerter 相关的实现类，无法进行告警通知...");
             return;
         }
 
-        try {
-            // 获取ConsistencyFrameworkAlerter的实现类并发送告警通知
-            getConsistencyFrameworkAlerterImpler(beansOfTypeMap, taskInstance)
-                    .sendAlertNotice(taskInstance);
-        } catch (Exception e) {
-            log.error("[一致性任务框架] 调用业务服务实现具体的告警通知类时，发生异常", e);
-            throw new ConsistencyException(e);
-        }
-    }
-
-    /**
-     * 获取ConsistencyFrameworkAlerter的实现类
-     *
-     * @param beansOfTypeMap ConsistencyFrameworkAlerter接口实现类的map集合
-     * @param taskInstance   任务实例信息
-     * @return 获取ConsistencyFrameworkAlerter的实现类
-     */
-    private ConsistencyFrameworkAlerter getConsistencyFrameworkAlerterImpler(Map<String, ConsistencyFrameworkAlerter> beansOfTypeMap, ConsistencyTaskInstance taskInstance) {
-        // 如果只有一个实现类
-        if (beansOfTypeMap.size() == 1) {
-            String[] beanNamesForType = SpringUtil.getBeanNamesForType(ConsistencyFrameworkAlerter.class);
-            return (ConsistencyFrameworkAlerter) SpringUtil.getBean(beanNamesForType[0]);
-        }
-
-        // 如果有多个实现类 获取注解中定义好的执行告警动作的alertActionBeanName获取对应的实现类
-        return beansOfTypeMap.get(taskInstance.getAlertActionBeanName());
+        long now = System.currentTimeMillis();
+        ConsistencyAlertSummary alertSummary = ConsistencyAlertSummary.builder()
+                .taskId(taskInstance.getTaskId())
+                .alertActionBeanName(taskInstance.getAlertActionBeanName())
+                .alertCount(1L)
+                .firstAlertTime(now)
+                .lastAlertTime(now)
+                .samples(Collections.singletonList(taskInstance))
+                .build();
+        // 异步发送告警通知 不等待发送完成
+        alerter.sendAlertBatch(Collections.singletonList(alertSummary)).whenComplete((result, e) -> {
+            if (e != null) {
+                log.error("[一致性任务框架] 调用业务服务实现具体的告警通知类时，发生异常", e);
+            }
+        });
     }
 
     /**
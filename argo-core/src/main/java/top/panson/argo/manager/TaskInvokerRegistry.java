@@ -0,0 +1,246 @@
+package top.panson.argo.manager;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ListableBeanFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.StringUtils;
+import top.panson.argo.annotation.ConsistencyTask;
+import top.panson.argo.custom.alerter.ConsistencyFrameworkAlerter;
+import top.panson.argo.custom.alerter.ConsistencyFrameworkAlerterAdapter;
+import top.panson.argo.custom.alerter.ConsistencyFrameworkBatchAlerter;
+import top.panson.argo.exceptions.ConsistencyException;
+import top.panson.argo.model.ConsistencyTaskInstance;
+import top.panson.argo.utils.ReflectTools;
+import top.panson.argo.utils.SpringUtil;
+
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 任务方法调用器的注册中心
+ * 启动完成后扫描全部标注了@ConsistencyTask的方法，一次性解析好目标方法和降级方法的bean、Method和方法句柄，按方法签名缓存，
+ * 告警实现类也只在启动时获取一次（只实现了阻塞接口的告警实现类适配成批量告警实现类）。调度执行、降级、告警时直接按方法签名取出调用器，不再有Class.forName、getBean、getMethod等反射查找
+ * 注：启动时没有注册到的方法签名（方法签名按入参的实际类型生成，例如入参的实际类型是声明类型的子类）在第一次执行时解析，只缓存解析成功的调用器，
+ * 解析失败时抛出异常，由调用方按执行失败处理并在下次重试时重新解析，避免bean暂时获取不到时把任务当作执行成功
+ *
+ **/
+@Slf4j
+@Component
+public class TaskInvokerRegistry implements SmartInitializingSingleton {
+
+    /**
+     * 方法签名中类名和方法名的分隔符
+     */
+    private static final String METHOD_SIGN_SEPARATOR = "#";
+
+    /**
+     * 目标方法的调用器 key为方法签名 只缓存解析成功的调用器
+     */
+    private final Map<String, TaskMethodInvoker> targetInvokers = new ConcurrentHashMap<>();
+    /**
+     * 降级方法的调用器 key为降级类的名称，value的key为目标方法的方法签名 只缓存解析成功的调用器
+     */
+    private final Map<String, Map<String, TaskMethodInvoker>> fallbackInvokers = new ConcurrentHashMap<>();
+    /**
+     * 业务服务实现的告警通知类 key为beanName
+     */
+    private volatile Map<String, ConsistencyFrameworkBatchAlerter> batchAlerters;
+
+    /**
+     * 告警通知的线程池 用于执行适配后的阻塞告警实现类
+     */
+    @Autowired
+    @Qualifier("alertNoticePool")
+    private ThreadPoolExecutor alertNoticePool;
+
+    /**
+     * 全部单例初始化完成后 注册全部一致性任务方法的调用器
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        ListableBeanFactory beanFactory = SpringUtil.getBeanFactory();
+        int registeredCount = 0;
+        for (String beanName : beanFactory.getBeanNamesForType(Object.class, false, false)) {
+            Class<?> beanType = beanFactory.getType(beanName);
+            if (beanType == null) {
+                continue;
+            }
+            Class<?> targetClass = ClassUtils.getUserClass(beanType);
+            for (Method method : targetClass.getMethods()) {
+                ConsistencyTask consistencyTask = AnnotationUtils.findAnnotation(method, ConsistencyTask.class);
+                if (consistencyTask == null) {
+                    continue;
+                }
+                String methodSignName = ReflectTools.getMethodSignName(targetClass, method);
+                try {
+                    targetInvokers.put(methodSignName, buildInvoker(targetClass, method));
+                    if (!void.class.equals(consistencyTask.fallbackClass())) {
+                        getFallbackInvokers(consistencyTask.fallbackClass().getName()).put(methodSignName,
+                                resolveInvoker(consistencyTask.fallbackClass(), method.getName(), method.getParameterTypes()));
+                    }
+                    registeredCount++;
+                } catch (ConsistencyException e) {
+                    // 启动时注册失败不影响启动 任务执行时会重新解析
+                    log.warn("[一致性任务框架] 注册 {} 的调用器失败，任务执行时将重新解析", methodSignName, e);
+                }
+            }
+        }
+        batchAlerters = loadBatchAlerters();
+        log.info("[一致性任务框架] 已注册 {} 个一致性任务方法的调用器", registeredCount);
+    }
+
+    /**
+     * 获取任务目标方法的调用器
+     *
+     * @param taskInstance 任务实例
+     * @return 调用器
+     * @throws ConsistencyException 目标类、目标方法或者bean获取不到时抛出
+     */
+    public TaskMethodInvoker getTargetInvoker(ConsistencyTaskInstance taskInstance) {
+        String methodSignName = taskInstance.getMethodSignName();
+        TaskMethodInvoker invoker = targetInvokers.get(methodSignName);
+        if (invoker != null) {
+            return invoker;
+        }
+        Class<?> clazz = getClassByName(methodSignName.substring(0, methodSignName.indexOf(METHOD_SIGN_SEPARATOR)));
+        invoker = resolveInvoker(clazz, taskInstance.getMethodName(), getParameterClasses(taskInstance));
+        TaskMethodInvoker existing = targetInvokers.putIfAbsent(methodSignName, invoker);
+        return existing == null ? invoker : existing;
+    }
+
+    /**
+     * 获取任务降级方法的调用器
+     *
+     * @param taskInstance 任务实例
+     * @return 调用器
+     * @throws ConsistencyException 降级类、降级方法或者bean获取不到时抛出
+     */
+    public TaskMethodInvoker getFallbackInvoker(ConsistencyTaskInstance taskInstance) {
+        Map<String, TaskMethodInvoker> invokers = getFallbackInvokers(taskInstance.getFallbackClassName());
+        TaskMethodInvoker invoker = invokers.get(taskInstance.getMethodSignName());
+        if (invoker != null) {
+            return invoker;
+        }
+        Class<?> fallbackClass = getClassByName(taskInstance.getFallbackClassName());
+        invoker = resolveInvoker(fallbackClass, taskInstance.getMethodName(), getParameterClasses(taskInstance));
+        TaskMethodInvoker existing = invokers.putIfAbsent(taskInstance.getMethodSignName(), invoker);
+        return existing == null ? invoker : existing;
+    }
+
+    /**
+     * 获取告警使用的批量告警实现类
+     * 只有一个实现类时直接使用它，有多个实现类时使用注解中alertActionBeanName指定的实现类
+     *
+     * @param alertActionBeanName 注解中指定的告警实现类的beanName
+     * @return 批量告警实现类 没有实现类时返回null
+     */
+    public ConsistencyFrameworkBatchAlerter getBatchAlerter(String alertActionBeanName) {
+        Map<String, ConsistencyFrameworkBatchAlerter> alerterMap = batchAlerters;
+        if (alerterMap == null) {
+            alerterMap = loadBatchAlerters();
+            batchAlerters = alerterMap;
+        }
+        if (CollectionUtils.isEmpty(alerterMap)) {
+            return null;
+        }
+        if (alerterMap.size() == 1) {
+            return alerterMap.values().iterator().next();
+        }
+        return alerterMap.get(alertActionBeanName);
+    }
+
+    /**
+     * 获取全部告警实现类 只实现了ConsistencyFrameworkAlerter的bean适配成批量告警实现类，在告警线程池中执行
+     *
+     * @return 批量告警实现类 key为beanName
+     */
+    private Map<String, ConsistencyFrameworkBatchAlerter> loadBatchAlerters() {
+        Map<String, ConsistencyFrameworkBatchAlerter> alerterMap = new LinkedHashMap<>(SpringUtil.getBeansOfType(ConsistencyFrameworkBatchAlerter.class));
+        SpringUtil.getBeansOfType(ConsistencyFrameworkAlerter.class).forEach((beanName, alerter) ->
+                alerterMap.putIfAbsent(beanName, new ConsistencyFrameworkAlerterAdapter(alerter, alertNoticePool)));
+        return alerterMap;
+    }
+
+    /**
+     * 获取降级类的调用器缓存
+     *
+     * @param fallbackClassName 降级类的名称
+     * @return 调用器缓存 key为目标方法的方法签名
+     */
+    private Map<String, TaskMethodInvoker> getFallbackInvokers(String fallbackClassName) {
+        return fallbackInvokers.computeIfAbsent(fallbackClassName, key -> new ConcurrentHashMap<>());
+    }
+
+    /**
+     * 按类名获取类
+     *
+     * @param className 类的全限定名
+     * @return 类
+     * @throws ConsistencyException 类不存在时抛出
+     */
+    private Class<?> getClassByName(String className) {
+        Class<?> clazz = ReflectTools.getClassByName(className);
+        if (clazz == null) {
+            throw new ConsistencyException(String.format("获取类 %s 失败", className));
+        }
+        return clazz;
+    }
+
+    /**
+     * 按方法名和入参类型解析调用器
+     *
+     * @param clazz            方法所在的类
+     * @param methodName       方法名称
+     * @param parameterClasses 入参类型
+     * @return 调用器
+     * @throws ConsistencyException 方法不存在或者获取不到bean时抛出
+     */
+    private TaskMethodInvoker resolveInvoker(Class<?> clazz, String methodName, Class<?>[] parameterClasses) {
+        try {
+            return buildInvoker(clazz, clazz.getMethod(methodName, parameterClasses));
+        } catch (NoSuchMethodException e) {
+            throw new ConsistencyException(e);
+        }
+    }
+
+    /**
+     * 从spring容器中获取方法所在的bean 创建调用器
+     *
+     * @param clazz  方法所在的类
+     * @param method 方法
+     * @return 调用器
+     * @throws ConsistencyException 获取不到bean或者创建方法句柄失败时抛出
+     */
+    private TaskMethodInvoker buildInvoker(Class<?> clazz, Method method) {
+        try {
+            return new TaskMethodInvoker(SpringUtil.getBean(clazz), method);
+        } catch (ConsistencyException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new ConsistencyException(e);
+        }
+    }
+
+    /**
+     * 构造任务方法的入参类型数组
+     *
+     * @param taskInstance 任务实例
+     * @return 入参类型数组
+     */
+    private Class<?>[] getParameterClasses(ConsistencyTaskInstance taskInstance) {
+        if (StringUtils.isEmpty(taskInstance.getParameterTypes())) {
+            return new Class<?>[0];
+        }
+        return ReflectTools.buildTypeClassArray(taskInstance.getParameterTypes().split(","));
+    }
+
+}
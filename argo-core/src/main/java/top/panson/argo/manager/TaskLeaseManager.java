@@ -0,0 +1,178 @@
+package top.panson.argo.manager;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import top.panson.argo.config.TendConsistencyConfiguration;
+import top.panson.argo.mapper.TaskStoreMapper;
+import top.panson.argo.model.ConsistencyTaskInstance;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 执行中任务的租约管理器
+ * 1、续约：当前节点执行中的任务，每隔租约时长的1/3批量续约一次，任务执行再久也不会被其他节点抢走
+ * 2、回收：执行节点宕机后，任务停留在执行中状态且不再续约，租约到期后会被批量重置为失败状态，重新参与调度，
+ * 不会一直占用每次查询的条数
+ *
+ **/
+@Slf4j
+@Component
+public class TaskLeaseManager {
+
+    /**
+     * 租约线程名称
+     */
+    private static final String LEASE_THREAD_NAME = "CTLeaseManager";
+    /**
+     * 每次续约的最大任务数
+     */
+    private static final int RENEW_BATCH_SIZE = 500;
+    /**
+     * 每轮回收最多执行的批次数 避免一次回收占用过长时间
+     */
+    private static final int MAX_REAP_ROUNDS = 10;
+    /**
+     * 回收时写入的错误信息
+     */
+    private static final String LEASE_EXPIRED_ERROR_MSG = "任务执行租约已过期，执行节点可能已宕机";
+
+    /**
+     * 任务存储的mapper组件
+     */
+    @Autowired
+    private TaskStoreMapper taskStoreMapper;
+    /**
+     * 框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+
+    /**
+     * 当前节点执行中的任务 key为 id:shardKey
+     */
+    private final Map<String, ConsistencyTaskInstance> executingTasks = new ConcurrentHashMap<>();
+    /**
+     * 续约和回收的调度线程
+     */
+    private ScheduledExecutorService leaseScheduler;
+
+    /**
+     * 开启了租约模式时 启动续约和回收任务
+     */
+    @PostConstruct
+    public void start() {
+        if (!tendConsistencyConfiguration.getLeaseEnabled()) {
+            return;
+        }
+        leaseScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, LEASE_THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        long renewIntervalMillis = Math.max(1L, tendConsistencyConfiguration.getLeaseDurationMillis() / 3);
+        leaseScheduler.scheduleWithFixedDelay(this::renewExecutingLeases, renewIntervalMillis, renewIntervalMillis, TimeUnit.MILLISECONDS);
+        leaseScheduler.scheduleWithFixedDelay(this::reapExpiredLeases, tendConsistencyConfiguration.getLeaseReaperIntervalMillis(),
+                tendConsistencyConfiguration.getLeaseReaperIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止续约和回收任务
+     */
+    @PreDestroy
+    public void stop() {
+        if (leaseScheduler != null) {
+            leaseScheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 登记当前节点开始执行的任务
+     *
+     * @param taskInstance 任务实例
+     */
+    public void register(ConsistencyTaskInstance taskInstance) {
+        if (leaseScheduler == null) {
+            return;
+        }
+        executingTasks.put(getTaskKey(taskInstance), taskInstance);
+    }
+
+    /**
+     * 注销当前节点执行结束的任务
+     *
+     * @param taskInstance 任务实例
+     */
+    public void unregister(ConsistencyTaskInstance taskInstance) {
+        if (leaseScheduler == null) {
+            return;
+        }
+        executingTasks.remove(getTaskKey(taskInstance));
+    }
+
+    /**
+     * 给当前节点执行中的任务续约
+     */
+    private void renewExecutingLeases() {
+        try {
+            if (executingTasks.isEmpty()) {
+                return;
+            }
+            long leaseExpireTime = System.currentTimeMillis() + tendConsistencyConfiguration.getLeaseDurationMillis();
+            List<ConsistencyTaskInstance> batch = new ArrayList<>(Math.min(executingTasks.size(), RENEW_BATCH_SIZE));
+            for (ConsistencyTaskInstance taskInstance : executingTasks.values()) {
+                batch.add(taskInstance);
+                if (batch.size() >= RENEW_BATCH_SIZE) {
+                    taskStoreMapper.renewLease(batch, tendConsistencyConfiguration.getNodeId(), leaseExpireTime);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                taskStoreMapper.renewLease(batch, tendConsistencyConfiguration.getNodeId(), leaseExpireTime);
+            }
+        } catch (Exception e) {
+            log.error("[一致性任务框架] 执行中任务续约时，发生异常", e);
+        }
+    }
+
+    /**
+     * 回收租约过期的执行中任务
+     */
+    private void reapExpiredLeases() {
+        try {
+            int batchSize = tendConsistencyConfiguration.getLeaseReaperBatchSize();
+            int totalCount = 0;
+            for (int round = 0; round < MAX_REAP_ROUNDS; round++) {
+                int resetCount = taskStoreMapper.resetExpiredLease(System.currentTimeMillis(), LEASE_EXPIRED_ERROR_MSG, batchSize);
+                totalCount += resetCount;
+                if (resetCount < batchSize) {
+                    break;
+                }
+            }
+            if (totalCount > 0) {
+                log.warn("[一致性任务框架] 回收了{}个租约过期的执行中任务", totalCount);
+            }
+        } catch (Exception e) {
+            log.error("[一致性任务框架] 回收租约过期的执行中任务时，发生异常", e);
+        }
+    }
+
+    /**
+     * 获取任务的唯一标识
+     *
+     * @param taskInstance 任务实例
+     * @return 唯一标识
+     */
+    private String getTaskKey(ConsistencyTaskInstance taskInstance) {
+        return taskInstance.getId() + ":" + taskInstance.getShardKey();
+    }
+
+}
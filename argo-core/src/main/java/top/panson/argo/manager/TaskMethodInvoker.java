@@ -0,0 +1,78 @@
+package top.panson.argo.manager;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import top.panson.argo.exceptions.ConsistencyException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.lang.reflect.UndeclaredThrowableException;
+
+/**
+ * 任务方法的调用器
+ * 创建时一次性解析好bean、方法和方法句柄，调用时直接通过方法句柄执行，不再有反射查找
+ *
+ **/
+@Getter
+public class TaskMethodInvoker {
+
+    /**
+     * 方法所在的bean
+     */
+    private final Object bean;
+    /**
+     * 方法
+     */
+    private final Method method;
+    /**
+     * 方法声明的入参类型 包含泛型
+     */
+    private final Type[] genericParameterTypes;
+    /**
+     * 绑定了bean的方法句柄 类型统一为 (Object[])Object
+     */
+    @Getter(AccessLevel.NONE)
+    private final MethodHandle methodHandle;
+
+    /**
+     * 创建调用器
+     *
+     * @param bean   方法所在的bean
+     * @param method 方法
+     */
+    public TaskMethodInvoker(Object bean, Method method) {
+        this.bean = bean;
+        this.method = method;
+        this.genericParameterTypes = method.getGenericParameterTypes();
+        try {
+            method.setAccessible(true);
+            this.methodHandle = MethodHandles.lookup().unreflect(method)
+                    .bindTo(bean)
+                    .asSpreader(Object[].class, method.getParameterCount())
+                    .asType(MethodType.methodType(Object.class, Object[].class));
+        } catch (IllegalAccessException e) {
+            throw new ConsistencyException(e);
+        }
+    }
+
+    /**
+     * 调用方法 方法抛出的异常原样抛出
+     *
+     * @param args 入参
+     * @return 方法的返回值 void方法返回null
+     * @throws Exception 方法抛出的异常
+     */
+    public Object invoke(Object[] args) throws Exception {
+        try {
+            return (Object) methodHandle.invokeExact(args);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new UndeclaredThrowableException(e);
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+package top.panson.argo.manager;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import top.panson.argo.config.TendConsistencyConfiguration;
+import top.panson.argo.custom.codec.BinaryTaskParameterCodec;
+import top.panson.argo.custom.codec.JsonTaskParameterCodec;
+import top.panson.argo.custom.codec.TaskParameterCodec;
+import top.panson.argo.exceptions.ConsistencyException;
+
+import javax.annotation.PostConstruct;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 任务参数编解码管理器
+ * 写入时使用配置的编解码器，非JSON编解码器的结果带上 编解码器标识: 前缀；读取时按前缀选择编解码器，
+ * 没有前缀的按JSON解码，因此切换编解码器后历史任务依然可以正常执行，不同格式的任务可以在同一张表中共存
+ *
+ **/
+@Slf4j
+@Component
+public class TaskParameterCodecManager {
+
+    /**
+     * 编解码器标识与编码结果之间的分隔符
+     */
+    private static final char CODEC_ID_SEPARATOR = ':';
+
+    /**
+     * 框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+    /**
+     * 业务服务自定义的编解码器
+     */
+    @Autowired(required = false)
+    private List<TaskParameterCodec> customCodecs = Collections.emptyList();
+
+    /**
+     * 全部编解码器 key为编解码器标识
+     */
+    private final Map<String, TaskParameterCodec> codecs = new HashMap<>();
+    /**
+     * 写入时使用的编解码器
+     */
+    private TaskParameterCodec writeCodec;
+
+    /**
+     * 注册框架内置和业务服务自定义的编解码器
+     */
+    @PostConstruct
+    public void init() {
+        register(new JsonTaskParameterCodec());
+        register(new BinaryTaskParameterCodec(tendConsistencyConfiguration.getTaskParameterCompressThreshold()));
+        customCodecs.forEach(this::register);
+        writeCodec = codecs.get(tendConsistencyConfiguration.getTaskParameterCodec());
+        if (writeCodec == null) {
+            throw new ConsistencyException(String.format("taskParameterCodec配置错误！注意：未找到标识为 %s 的任务参数编解码器，可选值为 %s",
+                    tendConsistencyConfiguration.getTaskParameterCodec(), codecs.keySet()));
+        }
+    }
+
+    /**
+     * 把方法入参编码为任务参数
+     *
+     * @param args           方法入参
+     * @param parameterTypes 方法声明的入参类型
+     * @return 任务参数
+     */
+    public String encode(Object[] args, Type[] parameterTypes) {
+        String parameterText = writeCodec.encode(args, parameterTypes);
+        if (JsonTaskParameterCodec.CODEC_ID.equals(writeCodec.codecId())) {
+            return parameterText;
+        }
+        return writeCodec.codecId() + CODEC_ID_SEPARATOR + parameterText;
+    }
+
+    /**
+     * 把任务参数解码为方法入参
+     *
+     * @param parameterText  任务参数
+     * @param parameterTypes 方法声明的入参类型
+     * @return 方法入参
+     */
+    public Object[] decode(String parameterText, Type[] parameterTypes) {
+        int separatorIndex = StringUtils.isEmpty(parameterText) ? -1 : parameterText.indexOf(CODEC_ID_SEPARATOR);
+        // JSON数组以[开头，冒号只可能出现在JSON内部
+        if (separatorIndex < 0 || parameterText.charAt(0) == '[') {
+            return codecs.get(JsonTaskParameterCodec.CODEC_ID).decode(parameterText, parameterTypes);
+        }
+        String codecId = parameterText.substring(0, separatorIndex);
+        TaskParameterCodec codec = codecs.get(codecId);
+        if (codec == null) {
+            throw new ConsistencyException(String.format("未找到标识为 %s 的任务参数编解码器", codecId));
+        }
+        return codec.decode(parameterText.substring(separatorIndex + 1), parameterTypes);
+    }
+
+    /**
+     * 注册编解码器
+     *
+     * @param codec 编解码器
+     */
+    private void register(TaskParameterCodec codec) {
+        if (codec.codecId().indexOf(CODEC_ID_SEPARATOR) >= 0) {
+            throw new ConsistencyException(String.format("任务参数编解码器 %s 的标识不能包含冒号", codec.getClass().getName()));
+        }
+        TaskParameterCodec existingCodec = codecs.put(codec.codecId(), codec);
+        if (existingCodec != null) {
+            log.warn("[一致性任务框架] 任务参数编解码器 {} 覆盖了标识相同的 {}", codec.getClass().getName(), existingCodec.getClass().getName());
+        }
+    }
+
+}
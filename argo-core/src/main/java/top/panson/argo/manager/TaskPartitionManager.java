@@ -0,0 +1,151 @@
+package top.panson.argo.manager;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import top.panson.argo.config.TendConsistencyConfiguration;
+import top.panson.argo.mapper.TaskNodeMapper;
+import top.panson.argo.model.TaskPartition;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 任务分区管理器
+ * 各节点定时向节点表写入心跳，按节点标识排序后把 MOD(id, bucketCount) 的桶平均分成连续的几段，每个节点只扫描自己的一段，
+ * 节点加入或者下线后，下一次心跳时所有节点会重新计算自己负责的分区。节点之间不需要抢占任务，也就没有抢占的竞争
+ * 注：重新分区的短暂过程中可能有两个节点同时扫描到同一个任务，启动任务时的条件更新保证只有一个节点能执行
+ *
+ **/
+@Slf4j
+@Component
+public class TaskPartitionManager {
+
+    /**
+     * 心跳线程名称
+     */
+    private static final String HEARTBEAT_THREAD_NAME = "CTPartitionHeartbeat";
+    /**
+     * 下线超过心跳过期时间的多少倍之后 从节点表中清理掉
+     */
+    private static final int EXPIRED_NODE_CLEAN_FACTOR = 10;
+
+    /**
+     * 节点表的mapper组件
+     */
+    @Autowired
+    private TaskNodeMapper taskNodeMapper;
+    /**
+     * 框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+
+    /**
+     * 心跳线程
+     */
+    private ScheduledExecutorService heartbeatScheduler;
+    /**
+     * 当前节点负责的分区 还没有完成第一次心跳时为null
+     */
+    private volatile TaskPartition currentPartition;
+
+    /**
+     * 开启了分区扫描时 注册节点并启动心跳
+     */
+    @PostConstruct
+    public void start() {
+        if (!tendConsistencyConfiguration.getPartitionEnabled()) {
+            return;
+        }
+        heartbeatScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, HEARTBEAT_THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeatScheduler.scheduleWithFixedDelay(this::heartbeatAndRebalance, 0L,
+                tendConsistencyConfiguration.getNodeHeartbeatIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止心跳并注销节点 其他节点在下一次心跳时接管当前节点的分区
+     */
+    @PreDestroy
+    public void stop() {
+        if (heartbeatScheduler == null) {
+            return;
+        }
+        heartbeatScheduler.shutdownNow();
+        try {
+            taskNodeMapper.removeNode(tendConsistencyConfiguration.getNodeId());
+        } catch (Exception e) {
+            log.error("[一致性任务框架] 注销节点时，发生异常", e);
+        }
+    }
+
+    /**
+     * 是否开启了分区扫描
+     *
+     * @return 是否开启
+     */
+    public boolean isEnabled() {
+        return heartbeatScheduler != null;
+    }
+
+    /**
+     * 获取当前节点负责的分区
+     *
+     * @return 分区 还没有完成第一次心跳时为null
+     */
+    public TaskPartition getCurrentPartition() {
+        return currentPartition;
+    }
+
+    /**
+     * 写入心跳 并根据存活的节点重新计算当前节点负责的分区
+     */
+    private void heartbeatAndRebalance() {
+        try {
+            String nodeId = tendConsistencyConfiguration.getNodeId();
+            long now = System.currentTimeMillis();
+            long nodeExpireMillis = tendConsistencyConfiguration.getNodeExpireMillis();
+            taskNodeMapper.heartbeat(nodeId, now);
+            List<String> aliveNodes = taskNodeMapper.listAliveNodes(now - nodeExpireMillis);
+            int nodeIndex = aliveNodes.indexOf(nodeId);
+            if (nodeIndex < 0) {
+                return;
+            }
+            TaskPartition partition = computePartition(nodeIndex, aliveNodes.size());
+            if (!partition.equals(currentPartition)) {
+                log.info("[一致性任务框架] 节点 {} 负责的任务分区变更为 {}，存活节点数 {}", nodeId, partition, aliveNodes.size());
+                currentPartition = partition;
+            }
+            taskNodeMapper.removeExpiredNodes(now - nodeExpireMillis * EXPIRED_NODE_CLEAN_FACTOR);
+        } catch (Exception e) {
+            log.error("[一致性任务框架] 节点心跳时，发生异常", e);
+        }
+    }
+
+    /**
+     * 把桶平均分成nodeCount段 取第nodeIndex段
+     *
+     * @param nodeIndex 当前节点的序号
+     * @param nodeCount 存活的节点数
+     * @return 分区
+     */
+    private TaskPartition computePartition(int nodeIndex, int nodeCount) {
+        int bucketCount = tendConsistencyConfiguration.getPartitionBucketCount();
+        int fromBucket = (int) ((long) bucketCount * nodeIndex / nodeCount);
+        int toBucket = (int) ((long) bucketCount * (nodeIndex + 1) / nodeCount) - 1;
+        return TaskPartition.builder()
+                .bucketCount(bucketCount)
+                .fromBucket(fromBucket)
+                .toBucket(toBucket)
+                .build();
+    }
+
+}
@@ -0,0 +1,146 @@
+package top.panson.argo.manager;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import top.panson.argo.config.TendConsistencyConfiguration;
+import top.panson.argo.enums.TaskPollResultEnum;
+import top.panson.argo.service.TaskStoreService;
+
+/**
+ * 框架自带的自适应调度循环
+ * 1、查询到满页的任务时，说明还有积压，立即开始下一次调度
+ * 2、连续没有查询到任务时，调度间隔按指数增长，直到最大间隔
+ * 3、已知最早的尚未到期任务的执行时间时，在它到期时开始下一次调度，不用等到退避间隔结束
+ * 注：调度循环在每个节点上都会运行，多节点部署时需要开启租约抢占模式或者分区扫描
+ * 调度线程在spring容器刷新完成、全部单例（包括任务方法的调用器）初始化完成后才启动，容器关闭时最先停止
+ *
+ **/
+@Slf4j
+@Component
+public class TaskPollLoop implements SmartLifecycle {
+
+    /**
+     * 调度线程名称
+     */
+    private static final String POLL_THREAD_NAME = "CTPollLoop";
+
+    /**
+     * 任务调度管理器
+     */
+    @Autowired
+    private TaskScheduleManager taskScheduleManager;
+    /**
+     * 任务存储的service
+     */
+    @Autowired
+    private TaskStoreService taskStoreService;
+    /**
+     * 框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+
+    /**
+     * 调度线程
+     */
+    private Thread pollThread;
+    /**
+     * 调度线程是否在运行
+     */
+    private volatile boolean running = false;
+
+    /**
+     * 开启了自适应调度循环时 启动调度线程
+     */
+    @Override
+    public void start() {
+        if (!tendConsistencyConfiguration.getPollLoopEnabled()) {
+            return;
+        }
+        if (!tendConsistencyConfiguration.getLeaseEnabled() && !tendConsistencyConfiguration.getPartitionEnabled()) {
+            log.warn("[一致性任务框架] 自适应调度循环在每个节点上都会运行，多节点部署时请开启租约抢占模式或者分区扫描");
+        }
+        running = true;
+        pollThread = new Thread(this::runPollLoop, POLL_THREAD_NAME);
+        pollThread.setDaemon(true);
+        pollThread.start();
+        log.info("[一致性任务框架] 自适应调度循环已开启 minIntervalMillis={} maxIntervalMillis={}",
+                tendConsistencyConfiguration.getPollMinIntervalMillis(), tendConsistencyConfiguration.getPollMaxIntervalMillis());
+    }
+
+    /**
+     * 停止调度线程
+     */
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        pollThread.interrupt();
+    }
+
+    /**
+     * 调度线程是否在运行
+     *
+     * @return 是否在运行
+     */
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * 调度主循环
+     */
+    private void runPollLoop() {
+        long minIntervalMillis = tendConsistencyConfiguration.getPollMinIntervalMillis();
+        long maxIntervalMillis = tendConsistencyConfiguration.getPollMaxIntervalMillis();
+        long backoffMillis = minIntervalMillis;
+        while (running) {
+            try {
+                TaskPollResultEnum pollResult = taskScheduleManager.pollTask();
+                if (TaskPollResultEnum.FULL.equals(pollResult)) {
+                    // 还有积压的任务，立即开始下一次调度
+                    backoffMillis = minIntervalMillis;
+                    continue;
+                }
+                backoffMillis = TaskPollResultEnum.EMPTY.equals(pollResult)
+                        ? Math.min(backoffMillis * 2, maxIntervalMillis)
+                        : minIntervalMillis;
+                Thread.sleep(getSleepMillis(backoffMillis, minIntervalMillis));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("[一致性任务框架] 一致性任务调度时，发生异常", e);
+                backoffMillis = Math.min(backoffMillis * 2, maxIntervalMillis);
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 计算到下一次调度需要等待的时间 最早的尚未到期任务比退避间隔先到期时 在它到期时开始调度
+     *
+     * @param backoffMillis     退避间隔
+     * @param minIntervalMillis 最小调度间隔
+     * @return 等待时间 单位毫秒
+     */
+    private long getSleepMillis(long backoffMillis, long minIntervalMillis) {
+        Long earliestExecuteTime = taskStoreService.getEarliestFutureExecuteTime();
+        if (earliestExecuteTime == null) {
+            return backoffMillis;
+        }
+        long untilDueMillis = earliestExecuteTime - System.currentTimeMillis();
+        return Math.max(minIntervalMillis, Math.min(backoffMillis, untilDueMillis));
+    }
+
+}
@@ -5,20 +5,26 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
-import org.springframework.util.ObjectUtils;
+import top.panson.argo.config.TendConsistencyConfiguration;
+import top.panson.argo.enums.TaskPollResultEnum;
 import top.panson.argo.exceptions.ConsistencyException;
 import top.panson.argo.model.ConsistencyTaskInstance;
+import top.panson.argo.model.TaskScanCursor;
 import top.panson.argo.service.TaskStoreService;
-import top.panson.argo.utils.ReflectTools;
-import top.panson.argo.utils.SpringUtil;
 import top.panson.argo.utils.ThreadLocalUtil;
 
-import javax.annotation.Resource;
-import java.lang.reflect.InvocationTargetException;
+import javax.annotation.PostConstruct;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CompletionService;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 /**
@@ -35,25 +41,220 @@ public class TaskScheduleManager {
     @Autowired
     private TaskStoreService taskStoreService;
     /**
-     * 并行任务线程池
+     * 任务提交的准入控制器
      */
     @Autowired
-    private CompletionService<ConsistencyTaskInstance> consistencyTaskPool;
+    private TaskSubmissionController taskSubmissionController;
+    /**
+     * 分库并行扫描器
+     */
+    @Autowired
+    private TaskShardScanner taskShardScanner;
+    /**
+     * 任务方法调用器的注册中心
+     */
+    @Autowired
+    private TaskInvokerRegistry taskInvokerRegistry;
+    /**
+     * 任务参数编解码管理器
+     */
+    @Autowired
+    private TaskParameterCodecManager taskParameterCodecManager;
+
+    /**
+     * 框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
 
-    @Resource
-    private TaskEngineExecutor taskEngineExecutor;
+    /**
+     * 全表冷扫描的锁 同一时刻只有一个调度线程在做冷扫描
+     */
+    private final ReentrantLock coldSweepLock = new ReentrantLock();
+    /**
+     * 当前这一轮全表冷扫描的游标 为null表示当前没有进行中的冷扫描
+     */
+    private TaskScanCursor coldSweepCursor;
+    /**
+     * 下一轮全表冷扫描的开始时间
+     */
+    private long nextColdSweepTime = 0L;
+    /**
+     * 流水线调度模式下已经提交、还没有执行完成的任务 key为 id:shardKey
+     */
+    private final Map<String, ConsistencyTaskInstance> inFlightTasks = new ConcurrentHashMap<>();
+    /**
+     * 流水线调度模式下可以提交的任务数
+     */
+    private Semaphore pipelinePermits;
+
+    /**
+     * 开启了流水线调度时 初始化流水线深度
+     */
+    @PostConstruct
+    public void init() {
+        if (tendConsistencyConfiguration.getPipelineEnabled()) {
+            pipelinePermits = new Semaphore(tendConsistencyConfiguration.getPipelineDepth());
+        }
+    }
 
     /**
      * 该方法在业务服务中的定时任务中进行调度
      * 查询并执行未完成的一致性任务
      */
     public void performanceTask() throws InterruptedException {
+        pollTask();
+    }
+
+    /**
+     * 查询并执行一次未完成的一致性任务
+     *
+     * @return 查询时间范围内的任务的查询结果 用于决定下一次调度的时间
+     */
+    public TaskPollResultEnum pollTask() throws InterruptedException {
+        // 查询时间范围内的任务每次调度都会执行
+        TaskPollResultEnum pollResult = performanceHotTask();
+        // 早于查询时间范围的任务由冷扫描低频、分批地补偿执行
+        performanceColdTask();
+        return pollResult;
+    }
+
+    /**
+     * 查询并执行查询时间范围内的未完成任务
+     *
+     * @return 查询结果
+     */
+    private TaskPollResultEnum performanceHotTask() throws InterruptedException {
+        // 线程池没有空闲容量时不再查询，等正在执行的任务执行完成后的下一次调度
+        int availableCapacity = taskSubmissionController.availableCapacity();
+        if (availableCapacity <= 0) {
+            log.info("[一致性任务框架] 任务线程池没有空闲容量，跳过本次调度");
+            return TaskPollResultEnum.PARTIAL;
+        }
+        // 只查询线程池当前还能容纳的任务数，查出来的任务不会因为等待许可而在内存中积压
+        long limitTaskCount = Math.min(taskStoreService.getUnFinishTaskLimit(), availableCapacity);
+        if (!tendConsistencyConfiguration.getLeaseEnabled() && tendConsistencyConfiguration.getKeysetScanEnabled()) {
+            // 按(execute_time, id)升序翻页，最早到期的任务最先执行，一页执行完再查下一页，直到没有到期的任务
+            TaskScanCursor cursor = taskStoreService.openUnFinishTaskScan();
+            long pageSize = cursor.getPageSize();
+            int totalCount = 0;
+            while (!cursor.isFinished()) {
+                // 每一页都按线程池当前的空闲容量查询 没有空闲容量时留给下一次调度
+                availableCapacity = taskSubmissionController.availableCapacity();
+                if (availableCapacity <= 0) {
+                    break;
+                }
+                cursor.setPageSize(Math.min(pageSize, availableCapacity));
+                List<ConsistencyTaskInstance> page = taskStoreService.nextUnFinishTaskPage(cursor);
+                totalCount += page.size();
+                executeTaskInstances(page);
+            }
+            log.info("[一致性任务框架] 执行完成");
+            // 已经翻到了最后一页，没有积压的任务了
+            return totalCount > 0 ? TaskPollResultEnum.PARTIAL : TaskPollResultEnum.EMPTY;
+        }
+
+        if (!tendConsistencyConfiguration.getLeaseEnabled() && taskShardScanner.isEnabled()) {
+            return performanceShardedHotTask(limitTaskCount);
+        }
+
         // 第一步，先去查询未完成的任务实例list列表
         // 查询待执行任务实例集合的时候，数据库故障了，这是第二个故障点
-        List<ConsistencyTaskInstance> consistencyTaskInstances = taskStoreService.listByUnFinishTask();
+        // 开启了租约抢占模式时，每个节点只拿到自己抢占到的任务，多个节点可以同时调度
+        List<ConsistencyTaskInstance> consistencyTaskInstances = tendConsistencyConfiguration.getLeaseEnabled()
+                ? taskStoreService.claimUnFinishTask(limitTaskCount)
+                : taskStoreService.listByUnFinishTask(limitTaskCount);
+        if (executeTaskInstances(consistencyTaskInstances)) {
+            log.info("[一致性任务框架] 执行完成");
+        }
         if (CollectionUtils.isEmpty(consistencyTaskInstances)) {
+            return TaskPollResultEnum.EMPTY;
+        }
+        return consistencyTaskInstances.size() >= limitTaskCount
+                ? TaskPollResultEnum.FULL : TaskPollResultEnum.PARTIAL;
+    }
+
+    /**
+     * 分库并行扫描 每个物理库由一个扫描线程单独查询并执行自己的任务，调度线程等待全部物理库执行完成
+     *
+     * @param limitTaskCount 本次调度最多查询的条数 按物理库数量平分
+     * @return 查询结果 任意一个物理库查询到满页的任务时为FULL
+     */
+    private TaskPollResultEnum performanceShardedHotTask(long limitTaskCount) throws InterruptedException {
+        long shardLimit = taskStoreService.getShardUnFinishTaskLimit(limitTaskCount);
+        List<Callable<TaskPollResultEnum>> shardScans = new ArrayList<>();
+        for (String shardName : taskShardScanner.getShardNames()) {
+            shardScans.add(() -> {
+                List<ConsistencyTaskInstance> consistencyTaskInstances = taskStoreService.listByUnFinishTask(shardName, shardLimit);
+                executeTaskInstances(consistencyTaskInstances);
+                if (CollectionUtils.isEmpty(consistencyTaskInstances)) {
+                    return TaskPollResultEnum.EMPTY;
+                }
+                return consistencyTaskInstances.size() >= shardLimit ? TaskPollResultEnum.FULL : TaskPollResultEnum.PARTIAL;
+            });
+        }
+        TaskPollResultEnum pollResult = TaskPollResultEnum.EMPTY;
+        for (Future<TaskPollResultEnum> shardResult : taskShardScanner.getScanExecutor().invokeAll(shardScans)) {
+            TaskPollResultEnum shardPollResult;
+            try {
+                shardPollResult = shardResult.get();
+            } catch (ExecutionException e) {
+                // 一个物理库故障不影响其他物理库的任务执行
+                log.error("[一致性任务框架] 分库并行扫描时，发生异常", e.getCause());
+                shardPollResult = TaskPollResultEnum.PARTIAL;
+            }
+            // 按 EMPTY、PARTIAL、FULL 的顺序取最大的结果
+            if (shardPollResult.ordinal() > pollResult.ordinal()) {
+                pollResult = shardPollResult;
+            }
+        }
+        log.info("[一致性任务框架] 执行完成");
+        return pollResult;
+    }
+
+    /**
+     * 全表冷扫描 每次调度最多执行一页早于查询时间范围的任务，下一次调度从游标处继续，
+     * 一轮扫描完整张表后，间隔coldSweepIntervalMillis再开始下一轮，不会每次调度都扫描全表
+     */
+    private void performanceColdTask() throws InterruptedException {
+        if (!tendConsistencyConfiguration.getColdSweepEnabled() || !coldSweepLock.tryLock()) {
             return;
         }
+        try {
+            long now = System.currentTimeMillis();
+            if (coldSweepCursor == null) {
+                if (now < nextColdSweepTime) {
+                    return;
+                }
+                coldSweepCursor = taskStoreService.openColdSweepScan();
+            }
+            // 租约模式下抢占到的任务会带上租约，不会再被抢占到，不需要记录翻页位置
+            List<ConsistencyTaskInstance> consistencyTaskInstances = tendConsistencyConfiguration.getLeaseEnabled()
+                    ? taskStoreService.claimColdUnFinishTask(coldSweepCursor)
+                    : taskStoreService.nextUnFinishTaskPage(coldSweepCursor);
+            if (coldSweepCursor.isFinished()) {
+                coldSweepCursor = null;
+                nextColdSweepTime = now + tendConsistencyConfiguration.getColdSweepIntervalMillis();
+            }
+            if (!CollectionUtils.isEmpty(consistencyTaskInstances)) {
+                log.info("[一致性任务框架] 冷扫描到{}个早于查询时间范围的未完成任务", consistencyTaskInstances.size());
+                executeTaskInstances(consistencyTaskInstances);
+            }
+        } finally {
+            coldSweepLock.unlock();
+        }
+    }
+
+    /**
+     * 并发执行一批任务实例中已经到期的任务 并等待全部执行完成
+     *
+     * @param consistencyTaskInstances 任务实例集合
+     * @return 是否有任务被执行
+     */
+    private boolean executeTaskInstances(List<ConsistencyTaskInstance> consistencyTaskInstances) throws InterruptedException {
+        if (CollectionUtils.isEmpty(consistencyTaskInstances)) {
+            return false;
+        }
 
         // 过滤出需要被执行的任务
         // 每个任务都可以来运行吗？不是的，要根据你的execute time来的，execute time是根据delay time来的
@@ -73,27 +274,66 @@ public class TaskScheduleManager {
                 // 等待后续后台线程调度的时候，now = 22:51:20，<0，负数10秒钟，此时就可以对这个任务进行第二次运行
 
         if (CollectionUtils.isEmpty(consistencyTaskInstances)) {
-            return;
+            return false;
+        }
+
+        if (pipelinePermits != null) {
+            submitPipelined(consistencyTaskInstances);
+            return true;
         }
 
         // 多线程并发运行任务
         // 如果说查出来了比如说很多个任务实例，1000个，往你的线程池里提交，5个线程+100 size queue
         // 如果说出现了这个问题的话，会导致线程的reject提交任务
+        // 提交前先拿准入许可，线程池没有空闲容量时等待有任务执行完成，不会被线程池拒绝
         CountDownLatch latch = new CountDownLatch(consistencyTaskInstances.size());
         for (ConsistencyTaskInstance instance : consistencyTaskInstances) {
-            consistencyTaskPool.submit(() -> {
-                try {
-                    // 执行任务
-                    taskEngineExecutor.executeTaskInstance(instance);
-                    return instance;
-                } finally {
-                    latch.countDown();
-                }
-            });
+            if (!taskSubmissionController.submit(instance, latch::countDown)) {
+                // 没有提交成功的任务不会执行，直接计数，避免调度线程一直等待
+                latch.countDown();
+            }
         }
         latch.await();
+        return true;
+    }
 
-        log.info("[一致性任务框架] 执行完成");
+    /**
+     * 流水线方式提交任务 提交中和执行中的任务数达到流水线深度时等待有任务执行完成，不等待整批任务执行完成，
+     * 提交完就返回继续查询下一页，执行慢的任务不会拖住下一次查询，线程池也不会在一批任务的末尾空闲
+     * 注：同一次调度中提交完一页立即查询下一页，只在非租约模式下按执行时间升序分页扫描（keysetScanEnabled）时生效，
+     * 其他扫描方式每次调度只查询一页，查询到满页时由自适应调度循环立即发起下一次调度，下一页不会在当前页执行期间预先查询
+     *
+     * @param consistencyTaskInstances 任务实例集合
+     */
+    private void submitPipelined(List<ConsistencyTaskInstance> consistencyTaskInstances) throws InterruptedException {
+        for (ConsistencyTaskInstance instance : consistencyTaskInstances) {
+            String taskKey = instance.getId() + ":" + instance.getShardKey();
+            // 上一页提交的任务还没有执行完成时，又被查询出来了，不再重复提交
+            if (inFlightTasks.putIfAbsent(taskKey, instance) != null) {
+                continue;
+            }
+            try {
+                pipelinePermits.acquire();
+            } catch (InterruptedException e) {
+                inFlightTasks.remove(taskKey);
+                throw e;
+            }
+            Runnable onComplete = () -> {
+                inFlightTasks.remove(taskKey);
+                pipelinePermits.release();
+            };
+            boolean submitted;
+            try {
+                // 时间轮等其他来源也会向线程池提交任务，线程池没有空闲容量时等待
+                submitted = taskSubmissionController.submit(instance, onComplete);
+            } catch (InterruptedException e) {
+                onComplete.run();
+                throw e;
+            }
+            if (!submitted) {
+                onComplete.run();
+            }
+        }
     }
 
     /**
@@ -105,30 +345,10 @@ public class TaskScheduleManager {
         // 任务实例数据里，封装了目标方法（AOP切入点，JoinPoint） + 注解（@ConsistencyTask）
         // 都完成了一个封装，此时我们就可以用到所有的数据
 
-        // 获取方法签名 格式：类路径#方法名(参数1的类型,参数2的类型,...参数N的类型)
-        String methodSignName = taskInstance.getMethodSignName();
-        // 获取方法所在的类，包含了类全限定名，就通过字符串操作，可以拿到你的方法所属的类
-        Class<?> clazz = getTaskMethodClass(methodSignName.split("#")[0]);
-        if (ObjectUtils.isEmpty(clazz)) {
-            return;
-        }
-        // 通过你的类class类型，从spring容器里获取到这个class类型的bean
-        Object bean = SpringUtil.getBean(clazz);
-        if (ObjectUtils.isEmpty(bean)) {
-            return;
-        }
-
-        // 后面把methodName独立出一个字段
-        String methodName = taskInstance.getMethodName();
-        // 获取参数类型的字符串字符串 多个用逗号分隔
-        String[] parameterTypes = taskInstance.getParameterTypes().split(",");
-        // 构造参数类数组
-        Class<?>[] parameterClasses = ReflectTools.buildTypeClassArray(parameterTypes);
-        // 获取目标方法
-        Method targetMethod = getTargetMethod(methodName, parameterClasses, clazz);
-        if (ObjectUtils.isEmpty(targetMethod)) {
-            return;
-        }
+        // 按方法签名（格式：类路径#方法名(参数1的类型,参数2的类型,...参数N的类型)）获取启动时解析好的调用器
+        // 调用器里已经有了spring容器里的bean、目标方法和绑定了bean的方法句柄，不用每次执行都通过反射查找
+        // 获取不到调用器时抛出异常，任务按执行失败处理，下次重试时重新解析
+        TaskMethodInvoker invoker = taskInvokerRegistry.getTargetInvoker(taskInstance);
 
         // 已经获取到了目标类 -> spring容器里的bean实例对象，有了这个bean实例对象之后，就可以去进行反射调用
         // 目标类里指定的方法名称+入参类型 -> Method方法
@@ -136,57 +356,18 @@ public class TaskScheduleManager {
         // 要把入参参数对象搞出来
 
         // 构造方法入参
-        // task parameter就是入参对象数组转为的json字符串
-        Object[] args = ReflectTools.buildArgs(taskInstance.getTaskParameter(), parameterClasses);
+        // task parameter就是入参对象数组按编解码器编码后的字符串，按目标方法声明的入参类型（包含泛型）解码
+        Object[] args = taskParameterCodecManager.decode(taskInstance.getTaskParameter(), invoker.getGenericParameterTypes());
         try {
             // 执行目标方法调用
             ThreadLocalUtil.setFlag(true); // 基于thread local设置一个flag，true
-            // 基于反射技术进行方法调用，调用的是谁，bean，调用的是bean的哪个方法，给方法调用传入的是哪些参数
-            // bean=spring容器里获取的bean，方法就是类的方法，args入参对象就是本次方法调用传入的入参对象
+            // 通过方法句柄调用bean的目标方法，传入参数对象
             // 结论：我们在进行方法调用的时候，其实也是会进入AOP增强逻辑的，完成了AOP增强逻辑了之后，才会推进到目标方法的执行
-            targetMethod.invoke(bean, args); // 基于反射技术，method对象完成针对bean实例的传入入参对象数组的调用
+            invoker.invoke(args);
             ThreadLocalUtil.setFlag(false); // 跑完了以后，会设置为false
-        } catch (InvocationTargetException e) {
+        } catch (Exception e) {
             log.error("调用目标方法时，发生异常", e);
-            Throwable target = e.getTargetException();
-            throw new ConsistencyException((Exception) target);
-        } catch (Exception ex) {
-            throw new ConsistencyException(ex);
-        }
-    }
-
-    /**
-     * 获取目标方法
-     *
-     * @param methodName              方法名称
-     * @param parameterTypeClassArray 入参类数组
-     * @param clazz                   方法所在类的Class对象
-     * @return 目标方法
-     */
-    private Method getTargetMethod(String methodName, Class<?>[] parameterTypeClassArray, Class<?> clazz) {
-        try {
-            // 基于反射技术，从指定的目标类里拿到了类的方法对应的Method
-            return clazz.getMethod(methodName, parameterTypeClassArray);
-        } catch (NoSuchMethodException e) {
-            log.error("获取目标方法失败", e);
-            return null;
-        }
-    }
-
-    /**
-     * 构造任务方法所在的类对象
-     *
-     * @param className 类名称
-     * @return 类对象
-     */
-    private Class<?> getTaskMethodClass(String className) {
-        Class<?> clazz;
-        try {
-            clazz = Class.forName(className);
-            return clazz;
-        } catch (ClassNotFoundException e) {
-            e.printStackTrace();
-            return null;
+            throw new ConsistencyException(e);
         }
     }
 
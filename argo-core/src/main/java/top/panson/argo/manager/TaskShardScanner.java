@@ -0,0 +1,187 @@
+package top.panson.argo.manager;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ReflectionUtils;
+import top.panson.argo.config.TendConsistencyConfiguration;
+import top.panson.argo.mapper.TaskStoreMapper;
+import top.panson.argo.service.TaskShardRouter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分库模式下的分库并行扫描器
+ * 通过ShardingSphere数据源的getDataSourceMap（开启了内置分库路由时直接使用它的物理库）获取全部物理库，为每个物理库单独创建SqlSessionFactory，
+ * 调度时每个物理库由一个扫描线程单独查询，不再经过ShardingSphere对全部分库的查询结果做归并排序，
+ * 分库越多，每次调度能够并行查询、执行的任务越多
+ * 注：只支持分库不分表，每个物理库中的任务表都叫argo_task
+ *
+ **/
+@Slf4j
+@Component
+public class TaskShardScanner {
+
+    /**
+     * 扫描线程名称前缀
+     */
+    private static final String SCAN_THREAD_NAME_PREFIX = "CTShardScan-";
+    /**
+     * ShardingSphere数据源获取全部物理库的方法名称
+     */
+    private static final String GET_DATA_SOURCE_MAP_METHOD_NAME = "getDataSourceMap";
+
+    /**
+     * 业务服务的数据源
+     */
+    @Autowired
+    private DataSource dataSource;
+    /**
+     * 业务服务的SqlSessionFactory 物理库的SqlSessionFactory沿用它的配置
+     */
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+    /**
+     * 框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+    /**
+     * 框架内置的分库路由
+     */
+    @Autowired
+    private TaskShardRouter taskShardRouter;
+
+    /**
+     * 每个物理库的SqlSessionFactory key为物理库的名称
+     */
+    private Map<String, SqlSessionFactory> shardSqlSessionFactories = Collections.emptyMap();
+    /**
+     * 分库扫描线程池 每个物理库一个线程
+     */
+    private ExecutorService scanExecutor;
+
+    /**
+     * 开启了分库并行扫描时 为每个物理库创建SqlSessionFactory和扫描线程
+     */
+    @PostConstruct
+    public void start() {
+        // 内置分库路由没有全局的查询，扫描总是按物理库并行
+        if (!tendConsistencyConfiguration.getParallelShardScanEnabled() && !taskShardRouter.isEnabled()) {
+            return;
+        }
+        Map<String, DataSource> shardDataSources = getShardDataSources();
+        if (shardDataSources.isEmpty()) {
+            log.warn("[一致性任务框架] 数据源 {} 不是ShardingSphere的分库数据源，分库并行扫描不生效", dataSource.getClass().getName());
+            return;
+        }
+        Map<String, SqlSessionFactory> sqlSessionFactories = new LinkedHashMap<>();
+        shardDataSources.forEach((shardName, shardDataSource) ->
+                sqlSessionFactories.put(shardName, buildShardSqlSessionFactory(shardName, shardDataSource)));
+        shardSqlSessionFactories = sqlSessionFactories;
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        scanExecutor = Executors.newFixedThreadPool(shardSqlSessionFactories.size(), r -> {
+            Thread thread = new Thread(r, SCAN_THREAD_NAME_PREFIX + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("[一致性任务框架] 分库并行扫描已开启 物理库 {}", shardSqlSessionFactories.keySet());
+    }
+
+    /**
+     * 停止扫描线程
+     */
+    @PreDestroy
+    public void stop() {
+        if (scanExecutor != null) {
+            scanExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 是否开启了分库并行扫描
+     *
+     * @return 是否开启
+     */
+    public boolean isEnabled() {
+        return scanExecutor != null;
+    }
+
+    /**
+     * 获取全部物理库的名称
+     *
+     * @return 物理库的名称
+     */
+    public List<String> getShardNames() {
+        return new ArrayList<>(shardSqlSessionFactories.keySet());
+    }
+
+    /**
+     * 获取分库扫描线程池
+     *
+     * @return 线程池
+     */
+    public ExecutorService getScanExecutor() {
+        return scanExecutor;
+    }
+
+    /**
+     * 打开指定物理库的SqlSession 使用完需要关闭
+     *
+     * @param shardName 物理库的名称
+     * @return SqlSession
+     */
+    public SqlSession openSession(String shardName) {
+        return shardSqlSessionFactories.get(shardName).openSession();
+    }
+
+    /**
+     * 获取全部物理库 ShardingSphere数据源通过反射获取 不直接依赖ShardingSphere
+     *
+     * @return 全部物理库 不是分库数据源时返回空集合
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, DataSource> getShardDataSources() {
+        if (taskShardRouter.isEnabled()) {
+            return taskShardRouter.getShardDataSources();
+        }
+        Method getDataSourceMapMethod = ReflectionUtils.findMethod(dataSource.getClass(), GET_DATA_SOURCE_MAP_METHOD_NAME);
+        if (getDataSourceMapMethod == null) {
+            return Collections.emptyMap();
+        }
+        Object shardDataSources = ReflectionUtils.invokeMethod(getDataSourceMapMethod, dataSource);
+        return shardDataSources instanceof Map ? (Map<String, DataSource>) shardDataSources : Collections.emptyMap();
+    }
+
+    /**
+     * 为物理库创建SqlSessionFactory 只注册任务表的mapper
+     *
+     * @param shardName       物理库的名称
+     * @param shardDataSource 物理库的数据源
+     * @return SqlSessionFactory
+     */
+    private SqlSessionFactory buildShardSqlSessionFactory(String shardName, DataSource shardDataSource) {
+        Configuration configuration = new Configuration(new Environment(shardName, new JdbcTransactionFactory(), shardDataSource));
+        configuration.setMapUnderscoreToCamelCase(sqlSessionFactory.getConfiguration().isMapUnderscoreToCamelCase());
+        configuration.addMapper(TaskStoreMapper.class);
+        return new SqlSessionFactoryBuilder().build(configuration);
+    }
+
+}
@@ -0,0 +1,167 @@
+package top.panson.argo.manager;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import top.panson.argo.config.TendConsistencyConfiguration;
+import top.panson.argo.model.ConsistencyTaskInstance;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 任务提交的准入控制器
+ * 许可数等于线程池核心线程数与队列大小之和，提交任务前先拿许可，任务执行完成后归还，
+ * 框架提交的任务数永远不会超过线程池能够容纳的任务数，线程池不会因为队列满了而拒绝任务
+ *
+ **/
+@Slf4j
+@Component
+public class TaskSubmissionController {
+
+    /**
+     * 一致性任务执行线程池
+     */
+    @Autowired
+    @Qualifier("consistencyTaskExecutor")
+    private ThreadPoolExecutor consistencyTaskExecutor;
+    /**
+     * 任务执行器
+     */
+    @Autowired
+    private TaskEngineExecutor taskEngineExecutor;
+    /**
+     * 框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+
+    /**
+     * 提交许可
+     */
+    private Semaphore submitPermits;
+    /**
+     * 已经提交的任务数
+     */
+    private final AtomicLong submittedCount = new AtomicLong(0L);
+    /**
+     * 因为线程池没有空闲容量，需要等待后才提交的任务数
+     */
+    private final AtomicLong deferredCount = new AtomicLong(0L);
+    /**
+     * 因为线程池没有空闲容量，没有提交、留给下一次调度的任务数
+     */
+    private final AtomicLong skippedCount = new AtomicLong(0L);
+
+    /**
+     * 初始化提交许可
+     */
+    @PostConstruct
+    public void init() {
+        submitPermits = new Semaphore(tendConsistencyConfiguration.getThreadCorePoolSize() + tendConsistencyConfiguration.getThreadPoolQueueSize());
+    }
+
+    /**
+     * 线程池当前还能容纳的任务数
+     *
+     * @return 空闲容量
+     */
+    public int availableCapacity() {
+        return submitPermits.availablePermits();
+    }
+
+    /**
+     * 提交任务 线程池没有空闲容量时等待有任务执行完成
+     *
+     * @param taskInstance 任务实例
+     * @param onComplete   任务执行完成（无论成功失败）后的回调 可以为null 提交失败时不会回调
+     * @return 是否提交成功
+     * @throws InterruptedException 等待时线程被中断
+     */
+    public boolean submit(ConsistencyTaskInstance taskInstance, Runnable onComplete) throws InterruptedException {
+        if (!submitPermits.tryAcquire()) {
+            deferredCount.incrementAndGet();
+            submitPermits.acquire();
+        }
+        return doSubmit(taskInstance, onComplete);
+    }
+
+    /**
+     * 尝试提交任务 线程池没有空闲容量时不提交 任务已经落库，会由下一次调度执行
+     *
+     * @param taskInstance 任务实例
+     * @return 是否提交成功
+     */
+    public boolean trySubmit(ConsistencyTaskInstance taskInstance) {
+        if (!submitPermits.tryAcquire()) {
+            skippedCount.incrementAndGet();
+            log.warn("[一致性任务框架] 任务线程池没有空闲容量，任务留给下一次调度执行 id={}", taskInstance.getId());
+            return false;
+        }
+        return doSubmit(taskInstance, null);
+    }
+
+    /**
+     * 已经提交的任务数
+     *
+     * @return 任务数
+     */
+    public long getSubmittedCount() {
+        return submittedCount.get();
+    }
+
+    /**
+     * 因为线程池没有空闲容量，需要等待后才提交的任务数
+     *
+     * @return 任务数
+     */
+    public long getDeferredCount() {
+        return deferredCount.get();
+    }
+
+    /**
+     * 因为线程池没有空闲容量，没有提交、留给下一次调度的任务数
+     *
+     * @return 任务数
+     */
+    public long getSkippedCount() {
+        return skippedCount.get();
+    }
+
+    /**
+     * 向线程池提交任务 调用前必须已经拿到许可
+     *
+     * @param taskInstance 任务实例
+     * @param onComplete   任务执行完成后的回调
+     * @return 是否提交成功
+     */
+    private boolean doSubmit(ConsistencyTaskInstance taskInstance, Runnable onComplete) {
+        try {
+            consistencyTaskExecutor.execute(() -> {
+                try {
+                    taskEngineExecutor.executeTaskInstance(taskInstance);
+                } catch (Exception e) {
+                    log.error("[一致性任务框架] 执行任务时，发生异常 id={}", taskInstance.getId(), e);
+                } finally {
+                    submitPermits.release();
+                    if (onComplete != null) {
+                        onComplete.run();
+                    }
+                }
+            });
+            submittedCount.incrementAndGet();
+            return true;
+        } catch (RejectedExecutionException e) {
+            // 业务服务自己也向线程池提交了任务时才会出现，任务已经落库，留给下一次调度执行
+            submitPermits.release();
+            skippedCount.incrementAndGet();
+            log.warn("[一致性任务框架] 任务线程池拒绝了任务，任务留给下一次调度执行 id={}", taskInstance.getId());
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,190 @@
+package top.panson.argo.manager;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import top.panson.argo.config.TendConsistencyConfiguration;
+import top.panson.argo.model.ConsistencyTaskInstance;
+import top.panson.argo.utils.HierarchicalTimingWheel;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 任务定时触发器
+ * 当前节点创建的调度型任务和执行失败等待重试的任务会放入内存中的分层时间轮，到了execute_time就立即提交执行，
+ * 不需要等到下一次定时调度查询数据库。任务在数据库中的状态不受影响，服务宕机或者时间轮已满时，任务依然由定时调度兜底执行，
+ * 时间轮和定时调度重复触发同一个任务时，只有一方能启动成功
+ *
+ **/
+@Slf4j
+@Component
+public class TaskTimingWheel {
+
+    /**
+     * 时间轮驱动线程名称
+     */
+    private static final String TIMING_WHEEL_THREAD_NAME = "CTTimingWheel";
+    /**
+     * 驱动线程空闲时检查是否需要退出的间隔 单位毫秒
+     */
+    private static final long IDLE_POLL_MILLIS = 200L;
+
+    /**
+     * 框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+    /**
+     * 任务提交的准入控制器
+     */
+    @Autowired
+    private TaskSubmissionController taskSubmissionController;
+
+    /**
+     * 分层时间轮
+     */
+    private HierarchicalTimingWheel<ConsistencyTaskInstance> timingWheel;
+    /**
+     * 时间轮中等待触发的任务数
+     */
+    private final AtomicInteger pendingCount = new AtomicInteger(0);
+    /**
+     * 因为时间轮已满，没有放入时间轮、留给定时调度执行的任务数
+     */
+    private final AtomicLong overflowCount = new AtomicLong(0L);
+    /**
+     * 到期后因为线程池没有空闲容量，没有提交、留给定时调度执行的任务数
+     */
+    private final AtomicLong skippedFireCount = new AtomicLong(0L);
+    /**
+     * 时间轮驱动线程
+     */
+    private Thread driverThread;
+    /**
+     * 驱动线程是否在运行
+     */
+    private volatile boolean running = false;
+
+    /**
+     * 开启了时间轮时 启动驱动线程
+     */
+    @PostConstruct
+    public void start() {
+        if (!tendConsistencyConfiguration.getTimingWheelEnabled()) {
+            return;
+        }
+        timingWheel = new HierarchicalTimingWheel<>(tendConsistencyConfiguration.getTimingWheelTickMillis(),
+                tendConsistencyConfiguration.getTimingWheelSize(), System.currentTimeMillis());
+        running = true;
+        driverThread = new Thread(this::runDriverLoop, TIMING_WHEEL_THREAD_NAME);
+        driverThread.setDaemon(true);
+        driverThread.start();
+        log.info("[一致性任务框架] 任务时间轮已开启 tickMillis={} wheelSize={} capacity={}",
+                tendConsistencyConfiguration.getTimingWheelTickMillis(), tendConsistencyConfiguration.getTimingWheelSize(),
+                tendConsistencyConfiguration.getTimingWheelCapacity());
+    }
+
+    /**
+     * 停止驱动线程 时间轮中的任务已经落库 由其他节点或者下次启动后的定时调度执行
+     */
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        driverThread.interrupt();
+    }
+
+    /**
+     * 把任务放入时间轮 到了任务的execute_time后提交执行
+     *
+     * @param taskInstance 任务实例 必须已经落库
+     */
+    public void schedule(ConsistencyTaskInstance taskInstance) {
+        if (taskInstance.getExecuteTime() == null) {
+            return;
+        }
+        schedule(taskInstance, taskInstance.getExecuteTime());
+    }
+
+    /**
+     * 把任务放入时间轮 到了指定的时间后提交执行
+     *
+     * @param taskInstance 任务实例 必须已经落库
+     * @param fireTime     提交执行的时间
+     */
+    public void schedule(ConsistencyTaskInstance taskInstance, long fireTime) {
+        if (!running || taskInstance.getId() == null) {
+            return;
+        }
+        // 时间轮满了就不再放入，等定时调度查询数据库时执行
+        if (pendingCount.incrementAndGet() > tendConsistencyConfiguration.getTimingWheelCapacity()) {
+            pendingCount.decrementAndGet();
+            overflowCount.incrementAndGet();
+            return;
+        }
+        if (!timingWheel.add(taskInstance, fireTime)) {
+            // 已经到期了
+            pendingCount.decrementAndGet();
+            fire(taskInstance);
+        }
+    }
+
+    /**
+     * 因为时间轮已满，没有放入时间轮、留给定时调度执行的任务数
+     *
+     * @return 任务数
+     */
+    public long getOverflowCount() {
+        return overflowCount.get();
+    }
+
+    /**
+     * 到期后因为线程池没有空闲容量，没有提交、留给定时调度执行的任务数
+     *
+     * @return 任务数
+     */
+    public long getSkippedFireCount() {
+        return skippedFireCount.get();
+    }
+
+    /**
+     * 驱动主循环 有格子到期时取出到期的任务提交执行
+     */
+    private void runDriverLoop() {
+        while (running) {
+            try {
+                List<ConsistencyTaskInstance> expiredTasks = timingWheel.poll(IDLE_POLL_MILLIS);
+                for (ConsistencyTaskInstance taskInstance : expiredTasks) {
+                    pendingCount.decrementAndGet();
+                    fire(taskInstance);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("[一致性任务框架] 推进任务时间轮时，发生异常", e);
+            }
+        }
+    }
+
+    /**
+     * 提交到期的任务 驱动线程自己不执行任务
+     *
+     * @param taskInstance 任务实例
+     */
+    private void fire(ConsistencyTaskInstance taskInstance) {
+        // 任务已经落库，线程池没有空闲容量时交给定时调度执行
+        if (!taskSubmissionController.trySubmit(taskInstance)) {
+            skippedFireCount.incrementAndGet();
+            log.warn("[一致性任务框架] 时间轮中的任务到期后没有提交成功，留给定时调度执行 id={} executeTime={}",
+                    taskInstance.getId(), taskInstance.getExecuteTime());
+        }
+    }
+
+}
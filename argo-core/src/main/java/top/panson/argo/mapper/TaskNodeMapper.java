@@ -0,0 +1,51 @@
+package top.panson.argo.mapper;
+
+import org.apache.ibatis.annotations.*;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+
+@Mapper
+@Repository
+public interface TaskNodeMapper {
+
+    /**
+     * 节点心跳 节点第一次心跳时注册
+     *
+     * @param nodeId        节点标识
+     * @param heartbeatTime 心跳时间
+     * @return 更新结果
+     */
+    @Insert("INSERT INTO argo_node(node_id, heartbeat_time) VALUES(#{nodeId}, #{heartbeatTime}) " +
+            "ON DUPLICATE KEY UPDATE heartbeat_time=#{heartbeatTime}")
+    int heartbeat(@Param("nodeId") String nodeId, @Param("heartbeatTime") Long heartbeatTime);
+
+    /**
+     * 查询存活的节点 按节点标识排序 所有节点计算出的顺序一致
+     *
+     * @param minHeartbeatTime 最早的心跳时间 早于该时间的节点视为已下线
+     * @return 存活节点的标识
+     */
+    @Select("SELECT node_id FROM argo_node WHERE heartbeat_time>=#{minHeartbeatTime} ORDER BY node_id")
+    List<String> listAliveNodes(@Param("minHeartbeatTime") Long minHeartbeatTime);
+
+    /**
+     * 注销节点
+     *
+     * @param nodeId 节点标识
+     * @return 删除结果
+     */
+    @Delete("DELETE FROM argo_node WHERE node_id=#{nodeId}")
+    int removeNode(@Param("nodeId") String nodeId);
+
+    /**
+     * 清理已经下线很久的节点
+     *
+     * @param minHeartbeatTime 最早的心跳时间
+     * @return 删除结果
+     */
+    @Delete("DELETE FROM argo_node WHERE heartbeat_time<#{minHeartbeatTime}")
+    int removeExpiredNodes(@Param("minHeartbeatTime") Long minHeartbeatTime);
+
+}
@@ -1,9 +1,13 @@
 package top.panson.argo.mapper;
 
 import org.apache.ibatis.annotations.*;
+import org.apache.ibatis.cursor.Cursor;
 import org.springframework.stereotype.Repository;
 import top.panson.argo.model.ConsistencyTaskInstance;
+import top.panson.argo.model.TaskPartition;
+import top.panson.argo.model.TaskScanCursor;
 
+import java.util.Collection;
 import java.util.List;
 
 
@@ -11,6 +15,19 @@ import java.util.List;
 @Repository
 public interface TaskStoreMapper {
 
+    /**
+     * 任务表的全部字段
+     */
+    String TASK_COLUMNS = "id,task_id,task_status,execute_times,execute_time,parameter_types,method_name,method_sign_name, " +
+            "execute_interval_sec,delay_time,task_parameter,performance_way," +
+            "thread_way, error_msg, alert_expression, " +
+            "alert_action_bean_name, fallback_class_name, fallback_error_msg,shard_key," +
+            "gmt_create, gmt_modified ";
+    /**
+     * 扫描未完成任务时需要的精简字段 启动任务、翻页只需要这些字段
+     */
+    String TASK_SCAN_COLUMNS = "id,task_status,execute_times,execute_time,shard_key ";
+
     /**
      * 保存最终一致性任务实例
      *
@@ -63,6 +80,61 @@ public interface TaskStoreMapper {
     @Options(keyColumn = "id", keyProperty = "id", useGeneratedKeys = true)
     Long initTask(ConsistencyTaskInstance consistencyTaskInstance);
 
+    /**
+     * 批量保存最终一致性任务实例 一条多行INSERT语句 自增主键会按顺序回填到每个任务实例中
+     *
+     * @param taskInstances 要存储的最终一致性任务的实例信息
+     * @return 存储结果
+     */
+    @Insert("<script>"
+            + "INSERT INTO argo_task("
+                + "task_id,"
+                + "task_status,"
+                + "execute_times,"
+                + "execute_time,"
+                + "parameter_types,"
+                + "method_name,"
+                + "method_sign_name,"
+                + "execute_interval_sec,"
+                + "delay_time,"
+                + "task_parameter,"
+                + "performance_way,"
+                + "thread_way,"
+                + "error_msg,"
+                + "alert_expression,"
+                + "alert_action_bean_name,"
+                + "fallback_class_name,"
+                + "fallback_error_msg,"
+                + "shard_key,"
+                + "gmt_create,"
+                + "gmt_modified"
+            + ") VALUES "
+            + "<foreach collection='list' item='item' separator=','>("
+                + "#{item.taskId},"
+                + "#{item.taskStatus},"
+                + "#{item.executeTimes},"
+                + "#{item.executeTime},"
+                + "#{item.parameterTypes},"
+                + "#{item.methodName},"
+                + "#{item.methodSignName},"
+                + "#{item.executeIntervalSec},"
+                + "#{item.delayTime},"
+                + "#{item.taskParameter},"
+                + "#{item.performanceWay},"
+                + "#{item.threadWay},"
+                + "#{item.errorMsg},"
+                + "#{item.alertExpression},"
+                + "#{item.alertActionBeanName},"
+                + "#{item.fallbackClassName},"
+                + "#{item.fallbackErrorMsg},"
+                + "#{item.shardKey},"
+                + "#{item.gmtCreate},"
+                + "#{item.gmtModified}"
+            + ")</foreach>"
+            + "</script>")
+    @Options(keyColumn = "id", keyProperty = "id", useGeneratedKeys = true)
+    int batchInitTask(List<ConsistencyTaskInstance> taskInstances);
+
     /**
      * 根据id获取任务实例信息
      *
@@ -125,7 +197,7 @@ public interface TaskStoreMapper {
             "AND execute_time>=#{startTime} AND execute_time<=#{endTime} " +
             "order by execute_time desc " + // 每个任务都是有一个自己的execute_time，如果你是schedule模式，execute time = now + delay time，你的任务最早的运行时间
             "LIMIT #{limitTaskCount}")
-    @Results({
+    @Results(id = "consistencyTaskInstanceResult", value = {
             @Result(column = "id", property = "id", id = true),
             @Result(column = "task_id", property = "taskId"),
             @Result(column = "task_status", property = "taskStatus"),
@@ -150,8 +222,89 @@ public interface TaskStoreMapper {
     })
     List<ConsistencyTaskInstance> listByUnFinishTask(@Param("startTime") Long startTime, @Param("endTime") Long endTime, @Param("limitTaskCount") Long limitTaskCount);
 
+    /**
+     * 按(execute_time, id)升序分页查询未完成的任务 从游标记录的上一页最后一条任务之后开始查询
+     * 条件展开为OR的形式，在execute_time索引上是一次范围扫描，翻页的代价不会随页数增加
+     *
+     * @param cursor 分页扫描游标
+     * @return 一页未完成的任务
+     */
+    @Select("<script>"
+            + "SELECT "
+            + "<if test='lean'>" + TASK_SCAN_COLUMNS + "</if>"
+            + "<if test='!lean'>" + TASK_COLUMNS + "</if>"
+            + "FROM argo_task "
+            + "WHERE task_status &lt;= 2 "
+            + "AND execute_time &gt;= #{startTime} AND execute_time &lt;= #{endTime} "
+            + "<if test='partition != null'>"
+            + "AND MOD(id, #{partition.bucketCount}) BETWEEN #{partition.fromBucket} AND #{partition.toBucket} "
+            + "</if>"
+            + "<if test='lastId != null'>"
+            + "AND (execute_time &gt; #{lastExecuteTime} OR (execute_time = #{lastExecuteTime} AND id &gt; #{lastId})) "
+            + "</if>"
+            + "ORDER BY execute_time, id "
+            + "LIMIT #{pageSize}"
+            + "</script>")
+    @ResultMap("consistencyTaskInstanceResult")
+    List<ConsistencyTaskInstance> listByUnFinishTaskAfter(TaskScanCursor cursor);
+
+    /**
+     * 获取最早的尚未到期的未完成任务的执行时间 在execute_time索引上只需要读取很少的行
+     *
+     * @param now 当前时间
+     * @return 执行时间 没有尚未到期的任务时返回null
+     */
+    @Select("SELECT MIN(execute_time) FROM argo_task WHERE execute_time>#{now} AND task_status IN (0, 2)")
+    Long getEarliestFutureExecuteTime(@Param("now") Long now);
+
+    /**
+     * 以流式游标的方式获取未完成的任务 只查询精简字段 结果逐行从数据库读取 需要在事务中遍历
+     *
+     * @param startTime      开始时间
+     * @param endTime        结束时间
+     * @param limitTaskCount 每次查询限制的条数
+     * @return 未完成任务的游标
+     */
+    @Select("<script>"
+            + "SELECT " + TASK_SCAN_COLUMNS
+            + "FROM argo_task "
+            + "WHERE task_status &lt;= 2 "
+            + "AND execute_time &gt;= #{startTime} AND execute_time &lt;= #{endTime} "
+            + "<if test='partition != null'>"
+            + "AND MOD(id, #{partition.bucketCount}) BETWEEN #{partition.fromBucket} AND #{partition.toBucket} "
+            + "</if>"
+            + "ORDER BY execute_time DESC "
+            + "LIMIT #{limitTaskCount}"
+            + "</script>")
+    @Options(fetchSize = Integer.MIN_VALUE)
+    @ResultMap("consistencyTaskInstanceResult")
+    Cursor<ConsistencyTaskInstance> scanLeanUnFinishTask(@Param("startTime") Long startTime, @Param("endTime") Long endTime,
+                                                         @Param("limitTaskCount") Long limitTaskCount, @Param("partition") TaskPartition partition);
+
+    /**
+     * 获取当前节点负责的分区中未完成的任务
+     *
+     * @param startTime      开始时间
+     * @param endTime        结束时间
+     * @param limitTaskCount 每次查询限制的条数
+     * @param partition      当前节点负责的分区
+     * @return 未完成的任务
+     */
+    @Select("SELECT " + TASK_COLUMNS +
+            "FROM argo_task " +
+            "WHERE " +
+            "task_status <= 2 " +
+            "AND execute_time>=#{startTime} AND execute_time<=#{endTime} " +
+            "AND MOD(id, #{partition.bucketCount}) BETWEEN #{partition.fromBucket} AND #{partition.toBucket} " +
+            "order by execute_time desc " +
+            "LIMIT #{limitTaskCount}")
+    @ResultMap("consistencyTaskInstanceResult")
+    List<ConsistencyTaskInstance> listByUnFinishTaskInPartition(@Param("startTime") Long startTime, @Param("endTime") Long endTime,
+                                                                @Param("limitTaskCount") Long limitTaskCount, @Param("partition") TaskPartition partition);
+
     /**
      * 启动任务
+     * 以内存中的执行次数作为版本号进行条件更新，更新成功说明数据库中的执行次数就是内存中的执行次数+1，不需要再查询一次
      *
      * @param consistencyTaskInstance 任务实例信息
      * @return 启动任务的结果
@@ -162,10 +315,35 @@ public interface TaskStoreMapper {
             + "task_status=#{taskStatus},"
             + "execute_times=execute_times+1,"
             + "execute_time=#{executeTime} "
-            + "WHERE id=#{id} and task_status!=1 and shard_key=#{shardKey}"
+            + "WHERE id=#{id} and task_status!=1 and shard_key=#{shardKey} and execute_times=#{executeTimes}"
     )
     int turnOnTask(ConsistencyTaskInstance consistencyTaskInstance);
 
+    /**
+     * 租约模式下启动任务 启动的同时写入执行租约 执行中但租约已经过期的任务（执行节点已宕机）也可以被重新启动
+     * 已经被其他节点抢占、租约还没有过期的任务不能启动，只有没有租约、租约属于当前节点或者租约已经过期的任务才能启动
+     *
+     * @param taskInstance    任务实例信息
+     * @param leaseOwner      租约持有者 即当前节点标识
+     * @param leaseExpireTime 租约到期时间
+     * @param now             当前时间
+     * @return 启动任务的结果
+     */
+    @Update("UPDATE "
+            + "argo_task "
+            + "SET "
+            + "task_status=#{taskInstance.taskStatus},"
+            + "execute_times=execute_times+1,"
+            + "execute_time=#{taskInstance.executeTime},"
+            + "lease_owner=#{leaseOwner},"
+            + "lease_expire_time=#{leaseExpireTime} "
+            + "WHERE id=#{taskInstance.id} and shard_key=#{taskInstance.shardKey} and execute_times=#{taskInstance.executeTimes} "
+            + "and (task_status!=1 or lease_expire_time<#{now}) "
+            + "and (lease_owner='' or lease_owner=#{leaseOwner} or lease_expire_time<#{now})"
+    )
+    int turnOnTaskWithLease(@Param("taskInstance") ConsistencyTaskInstance taskInstance, @Param("leaseOwner") String leaseOwner,
+                            @Param("leaseExpireTime") Long leaseExpireTime, @Param("now") Long now);
+
     /**
      * 标记任务成功
      *
@@ -193,4 +371,212 @@ public interface TaskStoreMapper {
     @Update("UPDATE argo_task SET fallback_error_msg=#{fallbackErrorMsg} WHERE id=#{id} and shard_key=#{shardKey}")
     int markFallbackFail(ConsistencyTaskInstance taskInstance);
 
+    /**
+     * 租约模式下标记任务成功 只有租约仍然属于当前节点、并且还是本次启动的执行次数时才删除
+     * 租约过期后任务可能已经被回收或者被其他节点重新启动，执行慢的原节点不能再删除它；
+     * 回收后又被当前节点重新启动的任务，执行次数已经变了，上一次执行的结果也不能再写入
+     *
+     * @param taskInstance 一致性任务实例信息
+     * @param leaseOwner   租约持有者 即当前节点标识
+     * @return 标记结果
+     */
+    @Delete("DELETE FROM argo_task WHERE id=#{taskInstance.id} and shard_key=#{taskInstance.shardKey} "
+            + "and lease_owner=#{leaseOwner} and execute_times=#{taskInstance.executeTimes}")
+    int markSuccessWithLease(@Param("taskInstance") ConsistencyTaskInstance taskInstance, @Param("leaseOwner") String leaseOwner);
+
+    /**
+     * 租约模式下标记任务为失败 只有租约仍然属于当前节点、并且还是本次启动的执行次数时才更新
+     *
+     * @param taskInstance 一致性任务实例信息
+     * @param leaseOwner   租约持有者 即当前节点标识
+     * @return 标记结果
+     */
+    @Update("UPDATE argo_task SET task_status=2, error_msg=#{taskInstance.errorMsg}, execute_time=#{taskInstance.executeTime} "
+            + "WHERE id=#{taskInstance.id} and shard_key=#{taskInstance.shardKey} "
+            + "and lease_owner=#{leaseOwner} and execute_times=#{taskInstance.executeTimes}")
+    int markFailWithLease(@Param("taskInstance") ConsistencyTaskInstance taskInstance, @Param("leaseOwner") String leaseOwner);
+
+    /**
+     * 租约模式下标记为降级失败 只有租约仍然属于当前节点、并且还是本次启动的执行次数时才更新
+     *
+     * @param taskInstance 一致性任务实例
+     * @param leaseOwner   租约持有者 即当前节点标识
+     * @return 标记结果
+     */
+    @Update("UPDATE argo_task SET fallback_error_msg=#{taskInstance.fallbackErrorMsg} "
+            + "WHERE id=#{taskInstance.id} and shard_key=#{taskInstance.shardKey} "
+            + "and lease_owner=#{leaseOwner} and execute_times=#{taskInstance.executeTimes}")
+    int markFallbackFailWithLease(@Param("taskInstance") ConsistencyTaskInstance taskInstance, @Param("leaseOwner") String leaseOwner);
+
+    /**
+     * 批量标记任务成功
+     *
+     * @param taskInstances 一致性任务实例信息
+     * @param leaseOwner    租约模式下为当前节点标识 只删除租约仍然属于当前节点、并且执行次数没有变化的任务 非租约模式下为null
+     * @return 标记结果
+     */
+    @Delete("<script>"
+            + "DELETE FROM argo_task WHERE <choose>"
+            + "<when test='leaseOwner != null'>(id, shard_key, execute_times) IN "
+            + "<foreach collection='taskInstances' item='item' open='(' separator=',' close=')'>(#{item.id},#{item.shardKey},#{item.executeTimes})</foreach>"
+            + " AND lease_owner=#{leaseOwner}</when>"
+            + "<otherwise>(id, shard_key) IN "
+            + "<foreach collection='taskInstances' item='item' open='(' separator=',' close=')'>(#{item.id},#{item.shardKey})</foreach>"
+            + "</otherwise>"
+            + "</choose>"
+            + "</script>")
+    int batchMarkSuccess(@Param("taskInstances") List<ConsistencyTaskInstance> taskInstances, @Param("leaseOwner") String leaseOwner);
+
+    /**
+     * 批量标记任务为失败 每个任务的错误信息和下次执行时间各不相同 用CASE一条语句写入
+     *
+     * @param taskInstances 一致性任务实例信息
+     * @param leaseOwner    租约模式下为当前节点标识 只更新租约仍然属于当前节点、并且执行次数没有变化的任务 非租约模式下为null
+     * @return 标记结果
+     */
+    @Update("<script>"
+            + "UPDATE argo_task SET task_status=2, "
+            + "error_msg=CASE "
+            + "<foreach collection='taskInstances' item='item'>WHEN id=#{item.id} AND shard_key=#{item.shardKey} THEN #{item.errorMsg} </foreach>"
+            + "END, "
+            + "execute_time=CASE "
+            + "<foreach collection='taskInstances' item='item'>WHEN id=#{item.id} AND shard_key=#{item.shardKey} THEN #{item.executeTime} </foreach>"
+            + "END "
+            + "WHERE <choose>"
+            + "<when test='leaseOwner != null'>(id, shard_key, execute_times) IN "
+            + "<foreach collection='taskInstances' item='item' open='(' separator=',' close=')'>(#{item.id},#{item.shardKey},#{item.executeTimes})</foreach>"
+            + " AND lease_owner=#{leaseOwner}</when>"
+            + "<otherwise>(id, shard_key) IN "
+            + "<foreach collection='taskInstances' item='item' open='(' separator=',' close=')'>(#{item.id},#{item.shardKey})</foreach>"
+            + "</otherwise>"
+            + "</choose>"
+            + "</script>")
+    int batchMarkFail(@Param("taskInstances") List<ConsistencyTaskInstance> taskInstances, @Param("leaseOwner") String leaseOwner);
+
+    /**
+     * 批量标记为降级失败
+     *
+     * @param taskInstances 一致性任务实例
+     * @param leaseOwner    租约模式下为当前节点标识 只更新租约仍然属于当前节点、并且执行次数没有变化的任务 非租约模式下为null
+     * @return 标记结果
+     */
+    @Update("<script>"
+            + "UPDATE argo_task SET fallback_error_msg=CASE "
+            + "<foreach collection='taskInstances' item='item'>WHEN id=#{item.id} AND shard_key=#{item.shardKey} THEN #{item.fallbackErrorMsg} </foreach>"
+            + "END "
+            + "WHERE <choose>"
+            + "<when test='leaseOwner != null'>(id, shard_key, execute_times) IN "
+            + "<foreach collection='taskInstances' item='item' open='(' separator=',' close=')'>(#{item.id},#{item.shardKey},#{item.executeTimes})</foreach>"
+            + " AND lease_owner=#{leaseOwner}</when>"
+            + "<otherwise>(id, shard_key) IN "
+            + "<foreach collection='taskInstances' item='item' open='(' separator=',' close=')'>(#{item.id},#{item.shardKey})</foreach>"
+            + "</otherwise>"
+            + "</choose>"
+            + "</script>")
+    int batchMarkFallbackFail(@Param("taskInstances") List<ConsistencyTaskInstance> taskInstances, @Param("leaseOwner") String leaseOwner);
+
+    /**
+     * 通过条件更新抢占一批到期的任务 把租约写到任务上
+     * 只抢占没有租约、租约已经过期或者租约本来就属于当前节点的任务
+     *
+     * @param leaseOwner      租约持有者 即当前节点标识
+     * @param leaseExpireTime 租约到期时间 同时作为本次抢占的批次标识
+     * @param startTime       开始时间
+     * @param endTime         结束时间
+     * @param now             当前时间
+     * @param limitTaskCount  每次抢占的最大条数
+     * @return 抢占到的任务数
+     */
+    @Update("UPDATE argo_task SET lease_owner=#{leaseOwner}, lease_expire_time=#{leaseExpireTime} " +
+            "WHERE task_status IN (0, 2) " +
+            "AND execute_time>=#{startTime} AND execute_time<=#{endTime} " +
+            "AND (lease_expire_time<#{now} OR lease_owner=#{leaseOwner}) " +
+            "ORDER BY execute_time " +
+            "LIMIT #{limitTaskCount}")
+    int claimByConditionalUpdate(@Param("leaseOwner") String leaseOwner, @Param("leaseExpireTime") Long leaseExpireTime,
+                                 @Param("startTime") Long startTime, @Param("endTime") Long endTime,
+                                 @Param("now") Long now, @Param("limitTaskCount") Long limitTaskCount);
+
+    /**
+     * 查询某一次抢占到的任务
+     *
+     * @param leaseOwner      租约持有者
+     * @param leaseExpireTime 租约到期时间
+     * @return 抢占到的任务
+     */
+    @Select("SELECT " + TASK_COLUMNS +
+            "FROM argo_task " +
+            "WHERE lease_owner=#{leaseOwner} AND lease_expire_time=#{leaseExpireTime} AND task_status IN (0, 2) " +
+            "ORDER BY execute_time")
+    @ResultMap("consistencyTaskInstanceResult")
+    List<ConsistencyTaskInstance> listByLease(@Param("leaseOwner") String leaseOwner, @Param("leaseExpireTime") Long leaseExpireTime);
+
+    /**
+     * 锁定一批到期的任务 已经被其他节点锁定的行直接跳过 需要在事务中执行
+     *
+     * @param leaseOwner     租约持有者 即当前节点标识
+     * @param startTime      开始时间
+     * @param endTime        结束时间
+     * @param now            当前时间
+     * @param limitTaskCount 每次锁定的最大条数
+     * @return 锁定的任务
+     */
+    @Select("SELECT " + TASK_COLUMNS +
+            "FROM argo_task " +
+            "WHERE task_status IN (0, 2) " +
+            "AND execute_time>=#{startTime} AND execute_time<=#{endTime} " +
+            "AND (lease_expire_time<#{now} OR lease_owner=#{leaseOwner}) " +
+            "ORDER BY execute_time " +
+            "LIMIT #{limitTaskCount} " +
+            "FOR UPDATE SKIP LOCKED")
+    @ResultMap("consistencyTaskInstanceResult")
+    List<ConsistencyTaskInstance> lockForClaimSkipLocked(@Param("leaseOwner") String leaseOwner, @Param("startTime") Long startTime,
+                                                         @Param("endTime") Long endTime, @Param("now") Long now,
+                                                         @Param("limitTaskCount") Long limitTaskCount);
+
+    /**
+     * 批量写入任务租约
+     *
+     * @param taskInstances   一致性任务实例
+     * @param leaseOwner      租约持有者
+     * @param leaseExpireTime 租约到期时间
+     * @return 写入结果
+     */
+    @Update("<script>"
+            + "UPDATE argo_task SET lease_owner=#{leaseOwner}, lease_expire_time=#{leaseExpireTime} "
+            + "WHERE (id, shard_key) IN "
+            + "<foreach collection='taskInstances' item='item' open='(' separator=',' close=')'>(#{item.id},#{item.shardKey})</foreach>"
+            + "</script>")
+    int batchUpdateLease(@Param("taskInstances") List<ConsistencyTaskInstance> taskInstances,
+                         @Param("leaseOwner") String leaseOwner, @Param("leaseExpireTime") Long leaseExpireTime);
+
+    /**
+     * 给当前节点执行中的任务续约
+     *
+     * @param taskInstances   当前节点执行中的任务
+     * @param leaseOwner      租约持有者
+     * @param leaseExpireTime 新的租约到期时间
+     * @return 续约结果
+     */
+    @Update("<script>"
+            + "UPDATE argo_task SET lease_expire_time=#{leaseExpireTime} "
+            + "WHERE lease_owner=#{leaseOwner} AND task_status=1 AND (id, shard_key) IN "
+            + "<foreach collection='taskInstances' item='item' open='(' separator=',' close=')'>(#{item.id},#{item.shardKey})</foreach>"
+            + "</script>")
+    int renewLease(@Param("taskInstances") Collection<ConsistencyTaskInstance> taskInstances,
+                   @Param("leaseOwner") String leaseOwner, @Param("leaseExpireTime") Long leaseExpireTime);
+
+    /**
+     * 把租约已经过期的执行中任务（执行节点已宕机）重置为失败状态 让它们可以被重新抢占执行
+     *
+     * @param now        当前时间
+     * @param errorMsg   写入的错误信息
+     * @param limitCount 每次重置的最大条数
+     * @return 重置的任务数
+     */
+    @Update("UPDATE argo_task SET task_status=2, error_msg=#{errorMsg}, lease_owner='', lease_expire_time=0 " +
+            "WHERE task_status=1 AND lease_expire_time<#{now} " +
+            "LIMIT #{limitCount}")
+    int resetExpiredLease(@Param("now") Long now, @Param("errorMsg") String errorMsg, @Param("limitCount") Integer limitCount);
+
 }
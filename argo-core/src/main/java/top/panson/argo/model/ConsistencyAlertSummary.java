@@ -0,0 +1,46 @@
+package top.panson.argo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 合并后的告警汇总
+ * 同一个任务（taskId + alertActionBeanName）在一个合并窗口内触发的全部告警
+ *
+ **/
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ConsistencyAlertSummary {
+
+    /**
+     * 任务id
+     */
+    private String taskId;
+    /**
+     * 执行告警动作的beanName
+     */
+    private String alertActionBeanName;
+    /**
+     * 窗口内触发告警的次数
+     */
+    private Long alertCount;
+    /**
+     * 窗口内第一次触发告警的时间
+     */
+    private Long firstAlertTime;
+    /**
+     * 窗口内最后一次触发告警的时间
+     */
+    private Long lastAlertTime;
+    /**
+     * 触发告警的任务实例样本 按触发顺序保留最早的几个
+     */
+    private List<ConsistencyTaskInstance> samples;
+
+}
@@ -0,0 +1,80 @@
+package top.panson.argo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一致性任务的模板
+ * 同一个标注了@ConsistencyTask的方法，每次调用生成的任务实例中只有入参、时间和分片键不同，其余的数据在第一次调用时计算好后缓存下来
+ *
+ **/
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class ConsistencyTaskTemplate {
+
+    /**
+     * 注解中指定的任务id 没有指定时为空，任务id使用方法签名
+     */
+    private String taskId;
+    /**
+     * 方法所在的类
+     */
+    private Class<?> targetClass;
+    /**
+     * 方法名称
+     */
+    private String methodName;
+    /**
+     * 方法签名缓存 方法签名按入参的实际类型生成，key为入参的实际类型
+     */
+    private Map<List<Class<?>>, String> methodSignNames;
+    /**
+     * 方法声明的入参类型 入参为null时用于生成方法签名
+     */
+    private Class<?>[] parameterClasses;
+    /**
+     * 方法入参的类型名称 多个用逗号分隔
+     */
+    private String parameterTypes;
+    /**
+     * 方法声明的入参类型 包含泛型 用于编码任务参数
+     */
+    private Type[] genericParameterTypes;
+    /**
+     * 执行模式
+     */
+    private Integer performanceWay;
+    /**
+     * 线程模型
+     */
+    private Integer threadWay;
+    /**
+     * 任务执行间隔秒数
+     */
+    private int executeIntervalSec;
+    /**
+     * 任务执行延迟时间
+     */
+    private int delayTime;
+    /**
+     * 告警表达式
+     */
+    private String alertExpression;
+    /**
+     * 执行告警动作的beanName
+     */
+    private String alertActionBeanName;
+    /**
+     * 降级类的名称
+     */
+    private String fallbackClassName;
+
+}
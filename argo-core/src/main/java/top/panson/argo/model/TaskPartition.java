@@ -0,0 +1,32 @@
+package top.panson.argo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 当前节点负责扫描的任务分区
+ * 任务按 MOD(id, bucketCount) 划分为bucketCount个桶，每个节点负责一段连续的桶 [fromBucket, toBucket]
+ *
+ **/
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class TaskPartition {
+
+    /**
+     * 桶的总数
+     */
+    private Integer bucketCount;
+    /**
+     * 当前节点负责的第一个桶
+     */
+    private Integer fromBucket;
+    /**
+     * 当前节点负责的最后一个桶
+     */
+    private Integer toBucket;
+
+}
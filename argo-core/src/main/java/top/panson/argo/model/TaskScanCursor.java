@@ -0,0 +1,71 @@
+package top.panson.argo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 未完成任务的分页扫描游标
+ * 按(execute_time, id)升序翻页，每一页从上一页最后一条任务之后开始查询，最早到期的任务最先被执行
+ *
+ **/
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class TaskScanCursor {
+
+    /**
+     * 查询的开始时间
+     */
+    private Long startTime;
+    /**
+     * 查询的结束时间 一次扫描过程中固定不变 避免执行失败后重新计算了执行时间的任务被无限次扫描到
+     */
+    private Long endTime;
+    /**
+     * 每页查询的条数
+     */
+    private Long pageSize;
+    /**
+     * 是否只查询扫描需要的精简字段
+     */
+    private boolean lean;
+    /**
+     * 当前节点负责的分区 为null时扫描全部任务
+     */
+    private TaskPartition partition;
+    /**
+     * 上一页最后一条任务的执行时间
+     */
+    private Long lastExecuteTime;
+    /**
+     * 上一页最后一条任务的id
+     */
+    private Long lastId;
+    /**
+     * 是否已经扫描到最后一页
+     */
+    private boolean finished;
+
+    /**
+     * 根据查询出来的一页任务移动游标 不满一页说明已经没有更多到期的任务了
+     *
+     * @param page 查询出来的一页任务
+     */
+    public void advance(List<ConsistencyTaskInstance> page) {
+        if (page == null || page.size() < pageSize) {
+            finished = true;
+        }
+        if (page == null || page.isEmpty()) {
+            return;
+        }
+        ConsistencyTaskInstance last = page.get(page.size() - 1);
+        lastExecuteTime = last.getExecuteTime();
+        lastId = last.getId();
+    }
+
+}
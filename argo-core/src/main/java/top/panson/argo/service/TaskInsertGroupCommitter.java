@@ -0,0 +1,282 @@
+package top.panson.argo.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import top.panson.argo.config.TendConsistencyConfiguration;
+import top.panson.argo.exceptions.ConsistencyException;
+import top.panson.argo.mapper.TaskStoreMapper;
+import top.panson.argo.model.ConsistencyTaskInstance;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * 任务写入的组提交器
+ * 多个业务线程并发写入的任务会在这里排队，由一个后台线程合并为一条多行INSERT语句写入数据库，
+ * 写入完成（数据已经落库）之后才会唤醒对应的业务线程，这样数据库往返次数随并发度增加而摊薄
+ *
+ **/
+@Slf4j
+@Component
+public class TaskInsertGroupCommitter {
+
+    /**
+     * 组提交线程名称
+     */
+    private static final String GROUP_COMMIT_THREAD_NAME = "CTInsertGroupCommitter";
+    /**
+     * 排队队列的容量是批次大小的倍数 队列满了之后由业务线程自己直接写入
+     */
+    private static final int QUEUE_CAPACITY_FACTOR = 16;
+    /**
+     * 业务线程等待自己的任务落库的最长时间 单位秒
+     */
+    private static final long WAIT_DURABLE_TIMEOUT_SECONDS = 10L;
+    /**
+     * 组提交线程空闲时检查是否需要退出的间隔 单位毫秒
+     */
+    private static final long IDLE_POLL_MILLIS = 100L;
+
+    /**
+     * 任务存储的mapper组件
+     */
+    @Autowired
+    private TaskStoreMapper taskStoreMapper;
+    /**
+     * 一致性框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+
+    /**
+     * 等待写入的任务队列
+     */
+    private BlockingQueue<PendingInsert> pendingQueue;
+    /**
+     * 组提交线程
+     */
+    private Thread groupCommitThread;
+    /**
+     * 组提交线程是否在运行
+     */
+    private volatile boolean running = false;
+
+    /**
+     * 开启了组提交模式时 启动组提交线程
+     */
+    @PostConstruct
+    public void start() {
+        if (!tendConsistencyConfiguration.getInsertGroupCommitEnabled()) {
+            return;
+        }
+        pendingQueue = new LinkedBlockingQueue<>(tendConsistencyConfiguration.getInsertBatchSize() * QUEUE_CAPACITY_FACTOR);
+        running = true;
+        groupCommitThread = new Thread(this::runGroupCommitLoop, GROUP_COMMIT_THREAD_NAME);
+        groupCommitThread.setDaemon(true);
+        groupCommitThread.start();
+        log.info("[一致性任务框架] 任务写入组提交模式已开启 batchSize={} maxLingerMicros={}",
+                tendConsistencyConfiguration.getInsertBatchSize(), tendConsistencyConfiguration.getInsertMaxLingerMicros());
+    }
+
+    /**
+     * 停止组提交线程 队列中剩余的任务会在线程退出前全部写入
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        groupCommitThread.join(TimeUnit.SECONDS.toMillis(WAIT_DURABLE_TIMEOUT_SECONDS));
+    }
+
+    /**
+     * 当前调用是否可以走组提交
+     * 如果当前线程处于业务事务中，任务必须和业务数据在同一个事务里落库，否则就失去了本地消息表的原子性，所以只能单条写入
+     * 分库模式下多行INSERT无法保证主键回填的正确性，也只能单条写入
+     *
+     * @return 是否可以走组提交
+     */
+    public boolean isAvailable() {
+        return running
+                && !tendConsistencyConfiguration.getTaskSharded()
+                && !TransactionSynchronizationManager.isActualTransactionActive();
+    }
+
+    /**
+     * 写入任务实例 阻塞直到该任务所在的批次落库
+     *
+     * @param taskInstance 任务实例
+     */
+    public void insert(ConsistencyTaskInstance taskInstance) {
+        PendingInsert pendingInsert = new PendingInsert(taskInstance);
+        if (!pendingQueue.offer(pendingInsert)) {
+            // 排队的任务太多了，不再等待，由业务线程直接写入
+            taskStoreMapper.initTask(taskInstance);
+            return;
+        }
+        if (!running && pendingQueue.remove(pendingInsert)) {
+            // 组提交线程已经停止，不会再写入队列中的任务，由业务线程直接写入
+            taskStoreMapper.initTask(taskInstance);
+            return;
+        }
+        try {
+            pendingInsert.durableFuture.get(WAIT_DURABLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException | TimeoutException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (pendingQueue.remove(pendingInsert)) {
+                // 还没有被组提交线程取走 从队列中移除后不会再写入，可以放心地向业务线程报错
+                throw new ConsistencyException(e);
+            }
+            // 已经被组提交线程取走，写入结果未知，只能等待写入完成，避免业务线程认为失败的任务之后又落库
+            awaitDurable(pendingInsert);
+        } catch (ExecutionException e) {
+            throw new ConsistencyException(e);
+        }
+    }
+
+    /**
+     * 不限时等待组提交线程已经取走的任务写入完成
+     *
+     * @param pendingInsert 等待写入的任务
+     */
+    private void awaitDurable(PendingInsert pendingInsert) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    pendingInsert.durableFuture.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new ConsistencyException(e);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 组提交主循环 第一个任务到达后最多等待maxLinger，或者凑满batchSize，就合并写入一次
+     */
+    private void runGroupCommitLoop() {
+        int batchSize = tendConsistencyConfiguration.getInsertBatchSize();
+        long maxLingerNanos = TimeUnit.MICROSECONDS.toNanos(tendConsistencyConfiguration.getInsertMaxLingerMicros());
+        List<PendingInsert> batch = new ArrayList<>(batchSize);
+        while (running || !pendingQueue.isEmpty()) {
+            try {
+                PendingInsert first = pendingQueue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxLingerNanos;
+                while (batch.size() < batchSize) {
+                    long remainingNanos = deadline - System.nanoTime();
+                    if (remainingNanos <= 0) {
+                        break;
+                    }
+                    PendingInsert next = pendingQueue.poll(remainingNanos, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                // 等待时间到了以后，已经在排队的任务也一起带上
+                pendingQueue.drainTo(batch, batchSize - batch.size());
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // 已经取出但还没有写入的任务不会再写入 唤醒等待的业务线程
+                failBatch(batch, e);
+                break;
+            } catch (Exception e) {
+                log.error("[一致性任务框架] 任务组提交时，发生异常", e);
+                failBatch(batch, e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 合并写入一个批次 并唤醒等待的业务线程
+     * 多行INSERT是一条语句，失败时整条语句回滚，一行都不会写入，这时逐条重新写入，只让自己那一行写入失败的业务线程报错，
+     * 避免一条坏数据（例如字段超长）拖累同一批次中的其他任务
+     *
+     * @param batch 要写入的批次
+     */
+    private void commit(List<PendingInsert> batch) {
+        List<ConsistencyTaskInstance> taskInstances = new ArrayList<>(batch.size());
+        for (PendingInsert pendingInsert : batch) {
+            taskInstances.add(pendingInsert.taskInstance);
+        }
+        try {
+            // 不在事务中执行，语句返回时数据已经提交
+            taskStoreMapper.batchInitTask(taskInstances);
+        } catch (Exception e) {
+            log.warn("[一致性任务框架] 批量写入{}个任务时，发生异常，改为逐条写入", batch.size(), e);
+            commitOneByOne(batch);
+            return;
+        }
+        for (PendingInsert pendingInsert : batch) {
+            pendingInsert.durableFuture.complete(null);
+        }
+    }
+
+    /**
+     * 逐条写入批次中的任务 每个任务的写入结果只通知给它自己的业务线程
+     *
+     * @param batch 批量写入失败的批次
+     */
+    private void commitOneByOne(List<PendingInsert> batch) {
+        for (PendingInsert pendingInsert : batch) {
+            try {
+                taskStoreMapper.initTask(pendingInsert.taskInstance);
+            } catch (Exception e) {
+                log.error("[一致性任务框架] 逐条写入任务时，发生异常 methodSignName={}", pendingInsert.taskInstance.getMethodSignName(), e);
+                pendingInsert.durableFuture.completeExceptionally(e);
+                continue;
+            }
+            pendingInsert.durableFuture.complete(null);
+        }
+    }
+
+    /**
+     * 唤醒批次中还在等待的业务线程 已经有写入结果的任务不受影响
+     *
+     * @param batch 没有写入的批次
+     * @param e     异常
+     */
+    private void failBatch(List<PendingInsert> batch, Exception e) {
+        for (PendingInsert pendingInsert : batch) {
+            pendingInsert.durableFuture.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 等待写入的任务
+     */
+    private static class PendingInsert {
+
+        private final ConsistencyTaskInstance taskInstance;
+
+        private final CompletableFuture<Void> durableFuture = new CompletableFuture<>();
+
+        PendingInsert(ConsistencyTaskInstance taskInstance) {
+            this.taskInstance = taskInstance;
+        }
+    }
+
+}
@@ -0,0 +1,363 @@
+package top.panson.argo.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.mybatis.spring.transaction.SpringManagedTransactionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+import top.panson.argo.config.ShardDataSourceProperties;
+import top.panson.argo.config.TendConsistencyConfiguration;
+import top.panson.argo.exceptions.ConsistencyException;
+import top.panson.argo.mapper.TaskStoreMapper;
+import top.panson.argo.model.ConsistencyTaskInstance;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 框架内置的分库路由
+ * 按配置为每个物理库创建数据源和任务表的mapper，对外提供一个路由mapper：
+ * 1、参数中带有任务实例或者shardKey的语句，按shard_key直接路由到一个物理库执行，不需要解析和改写SQL
+ * 2、参数中带有任务实例集合的批量语句，按物理库拆分后分别执行，返回值求和
+ * 3、没有分片键的扫描、抢占语句在全部物理库上分别执行，返回List时合并，返回int时求和，返回Long（最早执行时间）时取最小值
+ * 注：任务表的读写使用物理库自己的连接，不加入业务服务的事务。写入任务如果在业务事务中执行，业务事务回滚后任务依然存在，
+ * 失去了本地消息表的原子性，所以处于业务事务中时拒绝写入任务（物理库的数据源已经加入当前事务的除外）
+ *
+ **/
+@Slf4j
+@Component
+public class TaskShardRouter {
+
+    /**
+     * 分片键参数的名称
+     */
+    private static final String SHARD_KEY_PARAM_NAME = "shardKey";
+
+    /**
+     * 业务服务的SqlSessionFactory 物理库的SqlSessionFactory沿用它的配置
+     */
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+    /**
+     * 框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+
+    /**
+     * 全部物理库的数据源 key为物理库的名称
+     */
+    private Map<String, DataSource> shardDataSources = Collections.emptyMap();
+    /**
+     * 全部物理库的数据源 下标为物理库的编号
+     */
+    private List<DataSource> shardDataSourceList = Collections.emptyList();
+    /**
+     * 全部物理库的任务表mapper 下标为物理库的编号
+     */
+    private List<TaskStoreMapper> shardMappers = Collections.emptyList();
+    /**
+     * 按shard_key路由的任务表mapper
+     */
+    private TaskStoreMapper routingMapper;
+
+    /**
+     * 开启了内置分库路由时 为每个物理库创建数据源和mapper
+     */
+    @PostConstruct
+    public void init() {
+        if (!tendConsistencyConfiguration.getNativeShardEnabled()) {
+            return;
+        }
+        Map<String, DataSource> dataSources = new LinkedHashMap<>();
+        List<TaskStoreMapper> mappers = new ArrayList<>();
+        tendConsistencyConfiguration.getShardDataSources().forEach((shardName, shardDataSourceProperties) -> {
+            DataSource shardDataSource = buildShardDataSource(shardDataSourceProperties);
+            dataSources.put(shardName, shardDataSource);
+            mappers.add(new SqlSessionTemplate(buildShardSqlSessionFactory(shardName, shardDataSource)).getMapper(TaskStoreMapper.class));
+        });
+        shardDataSources = dataSources;
+        shardDataSourceList = new ArrayList<>(dataSources.values());
+        shardMappers = mappers;
+        routingMapper = (TaskStoreMapper) Proxy.newProxyInstance(TaskStoreMapper.class.getClassLoader(),
+                new Class<?>[]{TaskStoreMapper.class}, (proxy, method, args) -> invokeRouted(method, args));
+        log.info("[一致性任务框架] 内置分库路由已开启 物理库 {}", shardDataSources.keySet());
+    }
+
+    /**
+     * 关闭物理库的连接池
+     */
+    @PreDestroy
+    public void close() {
+        for (DataSource shardDataSource : shardDataSources.values()) {
+            if (shardDataSource instanceof Closeable) {
+                try {
+                    ((Closeable) shardDataSource).close();
+                } catch (Exception e) {
+                    log.error("[一致性任务框架] 关闭物理库连接池时，发生异常", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 是否开启了内置分库路由
+     *
+     * @return 是否开启
+     */
+    public boolean isEnabled() {
+        return routingMapper != null;
+    }
+
+    /**
+     * 获取全部物理库的数据源
+     *
+     * @return 物理库的数据源 key为物理库的名称
+     */
+    public Map<String, DataSource> getShardDataSources() {
+        return shardDataSources;
+    }
+
+    /**
+     * 获取按shard_key路由的任务表mapper
+     *
+     * @return 路由mapper
+     */
+    public TaskStoreMapper getRoutingMapper() {
+        return routingMapper;
+    }
+
+    /**
+     * 计算shard_key所在的物理库编号
+     * 雪花算法生成的shard_key低12位是毫秒内的序号，并发不高时大多是0或1，直接取模会集中在少数物理库，这里先把全部位打散再取模
+     *
+     * @param shardKey 分片键
+     * @return 物理库编号
+     */
+    public int route(long shardKey) {
+        long hash = shardKey;
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (int) Math.floorMod(hash, (long) shardMappers.size());
+    }
+
+    /**
+     * 路由执行mapper方法
+     *
+     * @param method mapper方法
+     * @param args   参数
+     * @return 执行结果
+     */
+    private Object invokeRouted(Method method, Object[] args) throws Throwable {
+        if (Object.class.equals(method.getDeclaringClass())) {
+            return method.invoke(this, args);
+        }
+        Object[] params = args == null ? new Object[0] : args;
+        Long shardKey = findShardKey(method, params);
+        if (shardKey != null) {
+            int shardIndex = route(shardKey);
+            checkInsertTransaction(method, shardIndex);
+            return invoke(shardMappers.get(shardIndex), method, params);
+        }
+        for (int i = 0; i < params.length; i++) {
+            if (isTaskCollection(params[i])) {
+                return invokeByShard(method, params, i);
+            }
+        }
+        return invokeOnAllShards(method, params);
+    }
+
+    /**
+     * 从参数中找出分片键
+     *
+     * @param method mapper方法
+     * @param params 参数
+     * @return 分片键 没有时返回null
+     */
+    private Long findShardKey(Method method, Object[] params) {
+        Annotation[][] parameterAnnotations = method.getParameterAnnotations();
+        for (int i = 0; i < params.length; i++) {
+            if (params[i] instanceof ConsistencyTaskInstance) {
+                return ((ConsistencyTaskInstance) params[i]).getShardKey();
+            }
+            for (Annotation annotation : parameterAnnotations[i]) {
+                if (annotation instanceof Param && SHARD_KEY_PARAM_NAME.equals(((Param) annotation).value())) {
+                    return (Long) params[i];
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 把批量语句中的任务实例集合按物理库拆分后分别执行
+     *
+     * @param method          mapper方法
+     * @param params          参数
+     * @param collectionIndex 任务实例集合在参数中的下标
+     * @return 各物理库的执行结果之和
+     */
+    private Object invokeByShard(Method method, Object[] params, int collectionIndex) throws Throwable {
+        Map<Integer, List<ConsistencyTaskInstance>> shardTasks = new LinkedHashMap<>();
+        for (Object taskInstance : (Collection<?>) params[collectionIndex]) {
+            ConsistencyTaskInstance instance = (ConsistencyTaskInstance) taskInstance;
+            shardTasks.computeIfAbsent(route(instance.getShardKey()), shardIndex -> new ArrayList<>()).add(instance);
+        }
+        List<Object> results = new ArrayList<>();
+        for (Integer shardIndex : shardTasks.keySet()) {
+            checkInsertTransaction(method, shardIndex);
+        }
+        for (Map.Entry<Integer, List<ConsistencyTaskInstance>> entry : shardTasks.entrySet()) {
+            Object[] shardParams = params.clone();
+            shardParams[collectionIndex] = entry.getValue();
+            results.add(invoke(shardMappers.get(entry.getKey()), method, shardParams));
+        }
+        return mergeResults(method, results);
+    }
+
+    /**
+     * 处于业务事务中时拒绝写入任务
+     * 物理库的连接不加入业务事务，任务会先于业务数据独立提交，业务事务回滚后任务依然会被执行
+     *
+     * @param method     mapper方法
+     * @param shardIndex 物理库编号
+     */
+    private void checkInsertTransaction(Method method, int shardIndex) {
+        if (!method.isAnnotationPresent(Insert.class) || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            return;
+        }
+        if (TransactionSynchronizationManager.hasResource(shardDataSourceList.get(shardIndex))) {
+            return;
+        }
+        throw new ConsistencyException("内置分库路由的物理库不加入业务事务，无法保证任务和业务数据的原子性，不支持在业务事务中写入任务！"
+                + "注意：请在事务外调用一致性任务方法，或者使用ShardingSphere等加入业务事务的分库方案");
+    }
+
+    /**
+     * 在全部物理库上分别执行
+     *
+     * @param method mapper方法
+     * @param params 参数
+     * @return 合并后的执行结果
+     */
+    private Object invokeOnAllShards(Method method, Object[] params) throws Throwable {
+        if (Cursor.class.isAssignableFrom(method.getReturnType())) {
+            throw new ConsistencyException(String.format("内置分库路由不支持在全部物理库上执行 %s", method.getName()));
+        }
+        List<Object> results = new ArrayList<>();
+        for (TaskStoreMapper shardMapper : shardMappers) {
+            results.add(invoke(shardMapper, method, params));
+        }
+        return mergeResults(method, results);
+    }
+
+    /**
+     * 合并多个物理库的执行结果
+     *
+     * @param method  mapper方法
+     * @param results 各物理库的执行结果
+     * @return 合并后的执行结果
+     */
+    private Object mergeResults(Method method, List<Object> results) {
+        Class<?> returnType = method.getReturnType();
+        if (List.class.isAssignableFrom(returnType)) {
+            List<Object> merged = new ArrayList<>();
+            results.forEach(result -> merged.addAll((List<?>) result));
+            return merged;
+        }
+        if (int.class.equals(returnType) || Integer.class.equals(returnType)) {
+            return results.stream().mapToInt(result -> result == null ? 0 : (Integer) result).sum();
+        }
+        if (Long.class.equals(returnType)) {
+            return results.stream().filter(Objects::nonNull).map(result -> (Long) result).min(Long::compare).orElse(null);
+        }
+        return null;
+    }
+
+    /**
+     * 执行一个物理库的mapper方法
+     *
+     * @param shardMapper 物理库的mapper
+     * @param method      mapper方法
+     * @param params      参数
+     * @return 执行结果
+     */
+    private Object invoke(TaskStoreMapper shardMapper, Method method, Object[] params) throws Throwable {
+        try {
+            return method.invoke(shardMapper, params);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    /**
+     * 参数是否是任务实例集合
+     *
+     * @param param 参数
+     * @return 是否是任务实例集合
+     */
+    private boolean isTaskCollection(Object param) {
+        if (!(param instanceof Collection) || ((Collection<?>) param).isEmpty()) {
+            return false;
+        }
+        return ((Collection<?>) param).iterator().next() instanceof ConsistencyTaskInstance;
+    }
+
+    /**
+     * 创建物理库的数据源 使用业务服务classpath中的连接池
+     *
+     * @param shardDataSourceProperties 物理库的连接配置
+     * @return 数据源
+     */
+    private DataSource buildShardDataSource(ShardDataSourceProperties shardDataSourceProperties) {
+        DataSourceBuilder<?> dataSourceBuilder = DataSourceBuilder.create()
+                .url(shardDataSourceProperties.getUrl())
+                .username(shardDataSourceProperties.getUsername())
+                .password(shardDataSourceProperties.getPassword());
+        if (!StringUtils.isEmpty(shardDataSourceProperties.getDriverClassName())) {
+            dataSourceBuilder.driverClassName(shardDataSourceProperties.getDriverClassName());
+        }
+        return dataSourceBuilder.build();
+    }
+
+    /**
+     * 为物理库创建SqlSessionFactory 只注册任务表的mapper
+     *
+     * @param shardName       物理库的名称
+     * @param shardDataSource 物理库的数据源
+     * @return SqlSessionFactory
+     */
+    private SqlSessionFactory buildShardSqlSessionFactory(String shardName, DataSource shardDataSource) {
+        Configuration configuration = new Configuration(new Environment(shardName, new SpringManagedTransactionFactory(), shardDataSource));
+        configuration.setMapUnderscoreToCamelCase(sqlSessionFactory.getConfiguration().isMapUnderscoreToCamelCase());
+        configuration.addMapper(TaskStoreMapper.class);
+        return new SqlSessionFactoryBuilder().build(configuration);
+    }
+
+}
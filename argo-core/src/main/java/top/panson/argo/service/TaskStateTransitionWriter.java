@@ -0,0 +1,361 @@
+package top.panson.argo.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import top.panson.argo.config.TendConsistencyConfiguration;
+import top.panson.argo.mapper.TaskStoreMapper;
+import top.panson.argo.model.ConsistencyTaskInstance;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 任务状态变更的异步批量写入器
+ * 执行线程产生的成功/失败/降级失败结果先进入有界缓冲区，由后台线程按数量或时间间隔合并刷盘：
+ * 成功的任务合并为一条 DELETE ... WHERE (id, shard_key) IN (...)，失败和降级失败的任务各合并为一条 UPDATE
+ * <p>
+ * 关于宕机：缓冲区中还没有刷盘的状态变更会丢失，此时任务在数据库中仍然处于执行中的状态，
+ * 只能等租约过期后由回收线程重置后重新执行，所以必须同时开启租约模式，任务本身也需要保证幂等。
+ * 正常停机时会先把缓冲区中的状态变更全部刷盘；缓冲区满了时执行线程阻塞等待刷盘腾出空间，
+ * 不会丢弃状态变更，也不会让后产生的状态变更越过缓冲区中更早的状态变更先写入数据库
+ *
+ **/
+@Slf4j
+@Component
+public class TaskStateTransitionWriter {
+
+    /**
+     * 刷盘线程名称
+     */
+    private static final String FLUSH_THREAD_NAME = "CTStateTransitionWriter";
+    /**
+     * 刷盘线程空闲时检查是否需要退出的间隔 单位毫秒
+     */
+    private static final long IDLE_POLL_MILLIS = 100L;
+    /**
+     * 停机时等待缓冲区刷盘的最长时间 单位秒
+     */
+    private static final long SHUTDOWN_WAIT_SECONDS = 10L;
+
+    /**
+     * 任务存储的mapper组件
+     */
+    @Autowired
+    private TaskStoreMapper taskStoreMapper;
+    /**
+     * 一致性框架配置
+     */
+    @Autowired
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
+    /**
+     * 一次刷盘的多条语句放在同一个事务里提交
+     */
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 状态变更缓冲区
+     */
+    private BlockingQueue<StateTransition> transitionBuffer;
+    /**
+     * 刷盘线程
+     */
+    private Thread flushThread;
+    /**
+     * 刷盘线程是否在运行
+     */
+    private volatile boolean running = false;
+
+    /**
+     * 开启了异步批量写入时 启动刷盘线程
+     */
+    @PostConstruct
+    public void start() {
+        if (!tendConsistencyConfiguration.getStateWriteBehindEnabled()) {
+            return;
+        }
+        transitionBuffer = new ArrayBlockingQueue<>(tendConsistencyConfiguration.getStateBufferCapacity());
+        running = true;
+        flushThread = new Thread(this::runFlushLoop, FLUSH_THREAD_NAME);
+        flushThread.setDaemon(true);
+        flushThread.start();
+        log.info("[一致性任务框架] 任务状态异步批量写入已开启 bufferCapacity={} flushBatchSize={} flushIntervalMillis={}",
+                tendConsistencyConfiguration.getStateBufferCapacity(), tendConsistencyConfiguration.getStateFlushBatchSize(),
+                tendConsistencyConfiguration.getStateFlushIntervalMillis());
+    }
+
+    /**
+     * 停机时把缓冲区中的状态变更全部刷盘
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        flushThread.join(TimeUnit.SECONDS.toMillis(SHUTDOWN_WAIT_SECONDS));
+    }
+
+    /**
+     * 是否开启了异步批量写入
+     *
+     * @return 是否开启
+     */
+    public boolean isEnabled() {
+        return running;
+    }
+
+    /**
+     * 标记任务成功
+     *
+     * @param taskInstance 任务实例信息
+     * @return 标记结果
+     */
+    public int markSuccess(ConsistencyTaskInstance taskInstance) {
+        return append(new StateTransition(TransitionType.SUCCESS, snapshot(taskInstance)));
+    }
+
+    /**
+     * 标记任务为失败
+     *
+     * @param taskInstance 任务实例信息
+     * @return 标记结果
+     */
+    public int markFail(ConsistencyTaskInstance taskInstance) {
+        return append(new StateTransition(TransitionType.FAIL, snapshot(taskInstance)));
+    }
+
+    /**
+     * 标记为降级失败
+     *
+     * @param taskInstance 任务实例信息
+     * @return 标记结果
+     */
+    public int markFallbackFail(ConsistencyTaskInstance taskInstance) {
+        return append(new StateTransition(TransitionType.FALLBACK_FAIL, snapshot(taskInstance)));
+    }
+
+    /**
+     * 放入缓冲区 缓冲区满了就阻塞等待刷盘线程腾出空间
+     * 这里不能由当前线程直接同步写入，否则会越过缓冲区中同一任务更早的状态变更，旧的状态变更之后再刷盘时会覆盖新的状态
+     * 刷盘线程已经停止时，缓冲区中的状态变更不会再被写入，等刷盘线程退出后由当前线程同步写入
+     *
+     * @param transition 状态变更
+     * @return 标记结果
+     */
+    private int append(StateTransition transition) {
+        boolean interrupted = false;
+        boolean warned = false;
+        try {
+            while (running) {
+                try {
+                    if (transitionBuffer.offer(transition, IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                        if (running || !transitionBuffer.remove(transition)) {
+                            return 1;
+                        }
+                        // 放入缓冲区的同时刷盘线程开始停止，取回成功说明它不会再写入这条状态变更
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    // 状态变更不能丢弃 记下中断标记后继续等待
+                    interrupted = true;
+                    continue;
+                }
+                if (!warned) {
+                    log.warn("[一致性任务框架] 任务状态缓冲区已满，等待刷盘 id={}", transition.taskInstance.getId());
+                    warned = true;
+                }
+            }
+            // 等刷盘线程把缓冲区中更早的状态变更写完 再同步写入
+            while (flushThread != null && flushThread.isAlive()) {
+                try {
+                    flushThread.join(TimeUnit.SECONDS.toMillis(SHUTDOWN_WAIT_SECONDS));
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            return writeOne(transition);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 刷盘主循环 缓冲的状态变更达到批次大小 或者第一条状态变更已经等待了刷盘间隔 就刷一次盘
+     */
+    private void runFlushLoop() {
+        int flushBatchSize = tendConsistencyConfiguration.getStateFlushBatchSize();
+        long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(tendConsistencyConfiguration.getStateFlushIntervalMillis());
+        List<StateTransition> batch = new ArrayList<>(flushBatchSize);
+        while (running || !transitionBuffer.isEmpty()) {
+            try {
+                StateTransition first = transitionBuffer.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < flushBatchSize) {
+                    long remainingNanos = deadline - System.nanoTime();
+                    if (remainingNanos <= 0) {
+                        break;
+                    }
+                    StateTransition next = transitionBuffer.poll(remainingNanos, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                transitionBuffer.drainTo(batch, flushBatchSize - batch.size());
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("[一致性任务框架] 任务状态刷盘时，发生异常", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 把一个批次的状态变更刷盘
+     * 先写失败和降级失败，最后删除成功的任务，这样同一个批次里先失败、后降级成功的任务最终会被删除
+     *
+     * @param batch 状态变更批次
+     */
+    private void flush(List<StateTransition> batch) {
+        List<ConsistencyTaskInstance> successList = new ArrayList<>();
+        List<ConsistencyTaskInstance> failList = new ArrayList<>();
+        List<ConsistencyTaskInstance> fallbackFailList = new ArrayList<>();
+        for (StateTransition transition : batch) {
+            switch (transition.type) {
+                case SUCCESS:
+                    successList.add(transition.taskInstance);
+                    break;
+                case FAIL:
+                    failList.add(transition.taskInstance);
+                    break;
+                default:
+                    fallbackFailList.add(transition.taskInstance);
+                    break;
+            }
+        }
+        // 租约模式下只写入租约仍然属于当前节点的任务
+        String leaseOwner = getLeaseOwner();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!failList.isEmpty()) {
+                    taskStoreMapper.batchMarkFail(failList, leaseOwner);
+                }
+                if (!fallbackFailList.isEmpty()) {
+                    taskStoreMapper.batchMarkFallbackFail(fallbackFailList, leaseOwner);
+                }
+                if (!successList.isEmpty()) {
+                    taskStoreMapper.batchMarkSuccess(successList, leaseOwner);
+                }
+            });
+        } catch (Exception e) {
+            // 批量写入失败的时候逐条重试，避免一条异常数据拖累整个批次
+            log.error("[一致性任务框架] 批量写入{}条任务状态时，发生异常，改为逐条写入", batch.size(), e);
+            for (StateTransition transition : batch) {
+                try {
+                    writeOne(transition);
+                } catch (Exception ex) {
+                    log.error("[一致性任务框架] 写入任务状态时，发生异常 id={} type={}", transition.taskInstance.getId(), transition.type, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * 同步写入一条状态变更
+     *
+     * @param transition 状态变更
+     * @return 标记结果
+     */
+    private int writeOne(StateTransition transition) {
+        String leaseOwner = getLeaseOwner();
+        if (leaseOwner != null) {
+            switch (transition.type) {
+                case SUCCESS:
+                    return taskStoreMapper.markSuccessWithLease(transition.taskInstance, leaseOwner);
+                case FAIL:
+                    return taskStoreMapper.markFailWithLease(transition.taskInstance, leaseOwner);
+                default:
+                    return taskStoreMapper.markFallbackFailWithLease(transition.taskInstance, leaseOwner);
+            }
+        }
+        switch (transition.type) {
+            case SUCCESS:
+                return taskStoreMapper.markSuccess(transition.taskInstance);
+            case FAIL:
+                return taskStoreMapper.markFail(transition.taskInstance);
+            default:
+                return taskStoreMapper.markFallbackFail(transition.taskInstance);
+        }
+    }
+
+    /**
+     * 获取写入时校验的租约持有者
+     *
+     * @return 租约模式下为当前节点标识 非租约模式下为null
+     */
+    private String getLeaseOwner() {
+        return tendConsistencyConfiguration.getLeaseEnabled() ? tendConsistencyConfiguration.getNodeId() : null;
+    }
+
+    /**
+     * 复制出写入需要的字段 执行线程之后对任务实例的修改不会影响还没有刷盘的状态变更
+     * 执行次数是租约模式下写入时的校验条件，必须是本次启动时的执行次数
+     *
+     * @param taskInstance 任务实例信息
+     * @return 任务实例快照
+     */
+    private ConsistencyTaskInstance snapshot(ConsistencyTaskInstance taskInstance) {
+        return ConsistencyTaskInstance.builder()
+                .id(taskInstance.getId())
+                .shardKey(taskInstance.getShardKey())
+                .executeTimes(taskInstance.getExecuteTimes())
+                .errorMsg(taskInstance.getErrorMsg())
+                .executeTime(taskInstance.getExecuteTime())
+                .fallbackErrorMsg(taskInstance.getFallbackErrorMsg())
+                .build();
+    }
+
+    /**
+     * 状态变更类型
+     */
+    private enum TransitionType {
+        SUCCESS,
+        FAIL,
+        FALLBACK_FAIL
+    }
+
+    /**
+     * 一条状态变更
+     */
+    private static class StateTransition {
+
+        private final TransitionType type;
+
+        private final ConsistencyTaskInstance taskInstance;
+
+        StateTransition(TransitionType type, ConsistencyTaskInstance taskInstance) {
+            this.type = type;
+            this.taskInstance = taskInstance;
+        }
+    }
+
+}
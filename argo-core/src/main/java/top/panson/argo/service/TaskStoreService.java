@@ -2,6 +2,7 @@ package top.panson.argo.service;
 
 
 import top.panson.argo.model.ConsistencyTaskInstance;
+import top.panson.argo.model.TaskScanCursor;
 
 import java.util.List;
 
@@ -35,7 +36,99 @@ public interface TaskStoreService {
     List<ConsistencyTaskInstance> listByUnFinishTask();
 
     /**
-     * 启动任务
+     * 获取未完成的任务 最多查询指定的条数
+     *
+     * @param limitTaskCount 最多查询的条数
+     * @return 未完成任务的结果集
+     */
+    List<ConsistencyTaskInstance> listByUnFinishTask(long limitTaskCount);
+
+    /**
+     * 分库并行扫描时 获取指定物理库中未完成的任务
+     *
+     * @param shardName      物理库的名称
+     * @param limitTaskCount 这个物理库最多查询的条数
+     * @return 未完成任务的结果集
+     */
+    List<ConsistencyTaskInstance> listByUnFinishTask(String shardName, long limitTaskCount);
+
+    /**
+     * 分库并行扫描时 按物理库数量平分本次调度的查询条数 得到每个物理库最多查询出多少个未完成的任务
+     *
+     * @param limitTaskCount 本次调度最多查询的条数
+     * @return 未完成的任务数量
+     */
+    long getShardUnFinishTaskLimit(long limitTaskCount);
+
+    /**
+     * 每次最多查询出多少个未完成的任务
+     *
+     * @return 未完成的任务数量
+     */
+    long getUnFinishTaskLimit();
+
+    /**
+     * 获取最早的尚未到期的未完成任务的执行时间
+     *
+     * @return 执行时间 没有尚未到期的任务时返回null
+     */
+    Long getEarliestFutureExecuteTime();
+
+    /**
+     * 精简字段扫描出来的任务在启动成功后 补全任务参数等字段
+     *
+     * @param taskInstance 任务实例信息
+     * @return 任务是否还存在
+     */
+    boolean loadTaskPayload(ConsistencyTaskInstance taskInstance);
+
+    /**
+     * 抢占一批到期的未完成任务 多节点部署时各节点抢占到的任务互不重叠
+     *
+     * @return 抢占到的任务
+     */
+    List<ConsistencyTaskInstance> claimUnFinishTask();
+
+    /**
+     * 抢占一批到期的未完成任务 最多抢占指定的条数
+     *
+     * @param limitTaskCount 最多抢占的条数
+     * @return 抢占到的任务
+     */
+    List<ConsistencyTaskInstance> claimUnFinishTask(long limitTaskCount);
+
+    /**
+     * 开始一次未完成任务的分页扫描
+     *
+     * @return 分页扫描游标
+     */
+    TaskScanCursor openUnFinishTaskScan();
+
+    /**
+     * 查询游标之后的下一页未完成任务 并移动游标
+     *
+     * @param cursor 分页扫描游标
+     * @return 一页未完成的任务
+     */
+    List<ConsistencyTaskInstance> nextUnFinishTaskPage(TaskScanCursor cursor);
+
+    /**
+     * 开始一轮全表冷扫描 扫描执行时间早于查询时间范围的未完成任务
+     *
+     * @return 分页扫描游标
+     */
+    TaskScanCursor openColdSweepScan();
+
+    /**
+     * 在冷扫描的时间范围内抢占一页未完成的任务 抢占到的任务不会再出现在下一次抢占中 不足一页时本轮冷扫描结束
+     *
+     * @param cursor 分页扫描游标
+     * @return 抢占到的任务
+     */
+    List<ConsistencyTaskInstance> claimColdUnFinishTask(TaskScanCursor cursor);
+
+    /**
+     * 启动任务 启动成功时会同步更新任务实例中的执行状态、执行时间和执行次数
      *
      * @param consistencyTaskInstance 任务实例信息
      * @return 启动任务的结果
@@ -1,29 +1,42 @@
 package top.panson.argo.service;
 
 import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.session.SqlSession;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.support.TransactionSynchronizationAdapter;
 import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.StringUtils;
 import top.panson.argo.config.TendConsistencyConfiguration;
 import top.panson.argo.custom.query.TaskTimeRangeQuery;
 import top.panson.argo.enums.ConsistencyTaskStatusEnum;
 import top.panson.argo.enums.PerformanceEnum;
+import top.panson.argo.enums.TaskClaimStrategyEnum;
 import top.panson.argo.enums.ThreadWayEnum;
 import top.panson.argo.exceptions.ConsistencyException;
 import top.panson.argo.manager.TaskEngineExecutor;
+import top.panson.argo.manager.TaskPartitionManager;
+import top.panson.argo.manager.TaskShardScanner;
+import top.panson.argo.manager.TaskSubmissionController;
+import top.panson.argo.manager.TaskTimingWheel;
 import top.panson.argo.mapper.TaskStoreMapper;
 import top.panson.argo.model.ConsistencyTaskInstance;
+import top.panson.argo.model.TaskPartition;
+import top.panson.argo.model.TaskScanCursor;
 import top.panson.argo.utils.ReflectTools;
 import top.panson.argo.utils.SpringUtil;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletionService;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 任务存储的service实现类
@@ -33,16 +46,41 @@ import java.util.concurrent.CompletionService;
 @Service
 public class TaskStoreServiceImpl implements TaskStoreService {
 
+    /**
+     * 框架默认的任务查询时间范围
+     */
+    private static final TaskTimeRangeQuery DEFAULT_TASK_TIME_RANGE_QUERY = new TaskTimeRangeQuery() {
+        @Override
+        public Date getStartTime() {
+            return TaskTimeRangeQuery.getStartTimeByStatic();
+        }
+
+        @Override
+        public Date getEndTime() {
+            return TaskTimeRangeQuery.getEndTimeByStatic();
+        }
+
+        @Override
+        public Long limitTaskCount() {
+            return TaskTimeRangeQuery.limitTaskCountByStatic();
+        }
+    };
+
+    /**
+     * 当前节点最近一次抢占任务的租约到期时间
+     */
+    private final AtomicLong lastLeaseExpireTime = new AtomicLong(0L);
+
     /**
      * 任务存储的mapper组件
      */
     @Autowired
     private TaskStoreMapper taskStoreMapper;
     /**
-     * 任务执行线程池
+     * 任务提交的准入控制器
      */
     @Autowired
-    private CompletionService<ConsistencyTaskInstance> consistencyTaskPool;
+    private TaskSubmissionController taskSubmissionController;
     /**
      * 一致性框架配置
      */
@@ -55,6 +93,36 @@ public class TaskStoreServiceImpl implements TaskStoreService {
      */
     @Autowired
     private TaskEngineExecutor taskEngineExecutor;
+    /**
+     * 任务写入的组提交器
+     */
+    @Autowired
+    private TaskInsertGroupCommitter taskInsertGroupCommitter;
+    /**
+     * 任务状态变更的异步批量写入器
+     */
+    @Autowired
+    private TaskStateTransitionWriter taskStateTransitionWriter;
+    /**
+     * 事务模板
+     */
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    /**
+     * 任务定时触发器
+     */
+    @Autowired
+    private TaskTimingWheel taskTimingWheel;
+    /**
+     * 任务分区管理器
+     */
+    @Autowired
+    private TaskPartitionManager taskPartitionManager;
+    /**
+     * 分库并行扫描器
+     */
+    @Autowired
+    private TaskShardScanner taskShardScanner;
 
     /**
      * 初始化最终一致性任务实例到数据库
@@ -63,9 +131,14 @@ public class TaskStoreServiceImpl implements TaskStoreService {
      */
     @Override
     public void initTask(ConsistencyTaskInstance taskInstance) {
-        // 直接基于mybatis的mapper，把我们的任务实例的数据，给持久化到数据库里去
-        Long result = taskStoreMapper.initTask(taskInstance); // 这个是第一个数据库操作的故障点
-        log.info("[一致性任务框架] 初始化任务结果为 [{}]", result > 0);
+        if (taskInsertGroupCommitter.isAvailable()) {
+            // 组提交模式，和其他线程的任务合并为一条多行INSERT，返回时任务已经落库
+            taskInsertGroupCommitter.insert(taskInstance);
+        } else {
+            // 直接基于mybatis的mapper，把我们的任务实例的数据，给持久化到数据库里去
+            Long result = taskStoreMapper.initTask(taskInstance); // 这个是第一个数据库操作的故障点
+            log.info("[一致性任务框架] 初始化任务结果为 [{}]", result > 0);
+        }
 
         // 如果说任务实例数据落库失败了的话，不要直接报错，而是说把这个任务数据写入磁盘文件里去，做一个标记
         // 就直接返回了就可以了
@@ -73,6 +146,8 @@ public class TaskStoreServiceImpl implements TaskStoreService {
 
         // 如果执行模式不是立即执行的任务
         if (!PerformanceEnum.PERFORMANCE_RIGHT_NOW.getCode().equals(taskInstance.getPerformanceWay())) {
+            // 开启了时间轮时，调度型任务在execute_time准时触发，不用等下一次定时调度
+            scheduleAfterCommit(taskInstance);
             return;
         }
 
@@ -95,6 +170,26 @@ public class TaskStoreServiceImpl implements TaskStoreService {
         }
     }
 
+    /**
+     * 任务落库（业务事务提交）后放入时间轮
+     *
+     * @param taskInstance 任务实例
+     */
+    private void scheduleAfterCommit(ConsistencyTaskInstance taskInstance) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            taskTimingWheel.schedule(taskInstance);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(
+                new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCommit() {
+                        taskTimingWheel.schedule(taskInstance);
+                    }
+                }
+        );
+    }
+
     /**
      * 根据id获取任务实例信息
      *
@@ -114,28 +209,315 @@ public class TaskStoreServiceImpl implements TaskStoreService {
      */
     @Override
     public List<ConsistencyTaskInstance> listByUnFinishTask() {
-        Date startTime, endTime;
-        Long limitTaskCount;
+        return listByUnFinishTask(getUnFinishTaskLimit());
+    }
+
+    /**
+     * 获取未完成的任务 最多查询指定的条数
+     *
+     * @param limitTaskCount 最多查询的条数
+     * @return 未完成任务的结果集
+     */
+    @Override
+    public List<ConsistencyTaskInstance> listByUnFinishTask(long limitTaskCount) {
+        TaskTimeRangeQuery taskTimeRangeQuery = getTaskTimeRangeQuery();
+        TaskPartition partition = taskPartitionManager.getCurrentPartition();
+        if (taskPartitionManager.isEnabled() && partition == null) {
+            // 还没有分配到分区
+            return Collections.emptyList();
+        }
+        if (tendConsistencyConfiguration.getLeanScanEnabled()) {
+            return listLeanByUnFinishTask(taskTimeRangeQuery, limitTaskCount, partition);
+        }
+        if (partition != null) {
+            return taskStoreMapper.listByUnFinishTaskInPartition(taskTimeRangeQuery.getStartTime().getTime(),
+                    taskTimeRangeQuery.getEndTime().getTime(), limitTaskCount, partition);
+        }
+        return taskStoreMapper.listByUnFinishTask(taskTimeRangeQuery.getStartTime().getTime(),
+                taskTimeRangeQuery.getEndTime().getTime(), limitTaskCount);
+    }
+
+    /**
+     * 分库并行扫描时 获取指定物理库中未完成的任务 直接查询物理库，不经过ShardingSphere的归并
+     *
+     * @param shardName      物理库的名称
+     * @param limitTaskCount 这个物理库最多查询的条数
+     * @return 未完成任务的结果集
+     */
+    @Override
+    public List<ConsistencyTaskInstance> listByUnFinishTask(String shardName, long limitTaskCount) {
+        TaskTimeRangeQuery taskTimeRangeQuery = getTaskTimeRangeQuery();
+        TaskPartition partition = taskPartitionManager.getCurrentPartition();
+        if (taskPartitionManager.isEnabled() && partition == null) {
+            return Collections.emptyList();
+        }
+        long startTime = taskTimeRangeQuery.getStartTime().getTime();
+        long endTime = taskTimeRangeQuery.getEndTime().getTime();
+        try (SqlSession sqlSession = taskShardScanner.openSession(shardName)) {
+            TaskStoreMapper shardTaskStoreMapper = sqlSession.getMapper(TaskStoreMapper.class);
+            if (tendConsistencyConfiguration.getLeanScanEnabled()) {
+                return readCursor(shardTaskStoreMapper.scanLeanUnFinishTask(startTime, endTime, limitTaskCount, partition));
+            }
+            if (partition != null) {
+                return shardTaskStoreMapper.listByUnFinishTaskInPartition(startTime, endTime, limitTaskCount, partition);
+            }
+            return shardTaskStoreMapper.listByUnFinishTask(startTime, endTime, limitTaskCount);
+        }
+    }
+
+    /**
+     * 分库并行扫描时 每个物理库每次最多查询出多少个未完成的任务 按物理库数量平分本次调度的查询条数
+     *
+     * @param limitTaskCount 本次调度最多查询的条数
+     * @return 未完成的任务数量
+     */
+    @Override
+    public long getShardUnFinishTaskLimit(long limitTaskCount) {
+        int shardCount = Math.max(taskShardScanner.getShardNames().size(), 1);
+        return Math.max((limitTaskCount + shardCount - 1) / shardCount, 1L);
+    }
+
+    /**
+     * 每次最多查询出多少个未完成的任务
+     *
+     * @return 未完成的任务数量
+     */
+    @Override
+    public long getUnFinishTaskLimit() {
+        return getTaskTimeRangeQuery().limitTaskCount();
+    }
+
+    /**
+     * 获取最早的尚未到期的未完成任务的执行时间
+     *
+     * @return 执行时间 没有尚未到期的任务时返回null
+     */
+    @Override
+    public Long getEarliestFutureExecuteTime() {
+        return taskStoreMapper.getEarliestFutureExecuteTime(System.currentTimeMillis());
+    }
+
+    /**
+     * 以流式游标的方式获取未完成的任务 只查询精简字段 游标需要在事务中遍历
+     *
+     * @param taskTimeRangeQuery 任务查询的时间范围
+     * @param limitTaskCount     最多查询的条数
+     * @param partition          当前节点负责的分区 为null时扫描全部任务
+     * @return 只包含精简字段的未完成任务
+     */
+    private List<ConsistencyTaskInstance> listLeanByUnFinishTask(TaskTimeRangeQuery taskTimeRangeQuery, long limitTaskCount, TaskPartition partition) {
+        return transactionTemplate.execute(status -> readCursor(taskStoreMapper.scanLeanUnFinishTask(taskTimeRangeQuery.getStartTime().getTime(),
+                taskTimeRangeQuery.getEndTime().getTime(), limitTaskCount, partition)));
+    }
+
+    /**
+     * 遍历流式游标中的全部任务 遍历完关闭游标
+     *
+     * @param cursor 流式游标
+     * @return 游标中的全部任务
+     */
+    private List<ConsistencyTaskInstance> readCursor(Cursor<ConsistencyTaskInstance> cursor) {
+        List<ConsistencyTaskInstance> taskInstances = new ArrayList<>();
+        try (Cursor<ConsistencyTaskInstance> taskCursor = cursor) {
+            for (ConsistencyTaskInstance taskInstance : taskCursor) {
+                taskInstances.add(taskInstance);
+            }
+        } catch (IOException e) {
+            throw new ConsistencyException(e);
+        }
+        return taskInstances;
+    }
+
+    /**
+     * 精简字段扫描出来的任务在启动成功后 按id查询并补全任务参数等字段
+     *
+     * @param taskInstance 任务实例信息
+     * @return 任务是否还存在
+     */
+    @Override
+    public boolean loadTaskPayload(ConsistencyTaskInstance taskInstance) {
+        // 方法签名不为空说明查询的是全部字段，不需要再补全
+        if (!StringUtils.isEmpty(taskInstance.getMethodSignName())) {
+            return true;
+        }
+        ConsistencyTaskInstance storedTask = taskStoreMapper.getTaskByIdAndShardKey(taskInstance.getId(), taskInstance.getShardKey());
+        if (storedTask == null) {
+            return false;
+        }
+        taskInstance.setTaskId(storedTask.getTaskId());
+        taskInstance.setMethodSignName(storedTask.getMethodSignName());
+        taskInstance.setMethodName(storedTask.getMethodName());
+        taskInstance.setParameterTypes(storedTask.getParameterTypes());
+        taskInstance.setTaskParameter(storedTask.getTaskParameter());
+        taskInstance.setExecuteIntervalSec(storedTask.getExecuteIntervalSec());
+        taskInstance.setDelayTime(storedTask.getDelayTime());
+        taskInstance.setPerformanceWay(storedTask.getPerformanceWay());
+        taskInstance.setThreadWay(storedTask.getThreadWay());
+        taskInstance.setErrorMsg(storedTask.getErrorMsg());
+        taskInstance.setAlertExpression(storedTask.getAlertExpression());
+        taskInstance.setAlertActionBeanName(storedTask.getAlertActionBeanName());
+        taskInstance.setFallbackClassName(storedTask.getFallbackClassName());
+        taskInstance.setFallbackErrorMsg(storedTask.getFallbackErrorMsg());
+        taskInstance.setGmtCreate(storedTask.getGmtCreate());
+        taskInstance.setGmtModified(storedTask.getGmtModified());
+        return true;
+    }
+
+    /**
+     * 抢占一批到期的未完成任务 抢占到的任务会带上当前节点的租约 租约到期前其他节点不会再抢占
+     *
+     * @return 抢占到的任务
+     */
+    @Override
+    public List<ConsistencyTaskInstance> claimUnFinishTask() {
+        return claimUnFinishTask(getUnFinishTaskLimit());
+    }
+
+    /**
+     * 抢占一批到期的未完成任务 最多抢占指定的条数
+     *
+     * @param limitTaskCount 最多抢占的条数
+     * @return 抢占到的任务
+     */
+    @Override
+    public List<ConsistencyTaskInstance> claimUnFinishTask(long limitTaskCount) {
+        TaskTimeRangeQuery taskTimeRangeQuery = getTaskTimeRangeQuery();
+        return claimUnFinishTask(taskTimeRangeQuery.getStartTime().getTime(), taskTimeRangeQuery.getEndTime().getTime(), limitTaskCount);
+    }
+
+    /**
+     * 在指定的执行时间范围内抢占一批到期的未完成任务
+     *
+     * @param startTime      开始时间
+     * @param endTime        结束时间
+     * @param limitTaskCount 最多抢占的条数
+     * @return 抢占到的任务
+     */
+    private List<ConsistencyTaskInstance> claimUnFinishTask(long startTime, long endTime, Long limitTaskCount) {
+        long now = System.currentTimeMillis();
+        String leaseOwner = tendConsistencyConfiguration.getNodeId();
+        long leaseExpireTime = nextLeaseExpireTime(now);
+
+        if (TaskClaimStrategyEnum.SKIP_LOCKED.name().equals(tendConsistencyConfiguration.getClaimStrategy())) {
+            // 锁定和写入租约在同一个短事务里，被其他节点锁住的行直接跳过，不会互相等待
+            return transactionTemplate.execute(status -> {
+                List<ConsistencyTaskInstance> lockedTasks = taskStoreMapper.lockForClaimSkipLocked(leaseOwner, startTime, endTime, now, limitTaskCount);
+                if (!lockedTasks.isEmpty()) {
+                    taskStoreMapper.batchUpdateLease(lockedTasks, leaseOwner, leaseExpireTime);
+                }
+                return lockedTasks;
+            });
+        }
+
+        // 条件更新本身是原子的，租约到期时间作为本次抢占的批次标识，再按租约查询出抢占到的任务
+        int claimedCount = taskStoreMapper.claimByConditionalUpdate(leaseOwner, leaseExpireTime, startTime, endTime, now, limitTaskCount);
+        if (claimedCount <= 0) {
+            return Collections.emptyList();
+        }
+        return taskStoreMapper.listByLease(leaseOwner, leaseExpireTime);
+    }
+
+    /**
+     * 开始一次未完成任务的分页扫描 查询的时间范围和每页条数在本次扫描过程中固定不变
+     *
+     * @return 分页扫描游标
+     */
+    @Override
+    public TaskScanCursor openUnFinishTaskScan() {
+        TaskTimeRangeQuery taskTimeRangeQuery = getTaskTimeRangeQuery();
+        TaskScanCursor cursor = TaskScanCursor.builder()
+                .startTime(taskTimeRangeQuery.getStartTime().getTime())
+                .endTime(taskTimeRangeQuery.getEndTime().getTime())
+                .pageSize(taskTimeRangeQuery.limitTaskCount())
+                .lean(tendConsistencyConfiguration.getLeanScanEnabled())
+                .partition(taskPartitionManager.getCurrentPartition())
+                .build();
+        cursor.setFinished(taskPartitionManager.isEnabled() && cursor.getPartition() == null);
+        return cursor;
+    }
+
+    /**
+     * 查询游标之后的下一页未完成任务 并移动游标
+     *
+     * @param cursor 分页扫描游标
+     * @return 一页未完成的任务
+     */
+    @Override
+    public List<ConsistencyTaskInstance> nextUnFinishTaskPage(TaskScanCursor cursor) {
+        if (cursor.isFinished()) {
+            return Collections.emptyList();
+        }
+        List<ConsistencyTaskInstance> page = taskStoreMapper.listByUnFinishTaskAfter(cursor);
+        cursor.advance(page);
+        return page;
+    }
+
+    /**
+     * 开始一轮全表冷扫描 范围是查询时间范围的开始时间之前的全部任务
+     *
+     * @return 分页扫描游标
+     */
+    @Override
+    public TaskScanCursor openColdSweepScan() {
+        long hotStartTime = getTaskTimeRangeQuery().getStartTime().getTime();
+        TaskScanCursor cursor = TaskScanCursor.builder()
+                .startTime(0L)
+                .endTime(hotStartTime - 1)
+                .pageSize(tendConsistencyConfiguration.getColdSweepPageSize().longValue())
+                .lean(tendConsistencyConfiguration.getLeanScanEnabled())
+                .partition(taskPartitionManager.getCurrentPartition())
+                .build();
+        cursor.setFinished(taskPartitionManager.isEnabled() && cursor.getPartition() == null);
+        return cursor;
+    }
+
+    /**
+     * 在冷扫描的时间范围内抢占一页未完成的任务
+     *
+     * @param cursor 分页扫描游标
+     * @return 抢占到的任务
+     */
+    @Override
+    public List<ConsistencyTaskInstance> claimColdUnFinishTask(TaskScanCursor cursor) {
+        if (cursor.isFinished()) {
+            return Collections.emptyList();
+        }
+        List<ConsistencyTaskInstance> claimedTasks = claimUnFinishTask(cursor.getStartTime(), cursor.getEndTime(), cursor.getPageSize());
+        if (claimedTasks.size() < cursor.getPageSize()) {
+            cursor.setFinished(true);
+        }
+        return claimedTasks;
+    }
+
+    /**
+     * 计算本次抢占的租约到期时间 同一个节点的每次抢占严格递增 保证可以作为批次标识
+     *
+     * @param now 当前时间
+     * @return 租约到期时间
+     */
+    private long nextLeaseExpireTime(long now) {
+        long candidate = now + tendConsistencyConfiguration.getLeaseDurationMillis();
+        return lastLeaseExpireTime.updateAndGet(last -> Math.max(last + 1, candidate));
+    }
+
+    /**
+     * 获取任务查询的时间范围 业务服务没有实现TaskTimeRangeQuery时使用框架默认的实现
+     *
+     * @return 任务查询的时间范围
+     */
+    private TaskTimeRangeQuery getTaskTimeRangeQuery() {
         try {
             // 获取TaskTimeLineQuery实现类
             if (!StringUtils.isEmpty(tendConsistencyConfiguration.getTaskScheduleTimeRangeClassName())) {
                 // 获取Spring容器中所有对于TaskTimeRangeQuery接口的实现类
                 Map<String, TaskTimeRangeQuery> beansOfTypeMap = SpringUtil.getBeansOfType(TaskTimeRangeQuery.class);
-                TaskTimeRangeQuery taskTimeRangeQuery = getTaskTimeLineQuery(beansOfTypeMap);
-                startTime = taskTimeRangeQuery.getStartTime();
-                endTime = taskTimeRangeQuery.getEndTime();
-                limitTaskCount = taskTimeRangeQuery.limitTaskCount();
-                return taskStoreMapper.listByUnFinishTask(startTime.getTime(), endTime.getTime(), limitTaskCount);
-            } else {
-                startTime = TaskTimeRangeQuery.getStartTimeByStatic();
-                endTime = TaskTimeRangeQuery.getEndTimeByStatic();
-                limitTaskCount = TaskTimeRangeQuery.limitTaskCountByStatic();
+                return getTaskTimeLineQuery(beansOfTypeMap);
             }
+            return DEFAULT_TASK_TIME_RANGE_QUERY;
         } catch (Exception e) {
-            log.error("[一致性任务框架] 调用业务服务实现具体的告警通知类时，发生异常", e);
+            log.error("[一致性任务框架] 获取任务查询的时间范围时，发生异常", e);
             throw new ConsistencyException(e);
         }
-        return taskStoreMapper.listByUnFinishTask(startTime.getTime(), endTime.getTime(), limitTaskCount);
     }
 
     /**
@@ -166,7 +548,20 @@ public class TaskStoreServiceImpl implements TaskStoreService {
     public int turnOnTask(ConsistencyTaskInstance consistencyTaskInstance) {
         consistencyTaskInstance.setExecuteTime(System.currentTimeMillis()); // 这个是本次任务实际运行的时间，去做了一个重置
         consistencyTaskInstance.setTaskStatus(ConsistencyTaskStatusEnum.START.getCode());
-        return taskStoreMapper.turnOnTask(consistencyTaskInstance);
+        int result;
+        if (tendConsistencyConfiguration.getLeaseEnabled()) {
+            // 租约模式下启动的同时写入执行租约，执行期间由当前节点定时续约
+            long now = consistencyTaskInstance.getExecuteTime();
+            result = taskStoreMapper.turnOnTaskWithLease(consistencyTaskInstance, tendConsistencyConfiguration.getNodeId(),
+                    now + tendConsistencyConfiguration.getLeaseDurationMillis(), now);
+        } else {
+            result = taskStoreMapper.turnOnTask(consistencyTaskInstance);
+        }
+        if (result > 0) {
+            // 条件更新成功，数据库里的执行次数就是内存里的执行次数+1，直接同步到内存，不再回查数据库
+            consistencyTaskInstance.setExecuteTimes(consistencyTaskInstance.getExecuteTimes() + 1);
+        }
+        return result;
     }
 
     /**
@@ -175,11 +570,17 @@ public class TaskStoreServiceImpl implements TaskStoreService {
      * @param consistencyTaskInstance 任务实例信息
      * @return 标记结果
      */
-    @Transactional(rollbackFor = Exception.class)
     @Override
     public int markSuccess(ConsistencyTaskInstance consistencyTaskInstance) {
+        // 单条语句不需要额外开启事务，开启了异步批量写入时只是放入缓冲区
+        if (taskStateTransitionWriter.isEnabled()) {
+            return taskStateTransitionWriter.markSuccess(consistencyTaskInstance);
+        }
+        if (tendConsistencyConfiguration.getLeaseEnabled()) {
+            // 租约模式下只删除租约仍然属于当前节点的任务，租约过期后已被回收或者重新启动的任务不能再删除
+            return taskStoreMapper.markSuccessWithLease(consistencyTaskInstance, tendConsistencyConfiguration.getNodeId());
+        }
         return taskStoreMapper.markSuccess(consistencyTaskInstance);
-//        return 1;
     }
 
     /**
@@ -188,11 +589,15 @@ public class TaskStoreServiceImpl implements TaskStoreService {
      * @param consistencyTaskInstance 一致性任务信息
      * @return 标记结果
      */
-    @Transactional(rollbackFor = Exception.class)
     @Override
     public int markFail(ConsistencyTaskInstance consistencyTaskInstance) {
+        if (taskStateTransitionWriter.isEnabled()) {
+            return taskStateTransitionWriter.markFail(consistencyTaskInstance);
+        }
+        if (tendConsistencyConfiguration.getLeaseEnabled()) {
+            return taskStoreMapper.markFailWithLease(consistencyTaskInstance, tendConsistencyConfiguration.getNodeId());
+        }
         return taskStoreMapper.markFail(consistencyTaskInstance);
-//        return 1;
     }
 
     /**
@@ -203,6 +608,12 @@ public class TaskStoreServiceImpl implements TaskStoreService {
      */
     @Override
     public int markFallbackFail(ConsistencyTaskInstance consistencyTaskInstance) {
+        if (taskStateTransitionWriter.isEnabled()) {
+            return taskStateTransitionWriter.markFallbackFail(consistencyTaskInstance);
+        }
+        if (tendConsistencyConfiguration.getLeaseEnabled()) {
+            return taskStoreMapper.markFallbackFailWithLease(consistencyTaskInstance, tendConsistencyConfiguration.getNodeId());
+        }
         return taskStoreMapper.markFallbackFail(consistencyTaskInstance);
     }
 
@@ -217,10 +628,11 @@ public class TaskStoreServiceImpl implements TaskStoreService {
             // 选择事务事务模型并执行任务
             taskEngineExecutor.executeTaskInstance(taskInstance);
         } else if (ThreadWayEnum.ASYNC.getCode().equals(taskInstance.getThreadWay())) {
-            consistencyTaskPool.submit(() -> {
-                taskEngineExecutor.executeTaskInstance(taskInstance);
-                return taskInstance;
-            });
+            // 线程池没有空闲容量时不提交，也不向业务线程抛出异常，任务已经落库，转为调度型任务：
+            // 开启了时间轮时延迟一段时间后再次提交，否则由定时调度执行，流量高峰时只是执行延迟变大
+            if (!taskSubmissionController.trySubmit(taskInstance)) {
+                taskTimingWheel.schedule(taskInstance, System.currentTimeMillis() + tendConsistencyConfiguration.getOverflowRetryDelayMillis());
+            }
         }
     }
 
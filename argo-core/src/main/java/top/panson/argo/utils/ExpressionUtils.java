@@ -1,9 +1,13 @@
 package top.panson.argo.utils;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.Expression;
 import org.springframework.expression.common.TemplateParserContext;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.util.StringUtils;
@@ -24,6 +28,24 @@ public class ExpressionUtils {
 
     public static final String RESULT_FLAG = "true";
 
+    /**
+     * 告警表达式缓存的最大数量 告警表达式来自注解，不同的表达式只有少数几个
+     */
+    private static final int ALERT_EXPRESSION_CACHE_SIZE = 256;
+
+    /**
+     * 告警表达式的解析器 开启混合编译模式，同一个表达式执行几次后编译成字节码执行
+     */
+    private static final SpelExpressionParser ALERT_EXPRESSION_PARSER = new SpelExpressionParser(
+            new SpelParserConfiguration(SpelCompilerMode.MIXED, ExpressionUtils.class.getClassLoader()));
+
+    /**
+     * 解析好的告警表达式 key为注解中配置的告警表达式
+     */
+    private static final Cache<String, Expression> ALERT_EXPRESSION_CACHE = CacheBuilder.newBuilder()
+            .maximumSize(ALERT_EXPRESSION_CACHE_SIZE)
+            .build();
+
     /**
      * 重写表达式
      *
@@ -64,6 +86,27 @@ public class ExpressionUtils {
         }
     }
 
+    /**
+     * 判断任务是否触发了告警表达式
+     * 每个不同的告警表达式只解析一次，解析结果缓存下来，执行时只需要创建一个以任务实例为根对象的上下文
+     *
+     * @param alertExpression 告警表达式 如 executeTimes > 1 && executeTimes < 5
+     * @param taskInstance    任务实例
+     * @return 是否触发告警
+     */
+    public static boolean isAlertTriggered(String alertExpression, ConsistencyTaskInstance taskInstance) {
+        try {
+            Expression expression = ALERT_EXPRESSION_CACHE.get(alertExpression, () -> ALERT_EXPRESSION_PARSER.parseExpression(
+                    StringUtils.replace(alertExpression, "executeTimes", "#taskInstance.executeTimes")));
+            StandardEvaluationContext context = new StandardEvaluationContext(taskInstance);
+            context.setVariable("taskInstance", taskInstance);
+            return Boolean.TRUE.equals(expression.getValue(context, Boolean.class));
+        } catch (Exception e) {
+            log.error("解析表达式{}时，发生异常", alertExpression, e);
+            return false;
+        }
+    }
+
     /**
      * 构造数据map
      *
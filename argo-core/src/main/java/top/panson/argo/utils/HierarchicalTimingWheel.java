@@ -0,0 +1,236 @@
+package top.panson.argo.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 分层时间轮
+ * 每一层时间轮有wheelSize个格子，每个格子的跨度是tickMillis，超出本层时间范围的元素放到上一层时间轮（跨度是本层的wheelSize倍），
+ * 上层格子到期后里面的元素会被重新放入下层时间轮，直到落入最底层的格子。只有非空的格子会进入DelayQueue，
+ * 驱动线程只会在真正有格子到期的时候被唤醒，不会每个tick空转
+ *
+ * @param <T> 时间轮中元素的类型
+ **/
+public class HierarchicalTimingWheel<T> {
+
+    /**
+     * 每个格子的时间跨度 单位毫秒
+     */
+    private final long tickMillis;
+    /**
+     * 格子的数量
+     */
+    private final int wheelSize;
+    /**
+     * 本层时间轮的时间跨度
+     */
+    private final long interval;
+    /**
+     * 本层时间轮的全部格子
+     */
+    private final Bucket<T>[] buckets;
+    /**
+     * 所有层的时间轮共用的到期格子队列
+     */
+    private final DelayQueue<Bucket<T>> bucketQueue;
+    /**
+     * 添加元素和推进时间的读写锁 所有层共用
+     */
+    private final ReentrantReadWriteLock lock;
+    /**
+     * 本层时间轮的当前时间 是tickMillis的整数倍
+     */
+    private volatile long currentTime;
+    /**
+     * 上一层时间轮 第一次需要时创建
+     */
+    private volatile HierarchicalTimingWheel<T> overflowWheel;
+
+    /**
+     * 创建最底层的时间轮
+     *
+     * @param tickMillis  每个格子的时间跨度 单位毫秒
+     * @param wheelSize   格子的数量
+     * @param startMillis 开始时间
+     */
+    public HierarchicalTimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        this(tickMillis, wheelSize, startMillis, new DelayQueue<>(), new ReentrantReadWriteLock());
+    }
+
+    @SuppressWarnings("unchecked")
+    private HierarchicalTimingWheel(long tickMillis, int wheelSize, long startMillis,
+                                    DelayQueue<Bucket<T>> bucketQueue, ReentrantReadWriteLock lock) {
+        this.tickMillis = tickMillis;
+        this.wheelSize = wheelSize;
+        this.interval = tickMillis * wheelSize;
+        this.bucketQueue = bucketQueue;
+        this.lock = lock;
+        this.currentTime = startMillis - (startMillis % tickMillis);
+        this.buckets = (Bucket<T>[]) new Bucket<?>[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            this.buckets[i] = new Bucket<>();
+        }
+    }
+
+    /**
+     * 添加元素
+     *
+     * @param item             元素
+     * @param expirationMillis 到期时间
+     * @return 是否添加成功 已经到期的元素不会添加 由调用方直接处理
+     */
+    public boolean add(T item, long expirationMillis) {
+        lock.readLock().lock();
+        try {
+            return addEntry(new Entry<>(item, expirationMillis));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 等待下一个格子到期 推进时间轮并返回所有已经到期的元素
+     *
+     * @param timeoutMillis 最长等待时间 单位毫秒
+     * @return 已经到期的元素 等待超时返回空集合
+     * @throws InterruptedException 等待时线程被中断
+     */
+    public List<T> poll(long timeoutMillis) throws InterruptedException {
+        Bucket<T> bucket = bucketQueue.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (bucket == null) {
+            return Collections.emptyList();
+        }
+        List<T> expiredItems = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            while (bucket != null) {
+                advanceClock(bucket.getExpiration());
+                // 上层格子里的元素会落入下层时间轮 落不进去的就是已经到期的
+                for (Entry<T> entry : bucket.flush()) {
+                    if (!addEntry(entry)) {
+                        expiredItems.add(entry.item);
+                    }
+                }
+                bucket = bucketQueue.poll();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return expiredItems;
+    }
+
+    /**
+     * 把元素放入本层或者上层时间轮
+     *
+     * @param entry 元素
+     * @return 是否放入成功 已经到期返回false
+     */
+    private boolean addEntry(Entry<T> entry) {
+        long expiration = entry.expirationMillis;
+        if (expiration < currentTime + tickMillis) {
+            return false;
+        }
+        if (expiration < currentTime + interval) {
+            long virtualId = expiration / tickMillis;
+            Bucket<T> bucket = buckets[(int) (virtualId % wheelSize)];
+            bucket.add(entry);
+            // 格子的到期时间变了，说明这是一个新的（或者已经被清空过的）格子，需要重新放入到期队列
+            if (bucket.setExpiration(virtualId * tickMillis)) {
+                bucketQueue.offer(bucket);
+            }
+            return true;
+        }
+        return getOverflowWheel().addEntry(entry);
+    }
+
+    /**
+     * 推进本层和上层时间轮的当前时间
+     *
+     * @param timeMillis 时间
+     */
+    private void advanceClock(long timeMillis) {
+        if (timeMillis >= currentTime + tickMillis) {
+            currentTime = timeMillis - (timeMillis % tickMillis);
+            if (overflowWheel != null) {
+                overflowWheel.advanceClock(currentTime);
+            }
+        }
+    }
+
+    /**
+     * 获取上一层时间轮
+     *
+     * @return 上一层时间轮
+     */
+    private HierarchicalTimingWheel<T> getOverflowWheel() {
+        if (overflowWheel == null) {
+            synchronized (this) {
+                if (overflowWheel == null) {
+                    overflowWheel = new HierarchicalTimingWheel<>(interval, wheelSize, currentTime, bucketQueue, lock);
+                }
+            }
+        }
+        return overflowWheel;
+    }
+
+    /**
+     * 时间轮中的一个元素
+     */
+    private static class Entry<T> {
+
+        private final T item;
+
+        private final long expirationMillis;
+
+        Entry(T item, long expirationMillis) {
+            this.item = item;
+            this.expirationMillis = expirationMillis;
+        }
+    }
+
+    /**
+     * 时间轮的一个格子
+     */
+    private static class Bucket<T> implements Delayed {
+
+        private final List<Entry<T>> entries = new ArrayList<>();
+
+        private final AtomicLong expiration = new AtomicLong(-1L);
+
+        synchronized void add(Entry<T> entry) {
+            entries.add(entry);
+        }
+
+        synchronized List<Entry<T>> flush() {
+            List<Entry<T>> flushed = new ArrayList<>(entries);
+            entries.clear();
+            expiration.set(-1L);
+            return flushed;
+        }
+
+        boolean setExpiration(long expirationMillis) {
+            return expiration.getAndSet(expirationMillis) != expirationMillis;
+        }
+
+        long getExpiration() {
+            return expiration.get();
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Math.max(getExpiration() - System.currentTimeMillis(), 0L), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getExpiration(), ((Bucket<?>) other).getExpiration());
+        }
+    }
+
+}
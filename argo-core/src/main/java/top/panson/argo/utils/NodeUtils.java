@@ -0,0 +1,34 @@
+package top.panson.argo.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * 节点信息工具类
+ *
+ */
+@Slf4j
+public class NodeUtils {
+
+    /**
+     * 获取默认的节点标识 格式：ip:进程号
+     *
+     * @return 节点标识
+     */
+    public static String getDefaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostAddress();
+        } catch (UnknownHostException e) {
+            log.warn("获取本机地址时，发生异常", e);
+            host = "unknown";
+        }
+        // RuntimeMXBean的名称格式为 进程号@主机名
+        String pid = ManagementFactory.getRuntimeMXBean().getName().split("@")[0];
+        return host + ":" + pid;
+    }
+
+}
@@ -1,5 +1,7 @@
 package top.panson.argo.utils;
 
+import cn.hutool.core.convert.Convert;
+import cn.hutool.json.JSON;
 import cn.hutool.json.JSONArray;
 import cn.hutool.json.JSONUtil;
 import lombok.extern.slf4j.Slf4j;
@@ -9,10 +11,17 @@ import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.asm.Type;
 import org.springframework.cglib.core.ClassInfo;
 import org.springframework.cglib.core.ReflectUtils;
+import org.springframework.core.ResolvableType;
 import org.springframework.util.ObjectUtils;
 
+import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
  * 反射工具类
@@ -36,6 +45,11 @@ public class ReflectTools {
         }
     };
 
+    /**
+     * 方法入参的绑定方式缓存 key为参数的声明类型列表
+     */
+    private static final Map<List<java.lang.reflect.Type>, Function<Object, Object>[]> ARG_BINDERS_CACHE = new ConcurrentHashMap<>();
+
     /**
      * 构造参数类型数组
      *
@@ -91,19 +105,65 @@ public class ReflectTools {
      * @return 方法入参数组
      */
     public static Object[] buildArgs(String parameterText, Class<?>[] parameterTypeClassArray) {
+        return buildArgs(parameterText, (java.lang.reflect.Type[]) parameterTypeClassArray);
+    }
+
+    /**
+     * 构造方法入参
+     * JSON字符串只解析一次，每个元素直接按参数的声明类型（含泛型）绑定成实例，不再转回字符串二次解析
+     *
+     * @param parameterText  方法入参JSON字符串 会解析成JSON数组
+     * @param parameterTypes 参数的声明类型
+     * @return 方法入参数组
+     */
+    public static Object[] buildArgs(String parameterText, java.lang.reflect.Type[] parameterTypes) {
         JSONArray paramJsonArray = JSONUtil.parseArray(parameterText);
+        Function<Object, Object>[] argBinders = getArgBinders(parameterTypes);
         Object[] args = new Object[paramJsonArray.size()];
+        for (int i = args.length - 1; i >= 0; i--) {
+            Object value = paramJsonArray.get(i);
+            args[i] = i < argBinders.length ? argBinders[i].apply(value) : value;
+        }
+        return args;
+    }
 
-        for (int i = paramJsonArray.size() - 1; i >= 0; i--) {
-            if (paramJsonArray.getStr(i).startsWith("{")) {
-                // 将数据转换为对应的数据类型，json字符串格式的每一个入参对象（json字符串） + 入参对象的class类型
-                // 转换为一个实例对象
-                args[i] = JSONUtil.toBean(paramJsonArray.getStr(i), parameterTypeClassArray[i]);
-            } else {
-                args[i] = paramJsonArray.get(i);
+    /**
+     * 获取各参数的绑定方式 按参数类型缓存
+     *
+     * @param parameterTypes 参数的声明类型
+     * @return 各参数的绑定方式
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Function<Object, Object>[] getArgBinders(java.lang.reflect.Type[] parameterTypes) {
+        return ARG_BINDERS_CACHE.computeIfAbsent(Arrays.asList(parameterTypes), key -> {
+            Function<Object, Object>[] argBinders = new Function[key.size()];
+            for (int i = 0; i < argBinders.length; i++) {
+                argBinders[i] = buildArgBinder(key.get(i));
             }
+            return argBinders;
+        });
+    }
+
+    /**
+     * 创建一个参数的绑定方式
+     * 声明为Object的参数保留解析出的JSON值，其他类型的对象、集合直接由JSON树绑定，基本类型和字符串等按声明类型转换
+     *
+     * @param parameterType 参数的声明类型
+     * @return 绑定方式
+     */
+    private static Function<Object, Object> buildArgBinder(java.lang.reflect.Type parameterType) {
+        if (ResolvableType.forType(parameterType).resolve(Object.class) == Object.class) {
+            return value -> JSONUtil.isNull(value) ? null : value;
         }
-        return args;
+        return value -> {
+            if (JSONUtil.isNull(value)) {
+                return null;
+            }
+            if (value instanceof JSON) {
+                return ((JSON) value).toBean(parameterType);
+            }
+            return Convert.convert(parameterType, value);
+        };
     }
 
     /**
@@ -150,6 +210,36 @@ public class ReflectTools {
         return methodSignNameJoiner.toString();
     }
 
+    /**
+     * 按方法声明的入参类型获取方法的全限定名称 格式同{@link #getTargetMethodFullyQualifiedName(JoinPoint, Class[])}
+     * 包装类型和切面中一样换成对应的基础类型
+     *
+     * @param targetClass 方法所在的类
+     * @param method      方法
+     * @return 方法的全限定名称
+     */
+    public static String getMethodSignName(Class<?> targetClass, Method method) {
+        return getMethodSignName(targetClass, method.getName(), method.getParameterTypes());
+    }
+
+    /**
+     * 按指定的入参类型获取方法的全限定名称 格式同{@link #getTargetMethodFullyQualifiedName(JoinPoint, Class[])}
+     * 包装类型和切面中一样换成对应的基础类型
+     *
+     * @param targetClass 方法所在的类
+     * @param methodName  方法名称
+     * @param argsClazz   入参类型
+     * @return 方法的全限定名称
+     */
+    public static String getMethodSignName(Class<?> targetClass, String methodName, Class<?>[] argsClazz) {
+        StringJoiner argsJoiner = new StringJoiner(",", "(", ")");
+        for (Class<?> argClazz : argsClazz) {
+            Class<?> typeClazz = PRIMITIVE_MAP.get(argClazz.getName());
+            argsJoiner.add(ObjectUtils.isEmpty(typeClazz) ? argClazz.getName() : typeClazz.getName());
+        }
+        return targetClass.getName() + "#" + methodName + argsJoiner;
+    }
+
     /**
      * 获取各个参数的Class对象数组
      *
@@ -0,0 +1,103 @@
+package top.panson.argo.aspect;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import top.panson.argo.annotation.ConsistencyTask;
+import top.panson.argo.config.TendConsistencyConfiguration;
+import top.panson.argo.enums.PerformanceEnum;
+import top.panson.argo.manager.TaskParameterCodecManager;
+import top.panson.argo.model.ConsistencyTaskInstance;
+import top.panson.argo.service.TaskStoreService;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 切面拦截一次方法调用生成任务实例的耗时和内存分配 对比引入任务模板缓存前后的实现
+ * 运行方式同TaskParameterCodecBenchmark，main方法开启了GC profiler，看 gc.alloc.rate.norm 一行即每次调用分配的字节数
+ *
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConsistencyAspectBenchmark {
+
+    /**
+     * 最近一次写入的任务实例 避免任务实例的创建被优化掉
+     */
+    private volatile ConsistencyTaskInstance lastTaskInstance;
+
+    private OrderNotifyService templateProxy;
+
+    private OrderNotifyService legacyProxy;
+
+    private final Long orderId = 20230101L;
+
+    private final String payload = "paid";
+
+    @Setup
+    public void setUp() {
+        TendConsistencyConfiguration configuration = new TendConsistencyConfiguration();
+        TaskParameterCodecManager codecManager = new TaskParameterCodecManager();
+        ReflectionTestUtils.setField(codecManager, "tendConsistencyConfiguration", configuration);
+        codecManager.init();
+        TaskStoreService taskStoreService = (TaskStoreService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{TaskStoreService.class}, (proxy, method, args) -> {
+                    lastTaskInstance = (ConsistencyTaskInstance) args[0];
+                    return null;
+                });
+
+        ConsistencyAspect aspect = new ConsistencyAspect();
+        ReflectionTestUtils.setField(aspect, "taskStoreService", taskStoreService);
+        ReflectionTestUtils.setField(aspect, "tendConsistencyConfiguration", configuration);
+        ReflectionTestUtils.setField(aspect, "taskParameterCodecManager", codecManager);
+        templateProxy = proxy(aspect);
+        legacyProxy = proxy(new LegacyConsistencyAspect(taskStoreService, codecManager));
+    }
+
+    @Benchmark
+    public ConsistencyTaskInstance templateAspect() {
+        templateProxy.notifyPaid(orderId, payload);
+        return lastTaskInstance;
+    }
+
+    @Benchmark
+    public ConsistencyTaskInstance legacyAspect() {
+        legacyProxy.notifyPaid(orderId, payload);
+        return lastTaskInstance;
+    }
+
+    private static OrderNotifyService proxy(Object aspect) {
+        AspectJProxyFactory proxyFactory = new AspectJProxyFactory(new OrderNotifyService());
+        proxyFactory.addAspect(aspect);
+        return proxyFactory.getProxy();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ConsistencyAspectBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+    /**
+     * 被拦截的业务服务
+     */
+    public static class OrderNotifyService {
+
+        @ConsistencyTask(executeIntervalSec = 10, delayTime = 3, performanceWay = PerformanceEnum.PERFORMANCE_SCHEDULE)
+        public void notifyPaid(Long orderId, String payload) {
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+package top.panson.argo.aspect;
+
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.util.StringUtils;
+import top.panson.argo.annotation.ConsistencyTask;
+import top.panson.argo.enums.ConsistencyTaskStatusEnum;
+import top.panson.argo.enums.PerformanceEnum;
+import top.panson.argo.manager.TaskParameterCodecManager;
+import top.panson.argo.model.ConsistencyTaskInstance;
+import top.panson.argo.service.TaskStoreService;
+import top.panson.argo.utils.ReflectTools;
+import top.panson.argo.utils.ThreadLocalUtil;
+import top.panson.argo.utils.TimeUtils;
+
+import java.util.Date;
+
+/**
+ * 引入任务模板缓存之前的切面实现 每次调用都从注解和切入点重新解析任务的不变部分
+ * 只作为基准测试的对照组，只保留不分片时的逻辑
+ *
+ **/
+@Slf4j
+@Aspect
+class LegacyConsistencyAspect {
+
+    private final TaskStoreService taskStoreService;
+
+    private final TaskParameterCodecManager taskParameterCodecManager;
+
+    LegacyConsistencyAspect(TaskStoreService taskStoreService, TaskParameterCodecManager taskParameterCodecManager) {
+        this.taskStoreService = taskStoreService;
+        this.taskParameterCodecManager = taskParameterCodecManager;
+    }
+
+    @Around("@annotation(consistencyTask)")
+    public Object markConsistencyTask(ProceedingJoinPoint point, ConsistencyTask consistencyTask) throws Throwable {
+        log.info("access method:{} is called on {} args {}", point.getSignature().getName(), point.getThis(), point.getArgs());
+        if (ThreadLocalUtil.getFlag()) {
+            return point.proceed();
+        }
+        ConsistencyTaskInstance taskInstance = createTaskInstance(consistencyTask, point);
+        taskStoreService.initTask(taskInstance);
+        return null;
+    }
+
+    private ConsistencyTaskInstance createTaskInstance(ConsistencyTask task, JoinPoint point) {
+        Class<?>[] argsClazz = ReflectTools.getArgsClass(point.getArgs());
+        String fullyQualifiedName = ReflectTools.getTargetMethodFullyQualifiedName(point, argsClazz);
+        String parameterTypes = ReflectTools.getArgsClassNames(point.getSignature());
+
+        Date date = new Date();
+
+        ConsistencyTaskInstance instance = ConsistencyTaskInstance.builder()
+                .taskId(StringUtils.isEmpty(task.id()) ? fullyQualifiedName : task.id())
+                .methodName(point.getSignature().getName())
+                .parameterTypes(parameterTypes)
+                .methodSignName(fullyQualifiedName)
+                .taskParameter(taskParameterCodecManager.encode(point.getArgs(),
+                        ((MethodSignature) point.getSignature()).getMethod().getGenericParameterTypes()))
+                .performanceWay(task.performanceWay().getCode())
+                .threadWay(task.threadWay().getCode())
+                .executeIntervalSec(task.executeIntervalSec())
+                .delayTime(task.delayTime())
+                .executeTimes(0)
+                .taskStatus(ConsistencyTaskStatusEnum.INIT.getCode())
+                .errorMsg("")
+                .alertExpression(StringUtils.isEmpty(task.alertExpression()) ? "" : task.alertExpression())
+                .alertActionBeanName(StringUtils.isEmpty(task.alertActionBeanName()) ? "" : task.alertActionBeanName())
+                .fallbackClassName(ReflectTools.getFullyQualifiedClassName(task.fallbackClass()))
+                .fallbackErrorMsg("")
+                .gmtCreate(date)
+                .gmtModified(date)
+                .build();
+
+        if (PerformanceEnum.PERFORMANCE_SCHEDULE.getCode().equals(instance.getPerformanceWay())) {
+            instance.setExecuteTime(System.currentTimeMillis() + TimeUtils.secToMill(instance.getDelayTime()));
+        } else {
+            instance.setExecuteTime(System.currentTimeMillis());
+        }
+        instance.setShardKey(0L);
+        return instance;
+    }
+
+}
@@ -0,0 +1,205 @@
+package top.panson.argo.custom.codec;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 紧凑二进制任务参数编解码器的测试
+ *
+ **/
+class BinaryTaskParameterCodecTest {
+
+    /**
+     * 测试用例中不会触发压缩的阈值
+     */
+    private static final int NO_COMPRESS_THRESHOLD = Integer.MAX_VALUE;
+
+    /**
+     * 基本类型、包装类型以及边界值编码后可以原样解码
+     */
+    @Test
+    void roundTripPrimitives() {
+        Object[] args = {Integer.MIN_VALUE, Long.MAX_VALUE, (short) -7, (byte) 127, true, 'z', 3.5d, -1.25f,
+                new BigDecimal("12345678901234567890.123456789"), new BigInteger("-98765432109876543210"),
+                new Date(1700000000123L), "一致性任务", new byte[]{0, -1, 127}, Color.GREEN};
+
+        Object[] decoded = roundTrip(new BinaryTaskParameterCodec(NO_COMPRESS_THRESHOLD), "primitives", args);
+
+        assertThat(decoded).containsExactly(args);
+    }
+
+    /**
+     * null参数不会让后面的参数错位 对象中的null字段解码后依然是null
+     */
+    @Test
+    void roundTripNulls() {
+        Item item = new Item(null, 0L, null);
+        Object[] args = {null, null, null, item};
+
+        Object[] decoded = roundTrip(new BinaryTaskParameterCodec(NO_COMPRESS_THRESHOLD), "nullable", args);
+
+        assertThat(decoded).containsExactly(null, null, null, item);
+    }
+
+    /**
+     * 泛型参数按声明的元素类型解码，嵌套的集合和Map也能还原
+     */
+    @Test
+    void roundTripGenericsAndNestedCollections() {
+        Map<String, List<Item>> itemsByGroup = new LinkedHashMap<>();
+        itemsByGroup.put("a", Arrays.asList(new Item("a-1", 1L, Color.RED), null));
+        itemsByGroup.put("b", Collections.emptyList());
+        Set<Long> ids = new TreeSet<>(Arrays.asList(3L, 1L, 2L));
+        List<List<Integer>> matrix = Arrays.asList(Arrays.asList(1, 2), Collections.singletonList(-3));
+        Order order = new Order();
+        order.setOrderNo("NO-1");
+        order.setItems(Arrays.asList(new Item("x", 10L, Color.BLUE), new Item("y", 20L, null)));
+        order.setTags(Collections.singletonMap("channel", new LinkedHashSet<>(Arrays.asList("app", "web"))));
+        Object[] args = {itemsByGroup, ids, matrix, order};
+
+        Object[] decoded = roundTrip(new BinaryTaskParameterCodec(NO_COMPRESS_THRESHOLD), "generics", args);
+
+        assertThat(decoded).containsExactly(args);
+        // 按声明的Set类型解码为LinkedHashSet 保留编码时的遍历顺序
+        assertThat(new ArrayList<Object>((Set<?>) decoded[1])).containsExactly(1L, 2L, 3L);
+        assertThat(((Map<?, ?>) decoded[0]).get("a")).asList().first().isInstanceOf(Item.class);
+        assertThat(((Order) decoded[3]).getItems()).first().isInstanceOf(Item.class);
+    }
+
+    /**
+     * 无法确定具体类型的参数退化为JSON字符串，依然可以解码
+     */
+    @Test
+    void roundTripObjectFallsBackToJson() {
+        Object[] args = {"plain", 42};
+
+        Object[] decoded = roundTrip(new BinaryTaskParameterCodec(NO_COMPRESS_THRESHOLD), "untyped", args);
+
+        assertThat(decoded[0]).isEqualTo("plain");
+        assertThat(decoded[1]).isEqualTo(42);
+    }
+
+    /**
+     * 超过压缩阈值时走deflate压缩，编码结果更短且可以原样解码
+     */
+    @Test
+    void roundTripDeflate() {
+        Order order = new Order();
+        order.setOrderNo("NO-2");
+        List<Item> items = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            items.add(new Item("sku-" + (i % 5), (long) i, Color.values()[i % 3]));
+        }
+        order.setItems(items);
+        order.setTags(Collections.emptyMap());
+        Object[] args = {Collections.singletonMap("x", Collections.<Item>emptyList()), Collections.emptySet(), Collections.emptyList(), order};
+
+        BinaryTaskParameterCodec compressing = new BinaryTaskParameterCodec(64);
+        Type[] parameterTypes = parameterTypes("generics");
+        String compressed = compressing.encode(args, parameterTypes);
+        String raw = new BinaryTaskParameterCodec(NO_COMPRESS_THRESHOLD).encode(args, parameterTypes);
+
+        assertThat(Base64.getDecoder().decode(compressed)[0]).isEqualTo((byte) 1);
+        assertThat(Base64.getDecoder().decode(raw)[0]).isEqualTo((byte) 0);
+        assertThat(compressed.length()).isLessThan(raw.length());
+        assertThat(compressing.decode(compressed, parameterTypes)).containsExactly(args);
+    }
+
+    /**
+     * 类新增字段后依然可以解码历史数据 新字段保持默认值
+     */
+    @Test
+    void decodeAfterFieldAdded() {
+        BinaryTaskParameterCodec codec = new BinaryTaskParameterCodec(NO_COMPRESS_THRESHOLD);
+        String encoded = codec.encode(new Object[]{new Item("old", 1L, Color.RED)}, parameterTypes("item"));
+
+        Object[] decoded = codec.decode(encoded, parameterTypes("itemV2"));
+
+        assertThat(decoded[0]).isEqualTo(new ItemV2("old", 1L, Color.RED, null));
+    }
+
+    private static Object[] roundTrip(BinaryTaskParameterCodec codec, String methodName, Object[] args) {
+        Type[] parameterTypes = parameterTypes(methodName);
+        return codec.decode(codec.encode(args, parameterTypes), parameterTypes);
+    }
+
+    static Type[] parameterTypes(String methodName) {
+        for (Method method : Signatures.class.getDeclaredMethods()) {
+            if (method.getName().equals(methodName)) {
+                return method.getGenericParameterTypes();
+            }
+        }
+        throw new IllegalArgumentException(methodName);
+    }
+
+    /**
+     * 提供方法声明的入参类型
+     */
+    @SuppressWarnings("unused")
+    interface Signatures {
+
+        void primitives(int i, Long l, short s, Byte b, boolean bool, char c, double d, Float f,
+                        BigDecimal decimal, BigInteger integer, Date date, String text, byte[] bytes, Color color);
+
+        void nullable(Integer i, String text, List<Long> ids, Item item);
+
+        void generics(Map<String, List<Item>> itemsByGroup, Set<Long> ids, List<List<Integer>> matrix, Order order);
+
+        void untyped(Object text, Object number);
+
+        void item(Item item);
+
+        void itemV2(ItemV2 item);
+    }
+
+    enum Color {
+        RED, GREEN, BLUE
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class Item {
+
+        private String sku;
+
+        private Long quantity;
+
+        private Color color;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class ItemV2 {
+
+        private String sku;
+
+        private Long quantity;
+
+        private Color color;
+
+        private String remark;
+    }
+
+    @Data
+    static class Order {
+
+        private String orderNo;
+
+        private List<Item> items;
+
+        private Map<String, Set<String>> tags;
+    }
+
+}
@@ -0,0 +1,91 @@
+package top.panson.argo.custom.codec;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import top.panson.argo.custom.codec.BinaryTaskParameterCodecTest.Color;
+import top.panson.argo.custom.codec.BinaryTaskParameterCodecTest.Item;
+import top.panson.argo.custom.codec.BinaryTaskParameterCodecTest.Order;
+
+import java.lang.reflect.Type;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON和二进制任务参数编解码器的编解码耗时对比
+ * 运行方式：先执行 mvn -pl argo-core test-compile，再在IDE中运行main方法，或者把test-classes和测试依赖加到classpath后用java命令运行
+ *
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TaskParameterCodecBenchmark {
+
+    /**
+     * 订单中的明细行数 决定任务参数的大小
+     */
+    @Param({"1", "20", "200"})
+    private int itemCount;
+
+    private final Type[] parameterTypes = BinaryTaskParameterCodecTest.parameterTypes("generics");
+
+    private final JsonTaskParameterCodec jsonCodec = new JsonTaskParameterCodec();
+
+    private final BinaryTaskParameterCodec binaryCodec = new BinaryTaskParameterCodec(1024);
+
+    private Object[] args;
+
+    private String jsonText;
+
+    private String binaryText;
+
+    @Setup
+    public void setUp() {
+        List<Item> items = new ArrayList<>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            items.add(new Item("sku-" + i, (long) i, Color.values()[i % 3]));
+        }
+        Order order = new Order();
+        order.setOrderNo("NO-20230101-0001");
+        order.setItems(items);
+        order.setTags(Collections.singletonMap("channel", new LinkedHashSet<>(Arrays.asList("app", "web"))));
+        Map<String, List<Item>> itemsByGroup = Collections.singletonMap("default", items.subList(0, Math.min(5, itemCount)));
+        args = new Object[]{itemsByGroup, new LinkedHashSet<>(Arrays.asList(1L, 2L, 3L)), Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3, 4)), order};
+        jsonText = jsonCodec.encode(args, parameterTypes);
+        binaryText = binaryCodec.encode(args, parameterTypes);
+        System.out.printf("%n[itemCount=%d] json=%d chars, binary=%d chars%n", itemCount, jsonText.length(), binaryText.length());
+    }
+
+    @Benchmark
+    public String jsonEncode() {
+        return jsonCodec.encode(args, parameterTypes);
+    }
+
+    @Benchmark
+    public String binaryEncode() {
+        return binaryCodec.encode(args, parameterTypes);
+    }
+
+    @Benchmark
+    public Object[] jsonDecode() {
+        return jsonCodec.decode(jsonText, parameterTypes);
+    }
+
+    @Benchmark
+    public Object[] binaryDecode() {
+        return binaryCodec.decode(binaryText, parameterTypes);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(TaskParameterCodecBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,99 @@
+package top.panson.argo.custom.shard;
+
+import com.google.common.base.Preconditions;
+import lombok.SneakyThrows;
+
+import java.util.Properties;
+
+/**
+ * 改为CAS之前的分片键生成器实现 生成时加锁，每次生成都从properties中解析workerId
+ * 只作为基准测试的对照组
+ *
+ **/
+class LegacySnowflakeShardingKeyGenerator implements ShardingKeyGenerator {
+
+    private static final long EPOCH = SnowflakeShardingKeyGenerator.EPOCH;
+
+    private static final long SEQUENCE_BITS = 12L;
+
+    private static final long WORKER_ID_BITS = 10L;
+
+    private static final long SEQUENCE_MASK = (1 << SEQUENCE_BITS) - 1;
+
+    private static final long WORKER_ID_LEFT_SHIFT_BITS = SEQUENCE_BITS;
+
+    private static final long TIMESTAMP_LEFT_SHIFT_BITS = WORKER_ID_LEFT_SHIFT_BITS + WORKER_ID_BITS;
+
+    private static final long WORKER_ID_MAX_VALUE = 1L << WORKER_ID_BITS;
+
+    private static final long WORKER_ID = 0;
+
+    private static final int MAX_TOLERATE_TIME_DIFFERENCE_MILLISECONDS = 10;
+
+    private final TimeService timeService;
+
+    private final Properties properties = new Properties();
+
+    private byte sequenceOffset;
+
+    private long sequence;
+
+    private long lastMilliseconds;
+
+    LegacySnowflakeShardingKeyGenerator(TimeService timeService) {
+        this.timeService = timeService;
+    }
+
+    @Override
+    public synchronized long generateShardKey() {
+        long currentMilliseconds = timeService.getCurrentMillis();
+        if (waitTolerateTimeDifferenceIfNeed(currentMilliseconds)) {
+            currentMilliseconds = timeService.getCurrentMillis();
+        }
+        if (lastMilliseconds == currentMilliseconds) {
+            if (0L == (sequence = (sequence + 1) & SEQUENCE_MASK)) {
+                currentMilliseconds = waitUntilNextTime(currentMilliseconds);
+            }
+        } else {
+            vibrateSequenceOffset();
+            sequence = sequenceOffset;
+        }
+        lastMilliseconds = currentMilliseconds;
+        return ((currentMilliseconds - EPOCH) << TIMESTAMP_LEFT_SHIFT_BITS) | (getWorkerId() << WORKER_ID_LEFT_SHIFT_BITS) | sequence;
+    }
+
+    @SneakyThrows
+    private boolean waitTolerateTimeDifferenceIfNeed(final long currentMilliseconds) {
+        if (lastMilliseconds <= currentMilliseconds) {
+            return false;
+        }
+        long timeDifferenceMilliseconds = lastMilliseconds - currentMilliseconds;
+        Preconditions.checkState(timeDifferenceMilliseconds < getMaxTolerateTimeDifferenceMilliseconds(),
+                "Clock is moving backwards, last time is %d milliseconds, current time is %d milliseconds", lastMilliseconds, currentMilliseconds);
+        Thread.sleep(timeDifferenceMilliseconds);
+        return true;
+    }
+
+    private long getWorkerId() {
+        long result = Long.valueOf(properties.getProperty("worker.id", String.valueOf(WORKER_ID)));
+        Preconditions.checkArgument(result >= 0L && result < WORKER_ID_MAX_VALUE);
+        return result;
+    }
+
+    private int getMaxTolerateTimeDifferenceMilliseconds() {
+        return Integer.valueOf(properties.getProperty("max.tolerate.time.difference.milliseconds", String.valueOf(MAX_TOLERATE_TIME_DIFFERENCE_MILLISECONDS)));
+    }
+
+    private long waitUntilNextTime(final long lastTime) {
+        long result = timeService.getCurrentMillis();
+        while (result <= lastTime) {
+            result = timeService.getCurrentMillis();
+        }
+        return result;
+    }
+
+    private void vibrateSequenceOffset() {
+        sequenceOffset = (byte) (~sequenceOffset & 1);
+    }
+
+}
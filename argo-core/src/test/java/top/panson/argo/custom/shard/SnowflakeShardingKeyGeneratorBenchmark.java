@@ -0,0 +1,83 @@
+package top.panson.argo.custom.shard;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.util.ReflectionUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多线程生成分片键的吞吐量 对比CAS实现和加锁的旧实现
+ * 运行方式同TaskParameterCodecBenchmark，可以通过 -t 参数调整线程数
+ * 每毫秒最多生成4096个分片键，使用真实时钟时两种实现都会被这个上限卡住，
+ * fast时钟把每微秒当作一毫秒，用来比较生成本身的开销和多线程竞争
+ *
+ **/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class SnowflakeShardingKeyGeneratorBenchmark {
+
+    /**
+     * 时钟 wall为真实时钟，fast为每微秒走一毫秒的时钟
+     */
+    @Param({"wall", "fast"})
+    private String clock;
+
+    private ShardingKeyGenerator casGenerator;
+
+    private ShardingKeyGenerator legacyGenerator;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        TimeService timeService = "fast".equals(clock) ? new FastTimeService() : new TimeService();
+        SnowflakeShardingKeyGenerator.setTimeService(timeService);
+        casGenerator = ReflectionUtils.accessibleConstructor(SnowflakeShardingKeyGenerator.class).newInstance();
+        legacyGenerator = new LegacySnowflakeShardingKeyGenerator(timeService);
+    }
+
+    @TearDown
+    public void tearDown() {
+        SnowflakeShardingKeyGenerator.setTimeService(new TimeService());
+    }
+
+    @Benchmark
+    public long casGenerator() {
+        return casGenerator.generateShardKey();
+    }
+
+    @Benchmark
+    public long legacyGenerator() {
+        return legacyGenerator.generateShardKey();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SnowflakeShardingKeyGeneratorBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+    /**
+     * 每微秒走一毫秒的时钟
+     */
+    private static class FastTimeService extends TimeService {
+
+        private final long startMillis = System.currentTimeMillis();
+
+        private final long startNanos = System.nanoTime();
+
+        @Override
+        public long getCurrentMillis() {
+            return startMillis + (System.nanoTime() - startNanos) / 1000L;
+        }
+    }
+
+}
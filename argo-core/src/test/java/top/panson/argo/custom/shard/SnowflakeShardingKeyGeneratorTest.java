@@ -0,0 +1,177 @@
+package top.panson.argo.custom.shard;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.ReflectionUtils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 任务分片键生成器的测试
+ *
+ **/
+class SnowflakeShardingKeyGeneratorTest {
+
+    /**
+     * 分片键中时间戳的左移位数
+     */
+    private static final int TIMESTAMP_LEFT_SHIFT_BITS = 22;
+    /**
+     * 分片键中序列号的掩码
+     */
+    private static final long SEQUENCE_MASK = 4095L;
+
+    @AfterEach
+    void tearDown() {
+        SnowflakeShardingKeyGenerator.setTimeService(new TimeService());
+    }
+
+    /**
+     * 多线程并发生成的分片键全局不重复，每个线程内严格递增
+     */
+    @Test
+    void concurrentKeysAreUniqueAndMonotonicPerThread() throws Exception {
+        SnowflakeShardingKeyGenerator generator = newGenerator();
+        int threadCount = 8;
+        int keysPerThread = 20000;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        CountDownLatch startLatch = new CountDownLatch(1);
+        try {
+            List<Future<long[]>> futures = new ArrayList<>();
+            for (int i = 0; i < threadCount; i++) {
+                futures.add(executor.submit(() -> {
+                    startLatch.await();
+                    long[] keys = new long[keysPerThread];
+                    for (int j = 0; j < keysPerThread; j++) {
+                        keys[j] = generator.generateShardKey();
+                    }
+                    return keys;
+                }));
+            }
+            startLatch.countDown();
+            Set<Long> allKeys = new HashSet<>(threadCount * keysPerThread * 2);
+            for (Future<long[]> future : futures) {
+                long[] keys = future.get(30, TimeUnit.SECONDS);
+                for (int j = 0; j < keys.length; j++) {
+                    if (j > 0) {
+                        assertThat(keys[j]).isGreaterThan(keys[j - 1]);
+                    }
+                    allKeys.add(keys[j]);
+                }
+            }
+            assertThat(allKeys).hasSize(threadCount * keysPerThread);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * 时钟小幅回拨时沿用上次的毫秒数继续递增序列号，分片键不会变小
+     */
+    @Test
+    void smallClockRollbackKeepsKeysIncreasing() {
+        ManualTimeService timeService = new ManualTimeService(SnowflakeShardingKeyGenerator.EPOCH + 1000L);
+        SnowflakeShardingKeyGenerator.setTimeService(timeService);
+        SnowflakeShardingKeyGenerator generator = newGenerator();
+        long before = generator.generateShardKey();
+
+        timeService.millis -= 5L;
+        long afterRollback = generator.generateShardKey();
+
+        assertThat(afterRollback).isGreaterThan(before);
+        assertThat(afterRollback >>> TIMESTAMP_LEFT_SHIFT_BITS).isEqualTo(1000L);
+        assertThat(afterRollback & SEQUENCE_MASK).isEqualTo((before & SEQUENCE_MASK) + 1);
+
+        timeService.millis += 6L;
+        assertThat(generator.generateShardKey() >>> TIMESTAMP_LEFT_SHIFT_BITS).isEqualTo(1001L);
+    }
+
+    /**
+     * 时钟回拨超过允许的最大毫秒数时报错
+     */
+    @Test
+    void largeClockRollbackFails() {
+        ManualTimeService timeService = new ManualTimeService(SnowflakeShardingKeyGenerator.EPOCH + 1000L);
+        SnowflakeShardingKeyGenerator.setTimeService(timeService);
+        SnowflakeShardingKeyGenerator generator = newGenerator();
+        Properties properties = new Properties();
+        properties.setProperty("max.tolerate.time.difference.milliseconds", "3");
+        generator.setProperties(properties);
+        generator.generateShardKey();
+
+        timeService.millis -= 3L;
+
+        assertThatThrownBy(generator::generateShardKey)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("Clock is moving backwards");
+    }
+
+    /**
+     * 同一毫秒内序列号用完后等待时钟走到下一毫秒，不会复用序列号
+     */
+    @Test
+    void sequenceExhaustionWaitsForNextMillisecond() throws Exception {
+        // 偶数毫秒的序列号从0开始 这一毫秒内可以生成4096个分片键
+        ManualTimeService timeService = new ManualTimeService(SnowflakeShardingKeyGenerator.EPOCH + 1000L);
+        SnowflakeShardingKeyGenerator.setTimeService(timeService);
+        SnowflakeShardingKeyGenerator generator = newGenerator();
+        Properties properties = new Properties();
+        properties.setProperty("worker.id", "5");
+        generator.setProperties(properties);
+        for (long sequence = 0; sequence <= SEQUENCE_MASK; sequence++) {
+            long key = generator.generateShardKey();
+            assertThat(key >>> TIMESTAMP_LEFT_SHIFT_BITS).isEqualTo(1000L);
+            assertThat((key >>> 12) & 1023L).isEqualTo(5L);
+            assertThat(key & SEQUENCE_MASK).isEqualTo(sequence);
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Long> next = executor.submit(generator::generateShardKey);
+            assertThatThrownBy(() -> next.get(200L, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+
+            timeService.millis += 1L;
+            long key = next.get(5, TimeUnit.SECONDS);
+            assertThat(key >>> TIMESTAMP_LEFT_SHIFT_BITS).isEqualTo(1001L);
+            // 奇数毫秒的序列号从1开始
+            assertThat(key & SEQUENCE_MASK).isEqualTo(1L);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static SnowflakeShardingKeyGenerator newGenerator() {
+        try {
+            // 单例在测试之间共享状态 每个测试使用新的实例
+            return ReflectionUtils.accessibleConstructor(SnowflakeShardingKeyGenerator.class).newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 手动拨动的时钟
+     */
+    private static class ManualTimeService extends TimeService {
+
+        private volatile long millis;
+
+        ManualTimeService(long millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public long getCurrentMillis() {
+            return millis;
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+package top.panson.argo.manager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.invocation.Invocation;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import top.panson.argo.config.TendConsistencyConfiguration;
+import top.panson.argo.mapper.TaskStoreMapper;
+import top.panson.argo.model.ConsistencyTaskInstance;
+import top.panson.argo.service.TaskStateTransitionWriter;
+import top.panson.argo.service.TaskStoreServiceImpl;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * 统计一次任务执行尝试发出的数据库语句条数
+ * 启动任务之后不再回查任务，成功和失败的尝试都只有两条语句（启动 + 标记结果），原来是三条
+ *
+ **/
+class TaskAttemptStatementCountTest {
+
+    private TaskStoreMapper taskStoreMapper;
+
+    private TaskScheduleManager taskScheduleManager;
+
+    private TendConsistencyConfiguration configuration;
+
+    private TaskEngineExecutorImpl taskEngineExecutor;
+
+    @BeforeEach
+    void setUp() {
+        taskStoreMapper = mock(TaskStoreMapper.class);
+        when(taskStoreMapper.turnOnTask(any())).thenReturn(1);
+        when(taskStoreMapper.turnOnTaskWithLease(any(), anyString(), anyLong(), anyLong())).thenReturn(1);
+        taskScheduleManager = mock(TaskScheduleManager.class);
+        configuration = new TendConsistencyConfiguration();
+        configuration.setExecuteInTransaction(false);
+        configuration.setFailCountThreshold(0);
+        configuration.setNodeId("node-1");
+
+        TaskStoreServiceImpl taskStoreService = new TaskStoreServiceImpl();
+        ReflectionTestUtils.setField(taskStoreService, "taskStoreMapper", taskStoreMapper);
+        ReflectionTestUtils.setField(taskStoreService, "tendConsistencyConfiguration", configuration);
+        ReflectionTestUtils.setField(taskStoreService, "taskStateTransitionWriter", mock(TaskStateTransitionWriter.class));
+
+        taskEngineExecutor = new TaskEngineExecutorImpl();
+        ReflectionTestUtils.setField(taskEngineExecutor, "taskStoreService", taskStoreService);
+        ReflectionTestUtils.setField(taskEngineExecutor, "taskScheduleManager", taskScheduleManager);
+        ReflectionTestUtils.setField(taskEngineExecutor, "consistencyConfig", configuration);
+        ReflectionTestUtils.setField(taskEngineExecutor, "transactionTemplate", new TransactionTemplate(mock(PlatformTransactionManager.class)));
+        ReflectionTestUtils.setField(taskEngineExecutor, "taskLeaseManager", mock(TaskLeaseManager.class));
+        ReflectionTestUtils.setField(taskEngineExecutor, "taskTimingWheel", mock(TaskTimingWheel.class));
+        ReflectionTestUtils.setField(taskEngineExecutor, "taskInvokerRegistry", mock(TaskInvokerRegistry.class));
+        ReflectionTestUtils.setField(taskEngineExecutor, "taskAlertCoalescer", mock(TaskAlertCoalescer.class));
+    }
+
+    @Test
+    void successfulAttemptIssuesTwoStatements() {
+        taskEngineExecutor.executeTaskInstance(task());
+
+        assertThat(statements()).containsExactly("turnOnTask", "markSuccess");
+    }
+
+    @Test
+    void failedAttemptIssuesTwoStatements() throws Exception {
+        doThrow(new IllegalStateException("boom")).when(taskScheduleManager).performanceTask(any());
+
+        taskEngineExecutor.executeTaskInstance(task());
+
+        assertThat(statements()).containsExactly("turnOnTask", "markFail");
+    }
+
+    @Test
+    void leaseModeAttemptIssuesTwoStatements() {
+        configuration.setLeaseEnabled(true);
+
+        taskEngineExecutor.executeTaskInstance(task());
+
+        assertThat(statements()).containsExactly("turnOnTaskWithLease", "markSuccessWithLease");
+    }
+
+    @Test
+    void claimKeepsExecuteTimesInSyncWithoutRereading() {
+        ConsistencyTaskInstance taskInstance = task();
+        taskInstance.setExecuteTimes(2);
+
+        taskEngineExecutor.executeTaskInstance(taskInstance);
+
+        assertThat(taskInstance.getExecuteTimes()).isEqualTo(3);
+        verify(taskStoreMapper, never()).getTaskByIdAndShardKey(any(), any());
+    }
+
+    private List<String> statements() {
+        return mockingDetails(taskStoreMapper).getInvocations().stream()
+                .map(Invocation::getMethod)
+                .map(Method::getName)
+                .collect(Collectors.toList());
+    }
+
+    private static ConsistencyTaskInstance task() {
+        return ConsistencyTaskInstance.builder()
+                .id(1L)
+                .shardKey(0L)
+                .methodSignName("top.panson.demo.DemoService#doSomething(java.lang.String)")
+                .executeIntervalSec(20)
+                .executeTime(System.currentTimeMillis())
+                .build();
+    }
+
+}
@@ -0,0 +1,112 @@
+package top.panson.argo.manager;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import top.panson.argo.config.TendConsistencyConfiguration;
+import top.panson.argo.custom.codec.BinaryTaskParameterCodec;
+import top.panson.argo.custom.codec.JsonTaskParameterCodec;
+import top.panson.argo.exceptions.ConsistencyException;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 任务参数编解码管理器的测试
+ *
+ **/
+class TaskParameterCodecManagerTest {
+
+    /**
+     * 切换为二进制编解码器后，写入带前缀的二进制格式，并且可以解码
+     */
+    @Test
+    void binaryCodecWritesPrefixedText() {
+        TaskParameterCodecManager manager = manager(BinaryTaskParameterCodec.CODEC_ID);
+        Object[] args = {7L, "a:b", Arrays.asList(1, 2)};
+
+        String parameterText = manager.encode(args, parameterTypes());
+
+        assertThat(parameterText).startsWith(BinaryTaskParameterCodec.CODEC_ID + ":");
+        assertThat(manager.decode(parameterText, parameterTypes())).containsExactly(args);
+    }
+
+    /**
+     * 切换为二进制编解码器之前已经落库的JSON任务参数依然按JSON解码，包括参数值中带冒号的情况
+     */
+    @Test
+    void binaryCodecDecodesLegacyJsonRows() {
+        String legacyParameterText = new JsonTaskParameterCodec().encode(new Object[]{7L, "a:b", Arrays.asList(1, 2)}, parameterTypes());
+        assertThat(legacyParameterText).startsWith("[");
+
+        Object[] decoded = manager(BinaryTaskParameterCodec.CODEC_ID).decode(legacyParameterText, parameterTypes());
+
+        assertThat(decoded).containsExactly(7L, "a:b", Arrays.asList(1, 2));
+    }
+
+    /**
+     * 历史JSON任务参数中的null参数不会让后面的参数错位
+     */
+    @Test
+    void binaryCodecDecodesLegacyJsonRowsWithNull() {
+        Object[] decoded = manager(BinaryTaskParameterCodec.CODEC_ID).decode("[null,\"x\",[3]]", parameterTypes());
+
+        assertThat(decoded).containsExactly(null, "x", Arrays.asList(3));
+    }
+
+    /**
+     * 默认的JSON编解码器写入不带前缀的JSON，和历史数据格式一致
+     */
+    @Test
+    void jsonCodecKeepsLegacyFormat() {
+        TaskParameterCodecManager manager = manager(JsonTaskParameterCodec.CODEC_ID);
+
+        String parameterText = manager.encode(new Object[]{7L, "a:b", Arrays.asList(1, 2)}, parameterTypes());
+
+        assertThat(parameterText).isEqualTo("[7,\"a:b\",[1,2]]");
+    }
+
+    /**
+     * 未注册的编解码器标识直接报错，不会按JSON误解码
+     */
+    @Test
+    void unknownCodecIdFails() {
+        TaskParameterCodecManager manager = manager(JsonTaskParameterCodec.CODEC_ID);
+
+        assertThatThrownBy(() -> manager.decode("kryo:AAAA", parameterTypes()))
+                .isInstanceOf(ConsistencyException.class);
+    }
+
+    private static TaskParameterCodecManager manager(String codecId) {
+        TendConsistencyConfiguration configuration = new TendConsistencyConfiguration();
+        configuration.setTaskParameterCodec(codecId);
+        TaskParameterCodecManager manager = new TaskParameterCodecManager();
+        ReflectionTestUtils.setField(manager, "tendConsistencyConfiguration", configuration);
+        manager.init();
+        return manager;
+    }
+
+    private static Type[] parameterTypes() {
+        try {
+            Method method = Signatures.class.getDeclaredMethod("call", Long.class, String.class, List.class);
+            return method.getGenericParameterTypes();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 提供方法声明的入参类型
+     */
+    @SuppressWarnings("unused")
+    interface Signatures {
+
+        void call(Long id, String text, List<Integer> values);
+    }
+
+}
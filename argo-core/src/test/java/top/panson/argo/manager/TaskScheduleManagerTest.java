@@ -0,0 +1,95 @@
+package top.panson.argo.manager;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import top.panson.argo.config.TendConsistencyConfiguration;
+import top.panson.argo.enums.TaskPollResultEnum;
+import top.panson.argo.service.TaskStoreService;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+/**
+ * 任务调度管理器的测试
+ *
+ **/
+class TaskScheduleManagerTest {
+
+    private TaskStoreService taskStoreService;
+
+    private TaskSubmissionController taskSubmissionController;
+
+    private TendConsistencyConfiguration configuration;
+
+    private TaskScheduleManager taskScheduleManager;
+
+    @BeforeEach
+    void setUp() {
+        taskStoreService = mock(TaskStoreService.class);
+        when(taskStoreService.getUnFinishTaskLimit()).thenReturn(1000L);
+        when(taskStoreService.listByUnFinishTask(anyLong())).thenReturn(Collections.emptyList());
+        when(taskStoreService.claimUnFinishTask(anyLong())).thenReturn(Collections.emptyList());
+        taskSubmissionController = mock(TaskSubmissionController.class);
+        configuration = new TendConsistencyConfiguration();
+        taskScheduleManager = new TaskScheduleManager();
+        ReflectionTestUtils.setField(taskScheduleManager, "taskStoreService", taskStoreService);
+        ReflectionTestUtils.setField(taskScheduleManager, "taskSubmissionController", taskSubmissionController);
+        ReflectionTestUtils.setField(taskScheduleManager, "taskShardScanner", mock(TaskShardScanner.class));
+        ReflectionTestUtils.setField(taskScheduleManager, "tendConsistencyConfiguration", configuration);
+    }
+
+    /**
+     * 只查询线程池当前还能容纳的任务数
+     */
+    @Test
+    void fetchesNoMoreThanAvailablePermits() throws InterruptedException {
+        when(taskSubmissionController.availableCapacity()).thenReturn(7);
+
+        taskScheduleManager.pollTask();
+
+        verify(taskStoreService).listByUnFinishTask(7L);
+    }
+
+    /**
+     * 租约模式下同样只抢占线程池当前还能容纳的任务数
+     */
+    @Test
+    void claimsNoMoreThanAvailablePermits() throws InterruptedException {
+        configuration.setLeaseEnabled(true);
+        when(taskSubmissionController.availableCapacity()).thenReturn(7);
+
+        taskScheduleManager.pollTask();
+
+        verify(taskStoreService).claimUnFinishTask(7L);
+    }
+
+    /**
+     * 空闲许可多于每次查询的条数时 按每次查询的条数查询
+     */
+    @Test
+    void fetchesConfiguredLimitWhenPermitsAreAmple() throws InterruptedException {
+        when(taskSubmissionController.availableCapacity()).thenReturn(5000);
+
+        taskScheduleManager.pollTask();
+
+        verify(taskStoreService).listByUnFinishTask(1000L);
+    }
+
+    /**
+     * 没有空闲许可时不查询
+     */
+    @Test
+    void skipsFetchWhenNoPermitLeft() throws InterruptedException {
+        when(taskSubmissionController.availableCapacity()).thenReturn(0);
+
+        assertThat(taskScheduleManager.pollTask()).isEqualTo(TaskPollResultEnum.PARTIAL);
+
+        verify(taskStoreService, never()).listByUnFinishTask(anyLong());
+        verify(taskStoreService, never()).claimUnFinishTask(anyLong());
+    }
+
+}
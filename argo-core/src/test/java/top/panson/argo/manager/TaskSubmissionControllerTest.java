@@ -0,0 +1,120 @@
+package top.panson.argo.manager;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import top.panson.argo.config.TendConsistencyConfiguration;
+import top.panson.argo.model.ConsistencyTaskInstance;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 任务提交准入控制器的测试
+ *
+ **/
+class TaskSubmissionControllerTest {
+
+    private static final int CORE_POOL_SIZE = 1;
+
+    private static final int QUEUE_SIZE = 1;
+
+    private TaskEngineExecutor taskEngineExecutor;
+
+    private ThreadPoolExecutor consistencyTaskExecutor;
+
+    private TaskSubmissionController taskSubmissionController;
+
+    @BeforeEach
+    void setUp() {
+        TendConsistencyConfiguration configuration = new TendConsistencyConfiguration();
+        configuration.setThreadCorePoolSize(CORE_POOL_SIZE);
+        configuration.setThreadPoolQueueSize(QUEUE_SIZE);
+        taskEngineExecutor = mock(TaskEngineExecutor.class);
+        consistencyTaskExecutor = new ThreadPoolExecutor(CORE_POOL_SIZE, CORE_POOL_SIZE, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(QUEUE_SIZE + CORE_POOL_SIZE));
+        taskSubmissionController = new TaskSubmissionController();
+        ReflectionTestUtils.setField(taskSubmissionController, "tendConsistencyConfiguration", configuration);
+        ReflectionTestUtils.setField(taskSubmissionController, "taskEngineExecutor", taskEngineExecutor);
+        ReflectionTestUtils.setField(taskSubmissionController, "consistencyTaskExecutor", consistencyTaskExecutor);
+        taskSubmissionController.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        consistencyTaskExecutor.shutdownNow();
+    }
+
+    /**
+     * 线程池拒绝任务时归还许可 不会因为拒绝而永久少一个许可
+     */
+    @Test
+    void releasesPermitWhenExecutorRejects() {
+        ThreadPoolExecutor rejectingExecutor = mock(ThreadPoolExecutor.class);
+        doThrow(new RejectedExecutionException("rejected")).when(rejectingExecutor).execute(any());
+        ReflectionTestUtils.setField(taskSubmissionController, "consistencyTaskExecutor", rejectingExecutor);
+
+        assertThat(taskSubmissionController.trySubmit(task(1L))).isFalse();
+
+        assertThat(taskSubmissionController.availableCapacity()).isEqualTo(CORE_POOL_SIZE + QUEUE_SIZE);
+        assertThat(taskSubmissionController.getSkippedCount()).isEqualTo(1L);
+        assertThat(taskSubmissionController.getSubmittedCount()).isZero();
+    }
+
+    /**
+     * 没有空闲许可时不提交 任务留给下一次调度
+     */
+    @Test
+    void trySubmitSkipsWhenNoPermitLeft() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).when(taskEngineExecutor).executeTaskInstance(any());
+
+        assertThat(taskSubmissionController.trySubmit(task(1L))).isTrue();
+        assertThat(taskSubmissionController.trySubmit(task(2L))).isTrue();
+        assertThat(taskSubmissionController.trySubmit(task(3L))).isFalse();
+        assertThat(taskSubmissionController.getSkippedCount()).isEqualTo(1L);
+
+        release.countDown();
+        awaitCapacity(CORE_POOL_SIZE + QUEUE_SIZE);
+        verify(taskEngineExecutor, times(2)).executeTaskInstance(any());
+    }
+
+    /**
+     * 任务执行失败时也归还许可 并调用完成回调
+     */
+    @Test
+    void releasesPermitAndRunsCallbackWhenTaskFails() throws Exception {
+        doThrow(new IllegalStateException("boom")).when(taskEngineExecutor).executeTaskInstance(any());
+        CountDownLatch completed = new CountDownLatch(1);
+
+        assertThat(taskSubmissionController.submit(task(1L), completed::countDown)).isTrue();
+
+        assertThat(completed.await(5, TimeUnit.SECONDS)).isTrue();
+        awaitCapacity(CORE_POOL_SIZE + QUEUE_SIZE);
+        assertThat(taskSubmissionController.getSubmittedCount()).isEqualTo(1L);
+    }
+
+    private void awaitCapacity(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (taskSubmissionController.availableCapacity() != expected && System.nanoTime() < deadline) {
+            Thread.sleep(1L);
+        }
+        assertThat(taskSubmissionController.availableCapacity()).isEqualTo(expected);
+    }
+
+    private static ConsistencyTaskInstance task(Long id) {
+        return ConsistencyTaskInstance.builder().id(id).shardKey(0L).build();
+    }
+
+}
@@ -0,0 +1,120 @@
+package top.panson.argo.manager;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import top.panson.argo.config.TendConsistencyConfiguration;
+import top.panson.argo.model.ConsistencyTaskInstance;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.same;
+import static org.mockito.Mockito.*;
+
+/**
+ * 任务定时触发器的测试
+ *
+ **/
+class TaskTimingWheelTest {
+
+    private TaskSubmissionController taskSubmissionController;
+
+    private TendConsistencyConfiguration configuration;
+
+    private TaskTimingWheel taskTimingWheel;
+
+    @BeforeEach
+    void setUp() {
+        taskSubmissionController = mock(TaskSubmissionController.class);
+        configuration = new TendConsistencyConfiguration();
+        configuration.setTimingWheelEnabled(true);
+        configuration.setTimingWheelTickMillis(1L);
+        configuration.setTimingWheelSize(64);
+        taskTimingWheel = new TaskTimingWheel();
+        ReflectionTestUtils.setField(taskTimingWheel, "tendConsistencyConfiguration", configuration);
+        ReflectionTestUtils.setField(taskTimingWheel, "taskSubmissionController", taskSubmissionController);
+    }
+
+    @AfterEach
+    void tearDown() {
+        taskTimingWheel.stop();
+    }
+
+    /**
+     * 任务在execute_time到期时提交 不会提前提交
+     */
+    @Test
+    void firesAtDeadline() throws Exception {
+        taskTimingWheel.start();
+        CompletableFuture<Long> firedAt = new CompletableFuture<>();
+        when(taskSubmissionController.trySubmit(any())).thenAnswer(invocation -> {
+            firedAt.complete(System.currentTimeMillis());
+            return true;
+        });
+        long deadline = System.currentTimeMillis() + 150L;
+
+        taskTimingWheel.schedule(task(1L, deadline));
+
+        long fireTime = firedAt.get(5, TimeUnit.SECONDS);
+        assertThat(fireTime).isGreaterThanOrEqualTo(deadline);
+        assertThat(fireTime - deadline).isLessThan(100L);
+        assertThat(taskTimingWheel.getSkippedFireCount()).isZero();
+    }
+
+    /**
+     * 已经到期的任务直接提交
+     */
+    @Test
+    void firesImmediatelyWhenAlreadyExpired() {
+        taskTimingWheel.start();
+        when(taskSubmissionController.trySubmit(any())).thenReturn(true);
+        ConsistencyTaskInstance taskInstance = task(1L, System.currentTimeMillis() - 1000L);
+
+        taskTimingWheel.schedule(taskInstance);
+
+        verify(taskSubmissionController).trySubmit(same(taskInstance));
+    }
+
+    /**
+     * 时间轮满了时任务不放入时间轮 留给定时调度查询数据库执行
+     */
+    @Test
+    void handsTaskBackToPollWhenWheelIsFull() {
+        configuration.setTimingWheelCapacity(1);
+        taskTimingWheel.start();
+        when(taskSubmissionController.trySubmit(any())).thenReturn(true);
+        long deadline = System.currentTimeMillis() + 200L;
+        ConsistencyTaskInstance accepted = task(1L, deadline);
+        ConsistencyTaskInstance overflowed = task(2L, deadline);
+
+        taskTimingWheel.schedule(accepted);
+        taskTimingWheel.schedule(overflowed);
+
+        assertThat(taskTimingWheel.getOverflowCount()).isEqualTo(1L);
+        verify(taskSubmissionController, timeout(5000)).trySubmit(same(accepted));
+        verify(taskSubmissionController, after(200).never()).trySubmit(same(overflowed));
+    }
+
+    /**
+     * 到期后线程池没有空闲容量时 记录没有提交成功的任务数
+     */
+    @Test
+    void countsFiredTaskThatCouldNotBeSubmitted() {
+        taskTimingWheel.start();
+        when(taskSubmissionController.trySubmit(any())).thenReturn(false);
+
+        taskTimingWheel.schedule(task(1L, System.currentTimeMillis() + 20L));
+
+        verify(taskSubmissionController, timeout(5000)).trySubmit(any());
+        assertThat(taskTimingWheel.getSkippedFireCount()).isEqualTo(1L);
+    }
+
+    private static ConsistencyTaskInstance task(Long id, long executeTime) {
+        return ConsistencyTaskInstance.builder().id(id).shardKey(0L).executeTime(executeTime).build();
+    }
+
+}
@@ -0,0 +1,210 @@
+package top.panson.argo.mapper;
+
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import top.panson.argo.model.ConsistencyTaskInstance;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 租约模式下任务表语句的测试 在MySQL兼容模式的H2上执行真实的SQL
+ *
+ **/
+class TaskStoreMapperLeaseTest {
+
+    private static final String NODE_A = "node-a";
+
+    private static final String NODE_B = "node-b";
+
+    private static final long LEASE_MILLIS = 60000L;
+
+    private JdbcDataSource dataSource;
+
+    private SqlSession sqlSession;
+
+    private TaskStoreMapper taskStoreMapper;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + System.nanoTime() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        execute("CREATE TABLE argo_task ("
+                + "id bigint NOT NULL AUTO_INCREMENT,"
+                + "task_id varchar(500) NOT NULL DEFAULT '',"
+                + "task_status int NOT NULL DEFAULT 0,"
+                + "execute_times int NOT NULL,"
+                + "execute_time bigint NOT NULL,"
+                + "parameter_types varchar(255) NOT NULL DEFAULT '',"
+                + "method_name varchar(100) NOT NULL DEFAULT '',"
+                + "method_sign_name varchar(200) NOT NULL DEFAULT '',"
+                + "execute_interval_sec int NOT NULL DEFAULT 60,"
+                + "delay_time int NOT NULL DEFAULT 60,"
+                + "task_parameter varchar(200) NOT NULL DEFAULT '',"
+                + "performance_way int NOT NULL DEFAULT 2,"
+                + "thread_way int NOT NULL DEFAULT 1,"
+                + "error_msg varchar(200) NOT NULL DEFAULT '',"
+                + "alert_expression varchar(100) DEFAULT NULL,"
+                + "alert_action_bean_name varchar(255) DEFAULT NULL,"
+                + "fallback_class_name varchar(255) DEFAULT NULL,"
+                + "fallback_error_msg varchar(200) DEFAULT NULL,"
+                + "shard_key bigint DEFAULT 0,"
+                + "lease_owner varchar(64) NOT NULL DEFAULT '',"
+                + "lease_expire_time bigint NOT NULL DEFAULT 0,"
+                + "gmt_create datetime NOT NULL DEFAULT CURRENT_TIMESTAMP,"
+                + "gmt_modified datetime NOT NULL DEFAULT CURRENT_TIMESTAMP,"
+                + "PRIMARY KEY (id))");
+
+        Configuration configuration = new Configuration(new Environment("test", new JdbcTransactionFactory(), dataSource));
+        configuration.setMapUnderscoreToCamelCase(true);
+        configuration.addMapper(TaskStoreMapper.class);
+        SqlSessionFactory sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+        sqlSession = sqlSessionFactory.openSession(true);
+        taskStoreMapper = sqlSession.getMapper(TaskStoreMapper.class);
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        sqlSession.close();
+        execute("SHUTDOWN");
+    }
+
+    /**
+     * 租约过期的执行中任务被回收为失败状态，清空租约
+     */
+    @Test
+    void expiredLeaseIsReaped() throws SQLException {
+        long now = System.currentTimeMillis();
+        insertStartedTask(1L, 1, NODE_A, now - 1);
+        insertStartedTask(2L, 1, NODE_A, now + LEASE_MILLIS);
+
+        int resetCount = taskStoreMapper.resetExpiredLease(now, "lease expired", 10);
+
+        assertThat(resetCount).isEqualTo(1);
+        assertThat(queryString("SELECT lease_owner FROM argo_task WHERE id=1")).isEmpty();
+        assertThat(queryLong("SELECT task_status FROM argo_task WHERE id=1")).isEqualTo(2L);
+        assertThat(queryString("SELECT lease_owner FROM argo_task WHERE id=2")).isEqualTo(NODE_A);
+        assertThat(queryLong("SELECT task_status FROM argo_task WHERE id=2")).isEqualTo(1L);
+    }
+
+    /**
+     * 租约被回收后 原节点慢了一步的执行结果不能再写入
+     */
+    @Test
+    void staleOwnerCannotMarkReapedTask() throws SQLException {
+        long now = System.currentTimeMillis();
+        insertStartedTask(1L, 1, NODE_A, now - 1);
+        taskStoreMapper.resetExpiredLease(now, "lease expired", 10);
+        ConsistencyTaskInstance staleAttempt = task(1L, 1);
+
+        assertThat(taskStoreMapper.markSuccessWithLease(staleAttempt, NODE_A)).isZero();
+        assertThat(taskStoreMapper.markFailWithLease(staleAttempt, NODE_A)).isZero();
+        assertThat(taskStoreMapper.markFallbackFailWithLease(staleAttempt, NODE_A)).isZero();
+        assertThat(taskStoreMapper.batchMarkSuccess(Collections.singletonList(staleAttempt), NODE_A)).isZero();
+        assertThat(queryLong("SELECT count(*) FROM argo_task")).isEqualTo(1L);
+    }
+
+    /**
+     * 租约被回收后又被其他节点重新启动 原节点的执行结果不能覆盖新的执行
+     */
+    @Test
+    void staleOwnerCannotMarkTaskRestartedByAnotherNode() throws SQLException {
+        long now = System.currentTimeMillis();
+        insertStartedTask(1L, 1, NODE_A, now - 1);
+        taskStoreMapper.resetExpiredLease(now, "lease expired", 10);
+        ConsistencyTaskInstance restarted = task(1L, 1);
+        restarted.setTaskStatus(1);
+        restarted.setExecuteTime(now);
+        assertThat(taskStoreMapper.turnOnTaskWithLease(restarted, NODE_B, now + LEASE_MILLIS, now)).isEqualTo(1);
+
+        assertThat(taskStoreMapper.markFailWithLease(task(1L, 1), NODE_A)).isZero();
+        assertThat(taskStoreMapper.batchMarkFail(Collections.singletonList(task(1L, 1)), NODE_A)).isZero();
+        assertThat(taskStoreMapper.markSuccessWithLease(task(1L, 2), NODE_B)).isEqualTo(1);
+    }
+
+    /**
+     * 租约被回收后又被原节点重新启动 上一次执行的结果因为执行次数不一致而不能写入
+     */
+    @Test
+    void previousAttemptCannotMarkTaskRestartedBySameNode() throws SQLException {
+        long now = System.currentTimeMillis();
+        insertStartedTask(1L, 1, NODE_A, now - 1);
+        taskStoreMapper.resetExpiredLease(now, "lease expired", 10);
+        ConsistencyTaskInstance restarted = task(1L, 1);
+        restarted.setTaskStatus(1);
+        restarted.setExecuteTime(now);
+        assertThat(taskStoreMapper.turnOnTaskWithLease(restarted, NODE_A, now + LEASE_MILLIS, now)).isEqualTo(1);
+
+        assertThat(taskStoreMapper.markSuccessWithLease(task(1L, 1), NODE_A)).isZero();
+        assertThat(taskStoreMapper.batchMarkSuccess(Collections.singletonList(task(1L, 1)), NODE_A)).isZero();
+        assertThat(taskStoreMapper.batchMarkSuccess(Collections.singletonList(task(1L, 2)), NODE_A)).isEqualTo(1);
+    }
+
+    /**
+     * 其他节点持有未过期租约的任务不能启动
+     */
+    @Test
+    void cannotStartTaskLeasedByAnotherNode() throws SQLException {
+        long now = System.currentTimeMillis();
+        execute("INSERT INTO argo_task (id, task_status, execute_times, execute_time, lease_owner, lease_expire_time) "
+                + "VALUES (1, 0, 0, " + now + ", '" + NODE_B + "', " + (now + LEASE_MILLIS) + ")");
+        ConsistencyTaskInstance attempt = task(1L, 0);
+        attempt.setTaskStatus(1);
+        attempt.setExecuteTime(now);
+
+        assertThat(taskStoreMapper.turnOnTaskWithLease(attempt, NODE_A, now + LEASE_MILLIS, now)).isZero();
+        assertThat(taskStoreMapper.turnOnTaskWithLease(attempt, NODE_B, now + LEASE_MILLIS, now)).isEqualTo(1);
+    }
+
+    private void insertStartedTask(long id, int executeTimes, String leaseOwner, long leaseExpireTime) throws SQLException {
+        execute("INSERT INTO argo_task (id, task_status, execute_times, execute_time, lease_owner, lease_expire_time) "
+                + "VALUES (" + id + ", 1, " + executeTimes + ", 0, '" + leaseOwner + "', " + leaseExpireTime + ")");
+    }
+
+    private static ConsistencyTaskInstance task(Long id, int executeTimes) {
+        return ConsistencyTaskInstance.builder()
+                .id(id)
+                .shardKey(0L)
+                .executeTimes(executeTimes)
+                .executeTime(0L)
+                .errorMsg("failed")
+                .fallbackErrorMsg("fallback failed")
+                .build();
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private long queryLong(String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private String queryString(String sql) throws SQLException {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            resultSet.next();
+            return resultSet.getString(1);
+        }
+    }
+
+}
@@ -0,0 +1,179 @@
+package top.panson.argo.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import top.panson.argo.config.TendConsistencyConfiguration;
+import top.panson.argo.exceptions.ConsistencyException;
+import top.panson.argo.mapper.TaskStoreMapper;
+import top.panson.argo.model.ConsistencyTaskInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * 任务写入组提交器的测试
+ *
+ **/
+class TaskInsertGroupCommitterTest {
+
+    private TaskStoreMapper taskStoreMapper;
+
+    private TaskInsertGroupCommitter committer;
+
+    @BeforeEach
+    void setUp() {
+        taskStoreMapper = mock(TaskStoreMapper.class);
+        committer = new TaskInsertGroupCommitter();
+        ReflectionTestUtils.setField(committer, "taskStoreMapper", taskStoreMapper);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        committer.stop();
+    }
+
+    /**
+     * 批量写入失败后逐条重写，只有自己那一行写入失败的业务线程报错
+     */
+    @Test
+    void batchFailureOnlyFailsCallersWhoseRowFails() throws Exception {
+        start(3, TimeUnit.SECONDS.toMicros(5));
+        doThrow(new RuntimeException("batch failed")).when(taskStoreMapper).batchInitTask(anyList());
+        doThrow(new RuntimeException("row too long")).when(taskStoreMapper)
+                .initTask(argThat(taskInstance -> taskInstance != null && "bad".equals(taskInstance.getMethodSignName())));
+
+        ExecutorService callers = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (String methodSignName : new String[]{"good-1", "bad", "good-2"}) {
+                futures.add(callers.submit(() -> committer.insert(task(methodSignName))));
+            }
+            futures.get(0).get(5, TimeUnit.SECONDS);
+            futures.get(2).get(5, TimeUnit.SECONDS);
+            assertThatThrownBy(() -> futures.get(1).get(5, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(ConsistencyException.class);
+        } finally {
+            callers.shutdownNow();
+        }
+        verify(taskStoreMapper, times(1)).batchInitTask(argThat(list -> list.size() == 3));
+        verify(taskStoreMapper, times(3)).initTask(any());
+    }
+
+    /**
+     * 还在排队时被中断的任务从队列中移除，之后不会再写入
+     */
+    @Test
+    void interruptWhileQueuedLeavesNoPhantomRow() throws Exception {
+        start(1, 0L);
+        CountDownLatch firstEntered = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        blockBatchOf("first", firstEntered, releaseFirst);
+
+        Thread first = new Thread(() -> committer.insert(task("first")));
+        first.start();
+        assertThat(firstEntered.await(5, TimeUnit.SECONDS)).isTrue();
+
+        AtomicReference<Throwable> secondError = new AtomicReference<>();
+        Thread second = new Thread(() -> {
+            try {
+                committer.insert(task("second"));
+            } catch (Throwable e) {
+                secondError.set(e);
+            }
+        });
+        second.start();
+        BlockingQueue<?> pendingQueue = (BlockingQueue<?>) ReflectionTestUtils.getField(committer, "pendingQueue");
+        awaitTrue(() -> pendingQueue.size() == 1);
+        second.interrupt();
+        second.join(TimeUnit.SECONDS.toMillis(5));
+        assertThat(secondError.get()).isInstanceOf(ConsistencyException.class);
+
+        releaseFirst.countDown();
+        first.join(TimeUnit.SECONDS.toMillis(5));
+        committer.stop();
+        verify(taskStoreMapper, never()).batchInitTask(argThat(list -> containsTask(list, "second")));
+        verify(taskStoreMapper, never()).initTask(any());
+    }
+
+    /**
+     * 已经被组提交线程取走的任务，业务线程被中断后仍然等待写入完成，不会向业务线程报告一个之后又落库的失败
+     */
+    @Test
+    void interruptAfterTakenWaitsUntilDurable() throws Exception {
+        start(1, 0L);
+        CountDownLatch firstEntered = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        blockBatchOf("first", firstEntered, releaseFirst);
+
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        AtomicBoolean interruptRestored = new AtomicBoolean(false);
+        Thread first = new Thread(() -> {
+            try {
+                committer.insert(task("first"));
+                interruptRestored.set(Thread.currentThread().isInterrupted());
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        });
+        first.start();
+        assertThat(firstEntered.await(5, TimeUnit.SECONDS)).isTrue();
+        first.interrupt();
+        first.join(200L);
+        assertThat(first.isAlive()).isTrue();
+
+        releaseFirst.countDown();
+        first.join(TimeUnit.SECONDS.toMillis(5));
+        assertThat(error.get()).isNull();
+        assertThat(interruptRestored.get()).isTrue();
+    }
+
+    private void start(int batchSize, long maxLingerMicros) {
+        TendConsistencyConfiguration configuration = new TendConsistencyConfiguration();
+        configuration.setInsertGroupCommitEnabled(true);
+        configuration.setInsertBatchSize(batchSize);
+        configuration.setInsertMaxLingerMicros(maxLingerMicros);
+        ReflectionTestUtils.setField(committer, "tendConsistencyConfiguration", configuration);
+        committer.start();
+    }
+
+    private void blockBatchOf(String methodSignName, CountDownLatch entered, CountDownLatch release) {
+        doAnswer(invocation -> {
+            List<ConsistencyTaskInstance> list = invocation.getArgument(0);
+            if (containsTask(list, methodSignName)) {
+                entered.countDown();
+                release.await();
+            }
+            return list.size();
+        }).when(taskStoreMapper).batchInitTask(anyList());
+    }
+
+    private static boolean containsTask(List<ConsistencyTaskInstance> list, String methodSignName) {
+        return list != null && list.stream().anyMatch(taskInstance -> methodSignName.equals(taskInstance.getMethodSignName()));
+    }
+
+    private static ConsistencyTaskInstance task(String methodSignName) {
+        return ConsistencyTaskInstance.builder().methodSignName(methodSignName).build();
+    }
+
+    private static void awaitTrue(Callable<Boolean> condition) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.call()) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(1L);
+        }
+    }
+
+}
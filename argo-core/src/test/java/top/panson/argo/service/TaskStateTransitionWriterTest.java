@@ -0,0 +1,136 @@
+package top.panson.argo.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatcher;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import top.panson.argo.config.TendConsistencyConfiguration;
+import top.panson.argo.mapper.TaskStoreMapper;
+import top.panson.argo.model.ConsistencyTaskInstance;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 任务状态变更异步批量写入器的测试
+ *
+ **/
+class TaskStateTransitionWriterTest {
+
+    private TaskStoreMapper taskStoreMapper;
+
+    private TaskStateTransitionWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        taskStoreMapper = mock(TaskStoreMapper.class);
+        writer = new TaskStateTransitionWriter();
+        ReflectionTestUtils.setField(writer, "taskStoreMapper", taskStoreMapper);
+        ReflectionTestUtils.setField(writer, "transactionTemplate", new TransactionTemplate(mock(PlatformTransactionManager.class)));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        writer.stop();
+    }
+
+    /**
+     * 停机时缓冲区中还没有刷盘的状态变更全部写入
+     */
+    @Test
+    void stopFlushesBufferedOutcomes() throws InterruptedException {
+        start(100, 200, 500L);
+        writer.markSuccess(task(1L));
+        writer.markSuccess(task(2L));
+        writer.markFail(task(3L));
+        writer.markFallbackFail(task(4L));
+        verifyNoInteractions(taskStoreMapper);
+
+        writer.stop();
+
+        verify(taskStoreMapper).batchMarkSuccess(argThat(ids(1L, 2L)), isNull());
+        verify(taskStoreMapper).batchMarkFail(argThat(ids(3L)), isNull());
+        verify(taskStoreMapper).batchMarkFallbackFail(argThat(ids(4L)), isNull());
+        verify(taskStoreMapper, never()).markSuccess(any());
+        verify(taskStoreMapper, never()).markFail(any());
+        verify(taskStoreMapper, never()).markFallbackFail(any());
+    }
+
+    /**
+     * 缓冲区满了时执行线程阻塞等待，不会越过缓冲区中更早的状态变更同步写入
+     */
+    @Test
+    void fullBufferDoesNotOvertakeBufferedOutcomes() throws InterruptedException {
+        start(1, 1, 1L);
+        CountDownLatch firstEntered = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            List<ConsistencyTaskInstance> list = invocation.getArgument(0);
+            if (list.get(0).getId() == 1L) {
+                firstEntered.countDown();
+                releaseFirst.await();
+            }
+            return list.size();
+        }).when(taskStoreMapper).batchMarkFail(anyList(), any());
+
+        writer.markFail(task(1L));
+        assertThat(firstEntered.await(5, TimeUnit.SECONDS)).isTrue();
+        // 刷盘线程卡在第一条上 第二条占满缓冲区
+        writer.markFail(task(2L));
+        Thread third = new Thread(() -> writer.markSuccess(task(3L)));
+        third.start();
+        third.join(300L);
+        assertThat(third.isAlive()).isTrue();
+        verify(taskStoreMapper, never()).markSuccess(any());
+
+        releaseFirst.countDown();
+        third.join(TimeUnit.SECONDS.toMillis(5));
+        writer.stop();
+
+        InOrder inOrder = inOrder(taskStoreMapper);
+        inOrder.verify(taskStoreMapper).batchMarkFail(argThat(ids(1L)), isNull());
+        inOrder.verify(taskStoreMapper).batchMarkFail(argThat(ids(2L)), isNull());
+        inOrder.verify(taskStoreMapper).batchMarkSuccess(argThat(ids(3L)), isNull());
+        verify(taskStoreMapper, never()).markSuccess(any());
+        verify(taskStoreMapper, never()).markFail(any());
+    }
+
+    private void start(int bufferCapacity, int flushBatchSize, long flushIntervalMillis) {
+        TendConsistencyConfiguration configuration = new TendConsistencyConfiguration();
+        configuration.setStateWriteBehindEnabled(true);
+        configuration.setStateBufferCapacity(bufferCapacity);
+        configuration.setStateFlushBatchSize(flushBatchSize);
+        configuration.setStateFlushIntervalMillis(flushIntervalMillis);
+        ReflectionTestUtils.setField(writer, "tendConsistencyConfiguration", configuration);
+        writer.start();
+    }
+
+    private static ArgumentMatcher<List<ConsistencyTaskInstance>> ids(Long... ids) {
+        return list -> {
+            if (list == null || list.size() != ids.length) {
+                return false;
+            }
+            for (int i = 0; i < ids.length; i++) {
+                // 快照中带上本次启动时的执行次数 租约模式下作为写入的校验条件
+                if (!ids[i].equals(list.get(i).getId()) || list.get(i).getExecuteTimes() != ids[i].intValue()) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    private static ConsistencyTaskInstance task(Long id) {
+        return ConsistencyTaskInstance.builder().id(id).shardKey(0L).executeTimes(id.intValue()).build();
+    }
+
+}
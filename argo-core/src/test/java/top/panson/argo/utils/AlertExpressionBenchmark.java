@@ -0,0 +1,62 @@
+package top.panson.argo.utils;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import top.panson.argo.model.ConsistencyTaskInstance;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 任务每次执行失败时判断告警表达式的耗时和内存分配 对比缓存编译后的表达式和每次重新解析模板表达式
+ * 运行方式同TaskParameterCodecBenchmark，main方法开启了GC profiler，看 gc.alloc.rate.norm 一行即每次判断分配的字节数
+ *
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AlertExpressionBenchmark {
+
+    /**
+     * 注解中配置的告警表达式 第一个是注解的默认值
+     */
+    @Param({"executeTimes > 1 && executeTimes < 5", "executeTimes % 2 == 0"})
+    private String alertExpression;
+
+    private ConsistencyTaskInstance taskInstance;
+
+    @Setup
+    public void setUp() {
+        taskInstance = ConsistencyTaskInstance.builder().executeTimes(4).alertExpression(alertExpression).build();
+    }
+
+    @Benchmark
+    public boolean cachedExpression() {
+        return ExpressionUtils.isAlertTriggered(taskInstance.getAlertExpression(), taskInstance);
+    }
+
+    /**
+     * 缓存告警表达式之前执行失败路径上的写法
+     */
+    @Benchmark
+    public boolean readExprPerFailure() {
+        String expr = ExpressionUtils.rewriteExpr(taskInstance.getAlertExpression());
+        String exprResult = ExpressionUtils.readExpr(expr, ExpressionUtils.buildDataMap(taskInstance));
+        return ExpressionUtils.RESULT_FLAG.equals(exprResult);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(AlertExpressionBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+
+}
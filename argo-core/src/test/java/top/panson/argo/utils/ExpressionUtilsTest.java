@@ -0,0 +1,45 @@
+package top.panson.argo.utils;
+
+import org.junit.jupiter.api.Test;
+import top.panson.argo.model.ConsistencyTaskInstance;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * el表达式解析工具类的测试
+ *
+ **/
+class ExpressionUtilsTest {
+
+    /**
+     * 缓存的告警表达式和每次解析模板表达式的判断结果一致 表达式编译成字节码前后都一致
+     */
+    @Test
+    void isAlertTriggeredMatchesReadExpr() {
+        String[] alertExpressions = {"executeTimes > 1 && executeTimes < 5", "executeTimes % 2 == 0", "executeTimes >= 3"};
+        for (int round = 0; round < 3; round++) {
+            for (String alertExpression : alertExpressions) {
+                for (int executeTimes = 0; executeTimes <= 10; executeTimes++) {
+                    ConsistencyTaskInstance taskInstance = ConsistencyTaskInstance.builder().executeTimes(executeTimes).build();
+                    boolean expected = ExpressionUtils.RESULT_FLAG.equals(ExpressionUtils.readExpr(
+                            ExpressionUtils.rewriteExpr(alertExpression), ExpressionUtils.buildDataMap(taskInstance)));
+
+                    assertThat(ExpressionUtils.isAlertTriggered(alertExpression, taskInstance))
+                            .as("%s executeTimes=%d", alertExpression, executeTimes)
+                            .isEqualTo(expected);
+                }
+            }
+        }
+    }
+
+    /**
+     * 错误的告警表达式不触发告警 也不向执行失败路径抛出异常
+     */
+    @Test
+    void invalidExpressionDoesNotTrigger() {
+        ConsistencyTaskInstance taskInstance = ConsistencyTaskInstance.builder().executeTimes(1).build();
+
+        assertThat(ExpressionUtils.isAlertTriggered("executeTimes >", taskInstance)).isFalse();
+    }
+
+}
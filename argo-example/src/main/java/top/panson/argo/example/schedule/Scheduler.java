@@ -3,6 +3,7 @@ package top.panson.argo.example.schedule;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import top.panson.argo.config.TendConsistencyConfiguration;
 import top.panson.argo.manager.TaskScheduleManager;
 
 import javax.annotation.Resource;
@@ -20,15 +21,25 @@ public class Scheduler {
      */
     @Resource
     private TaskScheduleManager taskScheduleManager;
+    /**
+     * 一致性框架配置
+     */
+    @Resource
+    private TendConsistencyConfiguration tendConsistencyConfiguration;
 
     /**
      * 对一致性任务进行调度
      * 1、如果使用的是分布式任务调度框架（如：xxl-job或elastic-job）则配置相关策略保证多实例情况下，同一时刻只有一个实例可以调用performanceTask方法
      * 2、如果像我们这里，使用的是spring自带的定时任务，则记的加锁，来保证同一时刻只有一个实例可以调用performanceTask方法，
+     * 3、如果开启了租约抢占模式(top.panson.argo.schedule.lease-enabled=true)，各实例抢占到的任务互不重叠，不需要再加分布式锁
+     * 4、如果开启了框架自带的自适应调度循环(top.panson.argo.schedule.poll-loop-enabled=true)，不需要再定时调用
      */
     @Scheduled(fixedRate = 5 * 1000L)
     public void execute() {
-        // TODO 这里记的加分布式锁，这个是默认重试执行你的任务的方法入口
+        if (tendConsistencyConfiguration.getPollLoopEnabled()) {
+            return;
+        }
+        // TODO 这里记的加分布式锁（开启租约抢占模式时不需要），这个是默认重试执行你的任务的方法入口
         try {
             taskScheduleManager.performanceTask();
         } catch (Exception e) {